@@ -12,6 +12,30 @@ import routing.MessageRouter;
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** is the sending host told when the transfer is done */
+	private boolean completionScheduled;
+
+	static {
+		reset();
+		DTNSim.registerForReset(CBRConnection.class.getCanonicalName());
+	}
+
+	/**
+	 * The per-run state of the class
+	 */
+	private static class State {
+		/** queue where the transfer completions are added or null if they
+		 * are not scheduled */
+		private TransferCompletionQueue completions = null;
+	}
+
+	/**
+	 * Returns the per-run state of the class
+	 * @return the per-run state of the class
+	 */
+	private static State getState() {
+		return (State)SimContext.getCurrent().getState(CBRConnection.class);
+	}
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -56,6 +80,12 @@ public class CBRConnection extends Connection {
 			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() + 
 			(1.0*m.getSize()) / this.speed;
+
+			TransferCompletionQueue completions = getState().completions;
+			this.completionScheduled = completions != null;
+			if (completions != null) {
+				completions.add(this, from, this.transferDoneTime);
+			}
 		}
 
 		return retVal;
@@ -87,6 +117,15 @@ public class CBRConnection extends Connection {
 		return getRemainingByteCount() == 0;
 	}
 
+	/**
+	 * Returns true if the transfers of this connection are added to the 
+	 * transfer completion queue (see {@link World#EXACT_TRANSFER_TIMES_S})
+	 */
+	@Override
+	public boolean isCompletionScheduled() {
+		return this.completionScheduled;
+	}
+
 	/**
 	 * returns the current speed of the connection
 	 */
@@ -113,6 +152,23 @@ public class CBRConnection extends Connection {
 		return (remaining > 0 ? remaining : 0);
 	}
 
+	/**
+	 * Sets the queue where the completions of the transfers are added 
+	 * (see {@link World#EXACT_TRANSFER_TIMES_S})
+	 * @param completions The queue or null if the completions should not 
+	 * be scheduled
+	 */
+	static void setCompletionQueue(TransferCompletionQueue completions) {
+		getState().completions = completions;
+	}
+
+	/**
+	 * Resets all static fields to default values
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(CBRConnection.class, new State());
+	}
+
 	/**
 	 * Returns a String presentation of the connection.
 	 */
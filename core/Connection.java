@@ -138,6 +138,17 @@ public abstract class Connection {
 	 */
 	public abstract boolean isMessageTransferred();
 
+	/**
+	 * Returns true if the sending host is told when the current (or last)
+	 * transfer is done (see {@link DTNHost#transferCompleted(Connection)}),
+	 * so the transfer doesn't need to be checked with 
+	 * {@link #isMessageTransferred()}. This implementation returns false.
+	 * @return True if the completion of the transfer is scheduled
+	 */
+	public boolean isCompletionScheduled() {
+		return false;
+	}
+
 	/**
 	 * Returns true if the connection is ready to transfer a message (connection
 	 * is up and there is no message being transferred).
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Kinetic (event-driven) contact detection. Hosts move along straight lines
+ * between the waypoints of their paths, so the exact times when two
+ * interfaces come within range of each other, or go out of range, can be
+ * solved from the movement. The predictor records the waypoints the hosts
+ * pass during an update interval (as a movement listener), finds the pairs
+ * of interfaces whose movement areas come close enough to each other and
+ * schedules connection up and down events for them in a priority queue.
+ * See {@link World#KINETIC_CONTACTS_S}.
+ * <P>The location of a host within an interval follows
+ * {@link DTNHost#move(double)}: the host moves along its path with the speed
+ * it had at the start of the interval and stops if the path ends. Only
+ * interfaces of the same type are connected. The connections are created 
+ * as soon as the interfaces are within range, so interfaces with a scan
+ * interval are not supported.</P>
+ */
+public class ContactPredictor implements MovementListener {
+	/** the hosts whose contacts are predicted */
+	private List<DTNHost> hosts;
+	/** the interfaces grouped by their type */
+	private List<InterfaceGroup> groups;
+	/** movement of the hosts during the interval, by host address */
+	private Trajectory[] trajectories;
+	/** the predicted contact events, in the order of occurrence */
+	private PriorityQueue<ContactEvent> events;
+	/** pairs of interfaces checked in the current prediction */
+	private LongHashSet checkedPairs;
+	/** is the movement of the hosts being recorded */
+	private boolean recording;
+	/** start time of the current update interval */
+	private double intervalStart;
+	/** sequence number of the next scheduled event */
+	private long nextSeq;
+
+	/**
+	 * Creates a predictor for the contacts of the given hosts
+	 * @param hosts The hosts (in the order of their addresses)
+	 * @throws SimError if any of the interfaces has a scan interval
+	 */
+	public ContactPredictor(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		this.trajectories = new Trajectory[hosts.size()];
+		this.events = new PriorityQueue<ContactEvent>();
+		this.checkedPairs = new LongHashSet();
+		this.recording = false;
+
+		Map<String, List<NetworkInterface>> byType =
+			new LinkedHashMap<String, List<NetworkInterface>>();
+		for (DTNHost host : hosts) {
+			this.trajectories[host.getAddress()] = new Trajectory();
+			for (NetworkInterface ni : host.getInterfaces()) {
+				List<NetworkInterface> list = byType.get(ni.getInterfaceType());
+				if (list == null) {
+					checkNoScanInterval(new Settings(ni.getInterfaceType()));
+					list = new ArrayList<NetworkInterface>();
+					byType.put(ni.getInterfaceType(), list);
+				}
+				if (!ni.isAlwaysScanning()) {
+					throw new SimError("Contacts can't be predicted for " +
+							"interfaces with a scan interval (" + ni + 
+							" of host " + host + ")");
+				}
+				list.add(ni);
+			}
+		}
+
+		this.groups = new ArrayList<InterfaceGroup>();
+		for (List<NetworkInterface> list : byType.values()) {
+			this.groups.add(new InterfaceGroup(list));
+		}
+	}
+
+	/**
+	 * Checks that the settings of an interface type don't define a scan
+	 * interval
+	 * @param s The settings of the interface type
+	 * @throws SimError if the interface type has a scan interval
+	 */
+	private void checkNoScanInterval(Settings s) {
+		if (s.contains(NetworkInterface.SCAN_INTERVAL_S) && 
+				s.getDouble(NetworkInterface.SCAN_INTERVAL_S) > 0) {
+			throw new SimError("Contacts can't be predicted for interfaces " +
+					"with a scan interval (" + s.getFullPropertyName(
+					NetworkInterface.SCAN_INTERVAL_S) + ")");
+		}
+	}
+
+	/**
+	 * Starts recording the movement of the hosts for a new update interval.
+	 * Must be called before the hosts are moved.
+	 * @param start Start time of the interval
+	 */
+	public void beginInterval(double start) {
+		this.intervalStart = start;
+		for (DTNHost host : hosts) {
+			trajectories[host.getAddress()].start(host.getLocation(), start,
+					host.getCurrentSpeed());
+		}
+		this.recording = true;
+	}
+
+	/**
+	 * Stops recording the movement and schedules the contact events of the
+	 * interval. Must be called after the hosts have been moved.
+	 * @param end End time of the interval
+	 */
+	public void predict(double end) {
+		this.recording = false;
+		for (DTNHost host : hosts) {
+			trajectories[host.getAddress()].finish(host.getLocation(), end);
+		}
+
+		this.checkedPairs.clear();
+		for (InterfaceGroup group : groups) {
+			predictGroup(group, end);
+		}
+	}
+
+	/**
+	 * Returns the time of the next predicted contact event
+	 * @return The time of the next event or Double.MAX_VALUE if there are
+	 * no events
+	 */
+	public double nextEventTime() {
+		ContactEvent next = events.peek();
+		return next == null ? Double.MAX_VALUE : next.time;
+	}
+
+	/**
+	 * Connects or disconnects the interfaces of the next predicted event
+	 * and updates their hosts. Connections are created only if both hosts
+	 * are active.
+	 * @param simulateConnections Should the network layer of the hosts be
+	 * updated too
+	 */
+	public void processNextEvent(boolean simulateConnections) {
+		ContactEvent e = events.poll();
+		DTNHost from = e.from.getHost();
+		DTNHost to = e.to.getHost();
+
+		if (e.up) {
+			if (!from.isActive() || !to.isActive()) {
+				return; // retried at the start of the next interval
+			}
+			e.from.createConnection(e.to);
+		}
+		else {
+			e.from.destroyConnection(e.to);
+		}
+
+		from.update(simulateConnections);
+		to.update(simulateConnections);
+	}
+
+	/**
+	 * Finds the pairs of interfaces of a group that may be within range
+	 * during the interval (sort and sweep on the bounding boxes of their
+	 * movement) and schedules their contact events
+	 * @param g The group
+	 * @param end End time of the interval
+	 */
+	private void predictGroup(InterfaceGroup g, double end) {
+		NetworkInterface[] nis = g.interfaces;
+		int n = nis.length;
+
+		for (int k = 0; k < n; k++) {
+			Trajectory t = trajectories[nis[k].getHost().getAddress()];
+			/* boxes of interfaces within range overlap if both are
+			 * extended by half of their range */
+			double margin = nis[k].getTransmitRange() / 2;
+			g.minX[k] = t.minX - margin;
+			g.maxX[k] = t.maxX + margin;
+			g.minY[k] = t.minY - margin;
+			g.maxY[k] = t.maxY + margin;
+		}
+
+		/* the order is kept between intervals, so it's almost sorted */
+		Arrays.sort(g.order, g.byMinX);
+		for (int a = 0; a < n; a++) {
+			int i = g.order[a];
+			for (int b = a + 1; b < n && g.minX[g.order[b]] <= g.maxX[i];
+					b++) {
+				int j = g.order[b];
+				if (g.minY[j] > g.maxY[i] || g.maxY[j] < g.minY[i]) {
+					continue;
+				}
+				predictPair(nis[i], nis[j], end);
+			}
+		}
+
+		/* the rest of the connections can't stay up */
+		for (NetworkInterface ni : nis) {
+			for (Connection con : ni.getConnections()) {
+				NetworkInterface other = con.getOtherInterface(ni);
+				if (!other.getInterfaceType().equals(ni.getInterfaceType())) {
+					continue;
+				}
+				if (checkedPairs.add(pairKey(ni, other))) {
+					schedule(ni, other, false, intervalStart);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves when two interfaces are within range of each other during the
+	 * interval and schedules the events that change their connection state
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @param end End time of the interval
+	 */
+	private void predictPair(NetworkInterface a, NetworkInterface b,
+			double end) {
+		if (a.getHost() == b.getHost()) {
+			return;
+		}
+		checkedPairs.add(pairKey(a, b));
+
+		Trajectory ta = trajectories[a.getHost().getAddress()];
+		Trajectory tb = trajectories[b.getHost().getAddress()];
+		double range = Math.min(a.getTransmitRange(), b.getTransmitRange());
+		double r2 = range * range;
+		boolean connected = a.isConnected(b);
+		int ia = 0; // segment indexes of the trajectories
+		int ib = 0;
+
+		double start = intervalStart;
+
+		/* relative movement is linear between the waypoints of the two */
+		while (start < end) {
+			while (ia + 1 < ta.size && ta.times[ia + 1] <= start) {
+				ia++;
+			}
+			while (ib + 1 < tb.size && tb.times[ib + 1] <= start) {
+				ib++;
+			}
+			double stop = end;
+			if (ia + 1 < ta.size && ta.times[ia + 1] < stop) {
+				stop = ta.times[ia + 1];
+			}
+			if (ib + 1 < tb.size && tb.times[ib + 1] < stop) {
+				stop = tb.times[ib + 1];
+			}
+
+			double length = stop - start;
+			double dx = tb.x(ib, start) - ta.x(ia, start);
+			double dy = tb.y(ib, start) - ta.y(ia, start);
+			double wx = (tb.x(ib, stop) - ta.x(ia, stop) - dx) / length;
+			double wy = (tb.y(ib, stop) - ta.y(ia, stop) - dy) / length;
+
+			/* |d + w*t|^2 = r^2 */
+			double qa = wx * wx + wy * wy;
+			double qb = dx * wx + dy * wy;
+			double qc = dx * dx + dy * dy - r2;
+			double disc = qb * qb - qa * qc;
+			if ((qc <= 0) != connected) {
+				/* the state at the start of the interval (or rounding) */
+				connected = !connected;
+				schedule(a, b, connected, start);
+			}
+			if (qa > 0 && disc > 0) {
+				double root = Math.sqrt(disc);
+				double enter = (-qb - root) / qa;
+				double leave = (-qb + root) / qa;
+				if (!connected && enter > 0 && enter < length) {
+					connected = true;
+					schedule(a, b, true, start + enter);
+				}
+				if (connected && leave > 0 && leave < length) {
+					connected = false;
+					schedule(a, b, false, start + leave);
+				}
+			}
+			start = stop;
+		}
+	}
+
+	/**
+	 * Schedules a contact event
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @param up True for a connection up event, false for down
+	 * @param time Time of the event
+	 */
+	private void schedule(NetworkInterface a, NetworkInterface b,
+			boolean up, double time) {
+		events.add(new ContactEvent(a, b, up, time, nextSeq++));
+	}
+
+	/**
+	 * Returns the key of an (unordered) pair of interfaces
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @return The key
+	 */
+	private static long pairKey(NetworkInterface a, NetworkInterface b) {
+		long a1 = a.getAddress();
+		long a2 = b.getAddress();
+		return a1 < a2 ? (a1 << 32) | a2 : (a2 << 32) | a1;
+	}
+
+	/**
+	 * Records the waypoint the host reached (if the movement is being
+	 * recorded)
+	 */
+	public void newDestination(DTNHost host, Coord destination,
+			double speed) {
+		if (this.recording) {
+			trajectories[host.getAddress()].addWaypoint(host.getLocation(),
+					speed);
+		}
+	}
+
+	/**
+	 * Does nothing; the initial locations are set before the intervals
+	 */
+	public void initialLocation(DTNHost host, Coord location) {
+		/* not needed */
+	}
+
+	/**
+	 * Interfaces of the same type and the buffers for sweeping them
+	 */
+	private static class InterfaceGroup {
+		private NetworkInterface[] interfaces;
+		/** the interfaces' indexes in the order of {@link #minX} */
+		private Integer[] order;
+		private double[] minX;
+		private double[] maxX;
+		private double[] minY;
+		private double[] maxY;
+		private Comparator<Integer> byMinX;
+
+		private InterfaceGroup(List<NetworkInterface> interfaces) {
+			int n = interfaces.size();
+			this.interfaces = interfaces.toArray(new NetworkInterface[n]);
+			this.order = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				this.order[i] = i;
+			}
+			this.minX = new double[n];
+			this.maxX = new double[n];
+			this.minY = new double[n];
+			this.maxY = new double[n];
+			this.byMinX = new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					return Double.compare(minX[i1], minX[i2]);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Locations of a host during an update interval: the waypoints it
+	 * passed and the times it passed them
+	 */
+	private static class Trajectory {
+		private double[] times = new double[4];
+		private double[] xs = new double[4];
+		private double[] ys = new double[4];
+		private int size;
+		/** the speed the host moves with during the interval or -1 if it
+		 * isn't known yet */
+		private double speed;
+		/** how far the host has moved during the interval */
+		private double distance;
+		private double minX, maxX, minY, maxY;
+
+		/**
+		 * Starts a new trajectory
+		 * @param location Location at the start of the interval
+		 * @param time Start time of the interval
+		 * @param speed Speed of the host or -1 if it has no destination
+		 */
+		private void start(Coord location, double time, double speed) {
+			this.size = 0;
+			this.speed = speed;
+			this.distance = 0;
+			this.minX = this.maxX = location.getX();
+			this.minY = this.maxY = location.getY();
+			add(location, time);
+		}
+
+		/**
+		 * Adds a waypoint the host reached
+		 * @param location Location of the waypoint
+		 * @param nextSpeed Speed towards the next waypoint
+		 */
+		private void addWaypoint(Coord location, double nextSpeed) {
+			if (this.speed < 0) {
+				/* got its first destination; moves with its speed */
+				this.speed = nextSpeed;
+			}
+			int last = size - 1;
+			double dx = location.getX() - xs[last];
+			double dy = location.getY() - ys[last];
+			if (dx == 0 && dy == 0) {
+				return;
+			}
+			this.distance += Math.sqrt(dx * dx + dy * dy);
+			add(location, timeAt(distance));
+		}
+
+		/**
+		 * Ends the trajectory in the location where the host ended up
+		 * @param location Location at the end of the interval
+		 * @param end End time of the interval
+		 */
+		private void finish(Coord location, double end) {
+			addWaypoint(location, this.speed);
+			for (int i = 0; i < size; i++) {
+				if (times[i] > end) {
+					times[i] = end;
+				}
+			}
+		}
+
+		/**
+		 * Returns when the host has moved the given distance
+		 * @param d The distance
+		 * @return The time
+		 */
+		private double timeAt(double d) {
+			if (this.speed <= 0) {
+				return times[0];
+			}
+			return times[0] + d / this.speed;
+		}
+
+		private void add(Coord location, double time) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				xs = Arrays.copyOf(xs, size * 2);
+				ys = Arrays.copyOf(ys, size * 2);
+			}
+			times[size] = time;
+			xs[size] = location.getX();
+			ys[size] = location.getY();
+			size++;
+			minX = Math.min(minX, location.getX());
+			maxX = Math.max(maxX, location.getX());
+			minY = Math.min(minY, location.getY());
+			maxY = Math.max(maxY, location.getY());
+		}
+
+		/**
+		 * Returns the x coordinate at the given time
+		 * @param i Index of the waypoint the host passed last
+		 * @param time The time
+		 * @return The x coordinate
+		 */
+		private double x(int i, double time) {
+			return interpolate(xs, i, time);
+		}
+
+		/**
+		 * Returns the y coordinate at the given time
+		 * @param i Index of the waypoint the host passed last
+		 * @param time The time
+		 * @return The y coordinate
+		 */
+		private double y(int i, double time) {
+			return interpolate(ys, i, time);
+		}
+
+		private double interpolate(double[] values, int i, double time) {
+			if (i + 1 >= size || times[i + 1] <= times[i]) {
+				return values[Math.min(i + 1, size - 1)];
+			}
+			double share = (time - times[i]) / (times[i + 1] - times[i]);
+			if (share >= 1) {
+				return values[i + 1];
+			}
+			return values[i] + share * (values[i + 1] - values[i]);
+		}
+	}
+
+	/**
+	 * A predicted connection up or down event between two interfaces
+	 */
+	private static class ContactEvent implements Comparable<ContactEvent> {
+		private NetworkInterface from;
+		private NetworkInterface to;
+		private boolean up;
+		private double time;
+		/** scheduling order; breaks the ties of simultaneous events */
+		private long seq;
+
+		private ContactEvent(NetworkInterface from, NetworkInterface to,
+				boolean up, double time, long seq) {
+			this.from = from;
+			this.to = to;
+			this.up = up;
+			this.time = time;
+			this.seq = seq;
+		}
+
+		public int compareTo(ContactEvent other) {
+			if (this.time != other.time) {
+				return this.time < other.time ? -1 : 1;
+			}
+			return this.seq < other.seq ? -1 : (this.seq > other.seq ? 1 : 0);
+		}
+	}
+}
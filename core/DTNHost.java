@@ -6,6 +6,7 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -17,7 +18,6 @@ import routing.RoutingInfo;
  * A DTN capable host.
  */
 public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
 	private int address;
 
 	private Coord location; 	// where is the host
@@ -32,6 +32,11 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** the connections of all the interfaces (in the order of the
+	 * interfaces), kept up to date by the interfaces */
+	private List<Connection> connections;
+	/** read-only view of the connections */
+	private List<Connection> connectionsView;
 	private ModuleCommunicationBus comBus;
 
 	static {
@@ -58,6 +63,8 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.address = getNextAddress();
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
+		this.connections = new ArrayList<Connection>();
+		this.connectionsView = Collections.unmodifiableList(this.connections);
 
 		for (NetworkInterface i : interf) {
 			NetworkInterface ni = i.replicate();
@@ -94,15 +101,23 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+	private static int getNextAddress() {
+		State state = (State)SimContext.getCurrent().getState(DTNHost.class);
+		return state.nextAddress++;	
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		SimContext.getCurrent().setState(DTNHost.class, new State());
+	}
+
+	/**
+	 * The per-run state of the class
+	 */
+	private static class State {
+		private int nextAddress = 0;
 	}
 
 	/**
@@ -159,17 +174,57 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns the connections this host has with other hosts. The returned
+	 * list is a read-only view that changes as the connections of the
+	 * interfaces change (it is not a copy), so it must not be iterated over
+	 * while connections are created or torn down; e.g., code that
+	 * disconnects hosts in a loop over the connections must loop over a
+	 * copy of the list.
+	 * @return the connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
+		return this.connectionsView;
+	}
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
-		}
+	/**
+	 * Adds a connection of an interface to the connections of this host.
+	 * Called by the interface when it has added the connection to its own
+	 * connections.
+	 * @param ni The interface
+	 * @param index Index of the connection in the interface's connections
+	 * @param con The connection
+	 */
+	void addConnection(NetworkInterface ni, int index, Connection con) {
+		this.connections.add(getConnectionOffset(ni) + index, con);
+	}
 
-		return lc;
+	/**
+	 * Removes a connection of an interface from the connections of this host.
+	 * Called by the interface when it has removed the connection from its own
+	 * connections.
+	 * @param ni The interface
+	 * @param index Index the connection had in the interface's connections
+	 */
+	void removeConnection(NetworkInterface ni, int index) {
+		this.connections.remove(getConnectionOffset(ni) + index);
+	}
+
+	/**
+	 * Returns the index of the first connection of an interface in the
+	 * connections of this host
+	 * @param ni The interface
+	 * @return The index
+	 */
+	private int getConnectionOffset(NetworkInterface ni) {
+		int offset = 0;
+		for (int i = 0, n = net.size(); i < n; i++) {
+			NetworkInterface other = net.get(i);
+			if (other == ni) {
+				return offset;
+			}
+			offset += other.getConnections().size();
+		}
+		throw new SimError("No interface " + ni + " in host " + this);
 	}
 
 	/**
@@ -189,6 +244,15 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.path;
 	}
 
+	/**
+	 * Returns the speed this node moves with on the next call of 
+	 * {@link #move(double)} (if it is time to move).
+	 * @return The speed or -1 if the node doesn't have a destination yet
+	 */
+	double getCurrentSpeed() {
+		return this.destination == null ? -1 : this.speed;
+	}
+
 
 	/**
 	 * Sets the Node's location overriding any location set by movement model
@@ -331,17 +395,83 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Informs the host that a transfer it was sending is done (see 
+	 * {@link World#EXACT_TRANSFER_TIMES_S}). The router finalizes the 
+	 * transfer and, if the host is active, is updated so that it can start
+	 * the next transfer right away.
+	 * @param con The connection whose transfer is done
+	 */
+	public void transferCompleted(Connection con) {
+		this.router.transferCompleted(con);
+		if (isActive()) {
+			this.router.update();
+		}
+	}
+
+	/**
+	 * Returns the time until which moving and updating this host does 
+	 * nothing, as long as no other host moves, no external events are
+	 * processed and no connections go up or down. The host stays idle while
+	 * it waits for its next path, its activeness doesn't change and its 
+	 * router and interfaces are idle.
+	 * @return The time until which the host is idle (the current time if
+	 * it is not idle)
+	 * @see World#SKIP_IDLE_UPDATES_S
+	 */
+	public double getIdleUntil() {
+		double idleUntil = this.movement.getNextActivenessChange();
+		if (!isActive()) {
+			return idleUntil; // not moved nor updated
+		}
+
+		idleUntil = Math.min(idleUntil, this.nextTimeToMove);
+		idleUntil = Math.min(idleUntil, this.router.getIdleUntil());
+		for (int i=0, n = net.size(); i < n; i++) {
+			idleUntil = Math.min(idleUntil, net.get(i).getIdleUntil());
+		}
+		return idleUntil;
+	}
+
+	/**
+	 * Stops or restarts the movement of this host. A stopped host doesn't
+	 * wait for its next path, so it can stay idle until its router or
+	 * interfaces have something to do (see {@link #getIdleUntil()}).
+	 * @param enabled True to move the host, false to keep it in place
+	 */
+	void setMovementEnabled(boolean enabled) {
+		if (!enabled) {
+			this.nextTimeToMove = Double.MAX_VALUE;
+		}
+		else if (this.nextTimeToMove == Double.MAX_VALUE) {
+			/* continue the ongoing path or wait for the next one */
+			this.nextTimeToMove = (this.path != null ? SimClock.getTime() :
+				movement.nextPathAvailable());
+		}
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is
 	 * not time to move yet
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {		
+		if (!isActive()) {
+			return; 
+		}
+		moveActive(timeIncrement);
+	}
+
+	/**
+	 * Moves the node like {@link #move(double)} but without checking
+	 * whether the node is active; the caller must have done that already.
+	 * @param timeIncrement How long time the node moves
+	 */
+	void moveActive(double timeIncrement) {
 		double possibleMovement;
 		double distance;
-		double dx, dy;
 
-		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (SimClock.getTime() < this.nextTimeToMove) {
 			return; 
 		}
 		if (this.destination == null) {
@@ -363,13 +493,53 @@ public class DTNHost implements Comparable<DTNHost> {
 			distance = this.location.distance(this.destination);
 		}
 
+		moveTowardsDestination(possibleMovement, distance);
+	}	
+
+	/**
+	 * Moves an active node towards its current destination only if it can do
+	 * so without reaching the destination, i.e., without requesting new
+	 * waypoints from the movement model or informing the movement listeners.
+	 * Touches only the state of this host so it can be called concurrently 
+	 * for different hosts.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved (or it was not time to move yet),
+	 * false if the movement must be done using {@link #moveActive(double)}
+	 */
+	boolean moveOnSegment(double timeIncrement) {
+		if (SimClock.getTime() < this.nextTimeToMove) {
+			return true; 
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		double possibleMovement = timeIncrement * speed;
+		double distance = this.location.distance(this.destination);
+		if (possibleMovement >= distance) {
+			return false; // would reach the destination
+		}
+
+		moveTowardsDestination(possibleMovement, distance);
+		return true;
+	}
+
+	/**
+	 * Moves the node towards the destination
+	 * @param possibleMovement How far the node moves
+	 * @param distance Distance to the destination
+	 */
+	private void moveTowardsDestination(double possibleMovement, 
+			double distance) {
+		double dx, dy;
+
 		// move towards the point for possibleMovement amount
 		dx = (possibleMovement/distance) * (this.destination.getX() -
 				this.location.getX());
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
-	}	
+	}
 
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
@@ -8,6 +8,10 @@ import gui.DTNSimGUI;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ui.DTNSimTextUI;
 
@@ -20,6 +24,10 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** If this option ({@value}) follows the batch mode run range, the
+	 * given number of runs are run concurrently (e.g. 
+	 * <CODE>-b 1:200 -p 8</CODE>) */
+	public static final String PARALLEL_RUNS_FLAG = "-p";
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -34,7 +42,9 @@ public class DTNSim {
 	 * or a with a combination of starting run and the number of runs, 
 	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
 	 * arrays are used for different runs (see 
-	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings 
+	 * {@link Settings#setRunIndex(int)}). The run range can be followed by
+	 * {@link #PARALLEL_RUNS_FLAG} and the number of runs to run concurrently.
+	 * Following arguments are the settings 
 	 * files for the simulation run (if any). For GUI mode, the number before 
 	 * settings files (if given) is the run index to use for that run.
 	 * @param args Command line arguments
@@ -45,6 +55,7 @@ public class DTNSim {
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
+		int nrofParallelRuns = 1;
 
 		/* set US locale to parse decimals in consistent way */
 		java.util.Locale.setDefault(java.util.Locale.US);
@@ -58,6 +69,10 @@ public class DTNSim {
                 else {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
+                    if (args.length > 3 && args[2].equals(PARALLEL_RUNS_FLAG)) {
+                    	nrofParallelRuns = parseNrofParallelRuns(args[3]);
+                    	firstConfIndex = 4;
+                    }
                 }
 			}
 			else { /* GUI mode */				
@@ -78,11 +93,16 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			if (nrofParallelRuns > 1) {
+				runInParallel(nrofRuns, nrofParallelRuns);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +113,49 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Runs batch mode runs concurrently. Every run is given its own
+	 * {@link SimContext}; the settings read from the files are shared.
+	 * @param nrofRuns The first and (last_run_index - 1) in an array
+	 * @param nrofThreads How many runs are run at the same time
+	 */
+	private static void runInParallel(final int[] nrofRuns, int nrofThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runs.add(executor.submit(new Runnable() {
+				public void run() {
+					SimContext.setCurrent(new SimContext());
+					try {
+						print("Run " + (runIndex+1) + "/" + nrofRuns[1]);
+						Settings.setRunIndex(runIndex);
+						resetForNextRun();
+						new DTNSimTextUI().start();
+					}
+					finally {
+						SimContext.setCurrent(null);
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+
+		for (Future<?> run : runs) {
+			try {
+				run.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				System.err.println("Simulation run failed");
+				e.getCause().printStackTrace();
+				System.exit(-1);
+			}
+		}
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -140,7 +203,7 @@ public class DTNSim {
 	 * @param className Full name (i.e., containing the packet path) 
 	 * of the class to register. For example: <code>core.SimClock</code> 
 	 */
-	public static void registerForReset(String className) {
+	public static synchronized void registerForReset(String className) {
 		Class<?> c = null;
 		try {
 			c = Class.forName(className);
@@ -160,18 +223,31 @@ public class DTNSim {
 	}
 	
 	/**
-	 * Resets all registered classes.
+	 * Resets all registered classes (in the {@link SimContext} of the 
+	 * current thread).
 	 */
 	private static void resetForNextRun() {
-		for (Class<?> c : resetList) {
-			try {
-				Method m = c.getMethod(RESET_METHOD_NAME);
-				m.invoke(null);
-			} catch (Exception e) {
-				System.err.println("Failed to reset class " + c.getName());
-				e.printStackTrace();
-				System.exit(-1);
-			}
+		List<Class<?>> classes;
+		synchronized (DTNSim.class) {
+			classes = new ArrayList<Class<?>>(resetList);
+		}
+		for (Class<?> c : classes) {
+			resetClass(c);
+		}
+	}
+
+	/**
+	 * Resets a class by calling its static resetting method
+	 * @param c The class to reset
+	 */
+	static void resetClass(Class<?> c) {
+		try {
+			Method m = c.getMethod(RESET_METHOD_NAME);
+			m.invoke(null);
+		} catch (Exception e) {
+			System.err.println("Failed to reset class " + c.getName());
+			e.printStackTrace();
+			System.exit(-1);
 		}
 	}
 	
@@ -216,6 +292,26 @@ public class DTNSim {
 		return val;
 	}
 	
+	/**
+	 * Parses the number of concurrent runs from a command line argument
+	 * @param arg The argument to parse
+	 * @return The number of concurrent runs
+	 */
+	private static int parseNrofParallelRuns(String arg) {
+		int val = 1;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			val = 0;
+		}
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of concurrent runs");
+			System.exit(-1);
+		}
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * @param txt Text to print
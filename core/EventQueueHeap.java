@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+
+import java.util.List;
+
+/**
+ * Indexed min-heap of event queues ordered by the times of their next
+ * events. Queues with the same next event time are ordered by their index
+ * in the list the heap was created from. The times are read when the heap
+ * is created and when a queue is {@link #update(int) updated}, so the
+ * heap must be updated every time the next event of a queue changes.
+ */
+public class EventQueueHeap {
+	/** the queues by their index */
+	private EventQueue[] queues;
+	/** next event times of the queues (when last read), by queue index */
+	private double[] times;
+	/** the heap of queue indexes */
+	private int[] heap;
+	/** positions of the queues in the heap, by queue index */
+	private int[] positions;
+
+	/**
+	 * Creates a heap of the given queues
+	 * @param queues The queues
+	 */
+	public EventQueueHeap(List<EventQueue> queues) {
+		int n = queues.size();
+		this.queues = queues.toArray(new EventQueue[n]);
+		this.times = new double[n];
+		this.heap = new int[n];
+		this.positions = new int[n];
+		for (int i = 0; i < n; i++) {
+			times[i] = this.queues[i].nextEventsTime();
+			heap[i] = i;
+			positions[i] = i;
+		}
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Returns true if the heap has no queues
+	 * @return true if the heap has no queues
+	 */
+	public boolean isEmpty() {
+		return heap.length == 0;
+	}
+
+	/**
+	 * Returns the index of the queue whose next event is the earliest.
+	 * The heap must not be empty.
+	 * @return The index of the queue
+	 */
+	public int first() {
+		return heap[0];
+	}
+
+	/**
+	 * Returns the queue of an index
+	 * @param index The index of the queue
+	 * @return The queue
+	 */
+	public EventQueue getQueue(int index) {
+		return queues[index];
+	}
+
+	/**
+	 * Returns the next event time of a queue (as it was when the queue was
+	 * last updated)
+	 * @param index The index of the queue
+	 * @return The time
+	 */
+	public double getTime(int index) {
+		return times[index];
+	}
+
+	/**
+	 * Reads the next event time of a queue again and moves the queue to
+	 * its place in the heap
+	 * @param index The index of the queue
+	 */
+	public void update(int index) {
+		double time = queues[index].nextEventsTime();
+		if (time == times[index]) {
+			return;
+		}
+		times[index] = time;
+		siftUp(positions[index]);
+		siftDown(positions[index]);
+	}
+
+	/**
+	 * Returns true if the queue at heap position i comes before the queue
+	 * at heap position j
+	 */
+	private boolean before(int i, int j) {
+		int qi = heap[i];
+		int qj = heap[j];
+		return times[qi] < times[qj] || (times[qi] == times[qj] && qi < qj);
+	}
+
+	/**
+	 * Moves the queue at a heap position up to its place
+	 * @param pos The heap position
+	 */
+	private void siftUp(int pos) {
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!before(pos, parent)) {
+				return;
+			}
+			swap(pos, parent);
+			pos = parent;
+		}
+	}
+
+	/**
+	 * Moves the queue at a heap position down to its place
+	 * @param pos The heap position
+	 */
+	private void siftDown(int pos) {
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heap.length) {
+				return;
+			}
+			if (child + 1 < heap.length && before(child + 1, child)) {
+				child++;
+			}
+			if (!before(child, pos)) {
+				return;
+			}
+			swap(pos, child);
+			pos = child;
+		}
+	}
+
+	/**
+	 * Swaps the queues at two heap positions
+	 */
+	private void swap(int i, int j) {
+		int q = heap[i];
+		heap[i] = heap[j];
+		heap[j] = q;
+		positions[heap[i]] = i;
+		positions[heap[j]] = j;
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * A set of message ID handles (see {@link Message#getIdHandle()}) stored in
+ * a bitset. The handles are small consecutive integers, so the set takes
+ * about one bit per handle, and sets can be merged and compared a word
+ * (64 handles) at a time. The handles below a given bound can be dropped
+ * from the set to free the memory they take.
+ */
+public class IdHandleSet {
+	/** number of handles in a word (as a shift) */
+	private static final int WORD_SHIFT = 6;
+	private static final long[] NO_WORDS = new long[0];
+
+	/** the bits of the handles from base * 64 on */
+	private long[] words;
+	/** index of the first word of the words array */
+	private int base;
+	/** the handles below this are not added to the set */
+	private int bound;
+	/** number of handles in the set */
+	private int size;
+
+	/**
+	 * Creates a new, empty, set
+	 */
+	public IdHandleSet() {
+		this.words = NO_WORDS;
+		this.base = 0;
+		this.bound = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a handle to the set. Handles below the bound given to
+	 * {@link #removeBelow(int)} are not added.
+	 * @param handle The handle to add
+	 * @return True if the handle was added, false if it was in the set
+	 * already (or was below the bound)
+	 */
+	public boolean add(int handle) {
+		if (handle < bound) {
+			return false;
+		}
+		int w = (handle >>> WORD_SHIFT) - base;
+		if (w >= words.length) {
+			grow(w + 1);
+		}
+		long bit = 1L << handle;
+		if ((words[w] & bit) != 0) {
+			return false;
+		}
+		words[w] |= bit;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes a handle from the set
+	 * @param handle The handle to remove
+	 * @return True if the handle was in the set
+	 */
+	public boolean remove(int handle) {
+		if (!contains(handle)) {
+			return false;
+		}
+		words[(handle >>> WORD_SHIFT) - base] &= ~(1L << handle);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns true if the given handle is in the set
+	 * @param handle The handle
+	 * @return True if the handle is in the set
+	 */
+	public boolean contains(int handle) {
+		return (word((handle >>> WORD_SHIFT)) & (1L << handle)) != 0;
+	}
+
+	/**
+	 * Returns the number of handles in the set
+	 * @return the number of handles in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the set is empty
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds all the handles of another set to this set (except the ones below
+	 * the bound given to {@link #removeBelow(int)})
+	 * @param other The other set
+	 * @return True if any handles were added
+	 */
+	public boolean addAll(IdHandleSet other) {
+		int from = Math.max(base, other.base);
+		int end = other.base + other.words.length;
+		while (end > from && other.words[end - 1 - other.base] == 0) {
+			end--; // no need to grow for empty words
+		}
+		if (end - base > words.length) {
+			grow(end - base);
+		}
+
+		boolean changed = false;
+		for (int w = from; w < end; w++) {
+			long added = other.words[w - other.base] & ~words[w - base];
+			if (w == base) {
+				added &= -1L << bound; // the first word may be partly below
+			}
+			if (added != 0) {
+				words[w - base] |= added;
+				size += Long.bitCount(added);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns the smallest handle of the set that is equal to or greater than
+	 * the given handle
+	 * @param from The handle to start from
+	 * @return The handle or -1 if there are no such handles
+	 */
+	public int nextHandle(int from) {
+		return next(null, true, from);
+	}
+
+	/**
+	 * Returns the smallest handle of the set that is also in the other set
+	 * and is equal to or greater than the given handle
+	 * @param other The other set
+	 * @param from The handle to start from
+	 * @return The handle or -1 if there are no such handles
+	 */
+	public int nextHandleIn(IdHandleSet other, int from) {
+		return next(other, true, from);
+	}
+
+	/**
+	 * Returns the smallest handle of the set that is not in the other set
+	 * and is equal to or greater than the given handle
+	 * @param other The other set
+	 * @param from The handle to start from
+	 * @return The handle or -1 if there are no such handles
+	 */
+	public int nextHandleNotIn(IdHandleSet other, int from) {
+		return next(other, false, from);
+	}
+
+	/**
+	 * Removes all handles below the given bound from the set. Handles below
+	 * the bound are not added to the set anymore.
+	 * @param bound The bound
+	 */
+	public void removeBelow(int bound) {
+		int newBase = bound >>> WORD_SHIFT;
+		if (bound <= this.bound) {
+			return;
+		}
+		this.bound = bound;
+
+		int w = newBase - base;
+		for (int i = 0; i < Math.min(w, words.length); i++) {
+			size -= Long.bitCount(words[i]);
+		}
+		if (w < words.length) {
+			long below = words[w] & ~(-1L << bound);
+			size -= Long.bitCount(below);
+			words[w] &= ~below;
+			words = Arrays.copyOfRange(words, w, words.length);
+		}
+		else {
+			words = NO_WORDS;
+		}
+		base = newBase;
+	}
+
+	/**
+	 * Returns the smallest handle of this set that is equal to or greater
+	 * than the given handle and is in (or is not in) the other set
+	 * @param other The other set or null for no restriction
+	 * @param in Should the handle be in the other set (or not)
+	 * @param from The handle to start from
+	 * @return The handle or -1 if there are no such handles
+	 */
+	private int next(IdHandleSet other, boolean in, int from) {
+		int w = Math.max(from >>> WORD_SHIFT, base);
+		if (w > from >>> WORD_SHIFT) {
+			from = w << WORD_SHIFT;
+		}
+
+		long word = masked(w, other, in) & (-1L << from);
+		while (word == 0) {
+			if (++w >= base + words.length) {
+				return -1;
+			}
+			word = masked(w, other, in);
+		}
+		return (w << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Returns a word of this set masked with the word of the other set
+	 * @param w Index of the word
+	 * @param other The other set or null for no mask
+	 * @param in Should the bits of the other set be kept (or removed)
+	 * @return The masked word
+	 */
+	private long masked(int w, IdHandleSet other, boolean in) {
+		if (other == null) {
+			return word(w);
+		}
+		return in ? word(w) & other.word(w) : word(w) & ~other.word(w);
+	}
+
+	/**
+	 * Returns a word of the set
+	 * @param w Index of the word
+	 * @return The word (zero if the word is outside the words array)
+	 */
+	private long word(int w) {
+		w -= base;
+		return w >= 0 && w < words.length ? words[w] : 0;
+	}
+
+	/**
+	 * Grows the words array
+	 * @param minSize The minimum length of the array
+	 */
+	private void grow(int minSize) {
+		words = Arrays.copyOf(words, Math.max(minSize, 2 * words.length));
+	}
+}
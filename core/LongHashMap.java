@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from primitive long keys (or int keys widened to long) to objects.
+ * Uses open addressing (linear probing) like {@link LongHashSet} so keys
+ * don't have to be boxed.
+ * @param <V> Type of the values
+ */
+public class LongHashMap<V> {
+	/** marks a free slot; the mapping of the key itself is kept separately */
+	private static final long FREE = 0L;
+	/** smallest (and default) size of the slot arrays */
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	/** is the key {@link #FREE} in the map */
+	private boolean containsFree;
+	/** value of the key {@link #FREE} */
+	private V freeValue;
+	private int size;
+	/** slot arrays' length - 1 (the length is a power of two) */
+	private int mask;
+	/** size after which the slot arrays are grown */
+	private int maxSize;
+	/** view of the values */
+	private Collection<V> valueView;
+
+	/**
+	 * Creates a new, empty, map
+	 */
+	public LongHashMap() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * Creates a new, empty, map with room for the given number of mappings
+	 * @param expectedSize How many mappings the map should hold without
+	 * growing
+	 */
+	public LongHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity / 2 < expectedSize) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+		this.valueView = new Values();
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == FREE) {
+			return freeValue;
+		}
+
+		int i = slotOf(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				return (V)values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the key is in the map
+	 * @param key The key to look for
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(long key) {
+		if (key == FREE) {
+			return containsFree;
+		}
+
+		int i = slotOf(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Maps a key to a value
+	 * @param key The key
+	 * @param value The value
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (key == FREE) {
+			V old = freeValue;
+			if (!containsFree) {
+				containsFree = true;
+				size++;
+			}
+			freeValue = value;
+			return old;
+		}
+
+		int i = slotOf(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > maxSize) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key to remove
+	 * @return The value of the key or null if the key wasn't in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if (key == FREE) {
+			V old = freeValue;
+			if (containsFree) {
+				containsFree = false;
+				freeValue = null;
+				size--;
+			}
+			return old;
+		}
+
+		int i = slotOf(key);
+		while (keys[i] != key) {
+			if (keys[i] == FREE) {
+				return null;
+			}
+			i = (i + 1) & mask;
+		}
+		V old = (V)values[i];
+
+		/* move the following mappings of the probe sequence backwards so
+		 * that none of them are left behind a free slot */
+		int free = i;
+		i = (i + 1) & mask;
+		while (keys[i] != FREE) {
+			int home = slotOf(keys[i]);
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				free = i;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[free] = FREE;
+		values[free] = null;
+		size--;
+		return old;
+	}
+
+	/**
+	 * Returns the number of mappings in the map
+	 * @return the number of mappings in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all mappings from the map
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(keys, FREE);
+		Arrays.fill(values, null);
+		containsFree = false;
+		freeValue = null;
+		size = 0;
+	}
+
+	/**
+	 * Returns a read-only view of the values. The map must not be modified
+	 * while iterating.
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		return valueView;
+	}
+
+	/**
+	 * Returns the slot where probing for a key starts
+	 * @param key The key
+	 * @return Index of the slot
+	 */
+	private int slotOf(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Creates new, empty, slot arrays
+	 * @param capacity Length of the arrays (a power of two)
+	 */
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.maxSize = capacity / 4 * 3;
+	}
+
+	/**
+	 * Moves the mappings to new slot arrays
+	 * @param capacity Length of the new arrays (a power of two)
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		allocate(capacity);
+		for (int j=0; j<oldKeys.length; j++) {
+			if (oldKeys[j] != FREE) {
+				int i = slotOf(oldKeys[j]);
+				while (keys[i] != FREE) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Read-only collection view of the values
+	 */
+	private class Values extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ValueIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Iterator over the values of the used slots (and the value of the
+	 * free key last)
+	 */
+	private class ValueIterator implements Iterator<V> {
+		/** index of the next slot to check */
+		private int next = 0;
+		/** has the value of the free key been returned */
+		private boolean freeDone = !containsFree;
+
+		public boolean hasNext() {
+			while (next < keys.length && keys[next] == FREE) {
+				next++;
+			}
+			return next < keys.length || !freeDone;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (next < keys.length) {
+				return (V)values[next++];
+			}
+			freeDone = true;
+			return freeValue;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+	}
+}
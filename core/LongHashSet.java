@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive long values. Uses open addressing (linear probing) in a
+ * single array so adding, removing and looking up values doesn't create any
+ * objects.
+ */
+public class LongHashSet {
+	/** marks a free slot; whether the value itself is in the set is
+	 * tracked separately */
+	private static final long FREE = 0L;
+	/** smallest (and default) size of the slot array */
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] values;
+	/** is the value {@link #FREE} in the set */
+	private boolean containsFree;
+	private int size;
+	/** slot array's length - 1 (the length is a power of two) */
+	private int mask;
+	/** size after which the slot array is grown */
+	private int maxSize;
+
+	/**
+	 * Creates a new, empty, set
+	 */
+	public LongHashSet() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * Creates a new, empty, set with room for the given number of values
+	 * @param expectedSize How many values the set should hold without
+	 * growing
+	 */
+	public LongHashSet(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity / 2 < expectedSize) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value to add
+	 * @return True if the value was added, false if it was already in the set
+	 */
+	public boolean add(long value) {
+		if (value == FREE) {
+			if (containsFree) {
+				return false;
+			}
+			containsFree = true;
+			size++;
+			return true;
+		}
+
+		int i = slotOf(value);
+		while (values[i] != FREE) {
+			if (values[i] == value) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		values[i] = value;
+		if (++size > maxSize) {
+			rehash(values.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the value is in the set
+	 * @param value The value to look for
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(long value) {
+		if (value == FREE) {
+			return containsFree;
+		}
+
+		int i = slotOf(value);
+		while (values[i] != FREE) {
+			if (values[i] == value) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a value from the set
+	 * @param value The value to remove
+	 * @return True if the value was removed, false if it wasn't in the set
+	 */
+	public boolean remove(long value) {
+		if (value == FREE) {
+			if (!containsFree) {
+				return false;
+			}
+			containsFree = false;
+			size--;
+			return true;
+		}
+
+		int i = slotOf(value);
+		while (values[i] != value) {
+			if (values[i] == FREE) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+
+		/* move the following values of the probe sequence backwards so that
+		 * none of them are left behind a free slot */
+		int free = i;
+		i = (i + 1) & mask;
+		while (values[i] != FREE) {
+			int home = slotOf(values[i]);
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				values[free] = values[i];
+				free = i;
+			}
+			i = (i + 1) & mask;
+		}
+		values[free] = FREE;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return the number of values in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all values from the set
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(values, FREE);
+		containsFree = false;
+		size = 0;
+	}
+
+	/**
+	 * Returns the slot where probing for a value starts
+	 * @param value The value
+	 * @return Index of the slot
+	 */
+	private int slotOf(long value) {
+		long hash = value * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Creates a new, empty, slot array
+	 * @param capacity Length of the array (a power of two)
+	 */
+	private void allocate(int capacity) {
+		this.values = new long[capacity];
+		this.mask = capacity - 1;
+		this.maxSize = capacity / 4 * 3;
+	}
+
+	/**
+	 * Moves the values to a new slot array
+	 * @param capacity Length of the new array (a power of two)
+	 */
+	private void rehash(int capacity) {
+		long[] old = this.values;
+		allocate(capacity);
+		for (long value : old) {
+			if (value != FREE) {
+				int i = slotOf(value);
+				while (values[i] != FREE) {
+					i = (i + 1) & mask;
+				}
+				values[i] = value;
+			}
+		}
+	}
+}
@@ -4,11 +4,13 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -20,12 +22,28 @@ public class Message implements Comparable<Message> {
 	private DTNHost to;
 	/** Identifier of the message */
 	private String id;
+	/** Integer handle of the identifier */
+	private int idHandle;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** The last node this message has passed (and through it, the nodes 
+	 * before that). Replicas share the nodes they have in common. */
+	private Hop path; 
+	/** List view of the path (created when first asked) */
+	private List<DTNHost> hopsView;
+	/** The per-run state of the class */
+	private static class State {
+		/** Next unique identifier to be given */
+		private int nextUniqueId = 0;
+		/** Integer handles of the message identifiers */
+		private HashMap<String, Integer> idHandles = 
+			new HashMap<String, Integer>();
+		/** Number of copies of the messages in the message buffers and
+		 * incoming messages of the routers, indexed by the ID handles */
+		private int[] nrofCopies = new int[0];
+		/** No copies are left of the messages with a smaller ID handle */
+		private int deadBound = 0;
+	}
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
@@ -45,6 +63,9 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** True if the properties map may be shared with other replicas and
+	 * must be copied before modifying */
+	private boolean propertiesShared;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -67,8 +88,20 @@ public class Message implements Comparable<Message> {
 		this.to = to;
 		this.id = id;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.path = null;
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		this.uniqueId = state.nextUniqueId++;
+		
+		Integer handle = state.idHandles.get(id);
+		if (handle == null) {
+			handle = state.idHandles.size();
+			state.idHandles.put(id, handle);
+			if (handle == state.nrofCopies.length) {
+				state.nrofCopies = Arrays.copyOf(state.nrofCopies,
+						2 * handle + 16);
+			}
+		}
+		this.idHandle = handle;
 		
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -78,10 +111,27 @@ public class Message implements Comparable<Message> {
 		this.properties = null;
 		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replica of a message
+	 * @param m The message to replicate
+	 * @see #replicate()
+	 */
+	private Message(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.id = m.id;
+		this.idHandle = m.idHandle;
+		this.size = m.size;
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		this.uniqueId = state.nextUniqueId++;
+		this.timeReceived = SimClock.getTime();
+		
+		copyFrom(m);
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
@@ -106,6 +156,70 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 	
+	/**
+	 * Returns an integer handle of the message's ID. The handles are 
+	 * given in the order the IDs are first used (starting from zero) and
+	 * all messages with the same ID have the same handle.
+	 * @return The ID handle
+	 * @see #getIdHandle(String)
+	 */
+	public int getIdHandle() {
+		return this.idHandle;
+	}
+	
+	/**
+	 * Returns the integer handle of a message ID
+	 * @param id The message ID
+	 * @return The handle or -1 if no message with the ID has been created
+	 * @see #getIdHandle()
+	 */
+	public static int getIdHandle(String id) {
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		Integer handle = state.idHandles.get(id);
+		return handle == null ? -1 : handle;
+	}
+	
+	/**
+	 * Tells that a copy of a message was added to a message buffer or to
+	 * the incoming messages of a router. Every added copy must be removed
+	 * with {@link #copyRemoved(int)} when it leaves the buffer.
+	 * @param idHandle ID handle of the message
+	 */
+	public static void copyAdded(int idHandle) {
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		state.nrofCopies[idHandle]++;
+	}
+	
+	/**
+	 * Tells that a copy of a message was removed from a message buffer or
+	 * from the incoming messages of a router
+	 * @param idHandle ID handle of the message
+	 * @see #copyAdded(int)
+	 */
+	public static void copyRemoved(int idHandle) {
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		assert state.nrofCopies[idHandle] > 0 : "No copies of " + idHandle;
+		state.nrofCopies[idHandle]--;
+	}
+	
+	/**
+	 * Returns a bound for the ID handles of messages that are gone: no
+	 * router has a copy of a message whose ID handle is smaller than the
+	 * bound, so the message can't be forwarded anymore (regardless of its
+	 * TTL). Message IDs are expected to be unique, i.e., no new messages
+	 * are created with the ID of a message that is gone.
+	 * @return The bound
+	 */
+	public static int getDeadIdHandleBound() {
+		State state = (State)SimContext.getCurrent().getState(Message.class);
+		int count = state.idHandles.size();
+		while (state.deadBound < count &&
+				state.nrofCopies[state.deadBound] == 0) {
+			state.deadBound++;
+		}
+		return state.deadBound;
+	}
+	
 	/**
 	 * Returns an ID that is unique per message instance 
 	 * (different for replicates too)
@@ -128,15 +242,22 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new Hop(node, this.path);
+		this.hopsView = null;
 	}
 	
 	/**
-	 * Returns a list of nodes this message has passed so far
+	 * Returns a list of nodes this message has passed so far. The list
+	 * can't be modified. The first indexed access or iteration of the list
+	 * copies the path, which takes time linear to the hop count; after
+	 * that the list works like an array list.
 	 * @return The list as vector
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.hopsView == null) {
+			this.hopsView = new HopList(this.path);
+		}
+		return this.hopsView;
 	}
 	
 	/**
@@ -144,7 +265,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length -1;
 	}
 	
 	/** 
@@ -173,6 +294,20 @@ public class Message implements Comparable<Message> {
 	public void setTtl(int ttl) {
 		this.initTtl = ttl;
 	}
+	
+	/**
+	 * Returns the time when the (initial) TTL of this message expires.
+	 * Note that {@link #getTtl()} is rounded down to whole minutes, so it
+	 * reaches zero a minute before this time.
+	 * @return The expiry time or Double.POSITIVE_INFINITY if the TTL is
+	 * infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
 	
 	/**
 	 * Sets the time when this message was received.
@@ -250,13 +385,15 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data from other message. The path and the properties
+	 * are shared with the other message until either of the messages
+	 * modifies them. If new fields are introduced to this class, most 
+	 * likely they should be copied here too (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.path = m.path;
+		this.hopsView = null;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -264,10 +401,9 @@ public class Message implements Comparable<Message> {
 		this.appID = m.appID;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.properties = m.properties;
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 	
@@ -317,6 +453,11 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}		
+		else if (this.propertiesShared) {
+			/* copy on write: other replicas keep the old values */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,9 +467,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -343,7 +482,7 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		SimContext.getCurrent().setState(Message.class, new State());
 	}
 
 	/**
@@ -360,4 +499,106 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 	
+	/**
+	 * A node on the path of a message. The nodes are never modified so
+	 * the replicas of a message can share the part of the path they have
+	 * in common.
+	 */
+	private static class Hop {
+		private final DTNHost host;
+		private final Hop previous;
+		/** number of nodes on the path up to and including this one */
+		private final int length;
+		
+		private Hop(DTNHost host, Hop previous) {
+			this.host = host;
+			this.previous = previous;
+			this.length = previous == null ? 1 : previous.length + 1;
+		}
+	}
+	
+	/**
+	 * Read-only list view of a path, first node first. The nodes are
+	 * copied to an array on the first indexed access or iteration; after
+	 * that all accesses are constant time. {@link #contains(Object)} and
+	 * {@link #size()} use the path directly.
+	 */
+	private static class HopList extends AbstractList<DTNHost> {
+		private final Hop last;
+		/** the nodes of the path, first node first, or null if not copied */
+		private DTNHost[] hosts;
+		
+		private HopList(Hop last) {
+			this.last = last;
+		}
+		
+		/**
+		 * Returns the nodes of the path as an array, copying them on the
+		 * first call
+		 * @return The nodes, first node first
+		 */
+		private DTNHost[] hosts() {
+			if (this.hosts == null) {
+				DTNHost[] copy = new DTNHost[size()];
+				int i = copy.length;
+				for (Hop h = last; h != null; h = h.previous) {
+					copy[--i] = h.host;
+				}
+				this.hosts = copy;
+			}
+			return this.hosts;
+		}
+		
+		@Override
+		public DTNHost get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+			return hosts()[index];
+		}
+		
+		@Override
+		public int size() {
+			return last == null ? 0 : last.length;
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			for (Hop h = last; h != null; h = h.previous) {
+				if (h.host == o) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public int indexOf(Object o) {
+			DTNHost[] hosts = hosts();
+			for (int i = 0; i < hosts.length; i++) {
+				if (hosts[i] == o) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public int lastIndexOf(Object o) {
+			DTNHost[] hosts = hosts();
+			for (int i = hosts.length - 1; i >= 0; i--) {
+				if (hosts[i] == o) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public Iterator<DTNHost> iterator() {
+			return Collections.unmodifiableList(
+					Arrays.asList(hosts())).iterator();
+		}
+	}
+	
 }
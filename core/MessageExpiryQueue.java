@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import routing.MessageRouter;
+
+/**
+ * Event queue of the times when the TTLs of buffered messages reach zero.
+ * When a message's TTL reaches zero, the router that buffered it is told
+ * about it (see {@link MessageRouter#messageExpired(Message)}), so the
+ * message can be dropped at the exact time instead of at the router's next
+ * TTL check. The events of this queue don't request updates of the hosts.
+ * @see World#EXACT_EXPIRY_TIMES_S
+ */
+public class MessageExpiryQueue implements EventQueue {
+	/** orders the expiries by their times and then by the order they
+	 * were added in */
+	private static final Comparator<Expiry> EXPIRY_ORDER =
+		new Comparator<Expiry>() {
+		public int compare(Expiry e1, Expiry e2) {
+			int cmp = e1.compareTo(e2);
+			if (cmp == 0) {
+				cmp = e1.seqNr < e2.seqNr ? -1 : (e1.seqNr > e2.seqNr ? 1 : 0);
+			}
+			return cmp;
+		}
+	};
+
+	/** the expiries of the buffered (and already removed) messages */
+	private PriorityQueue<Expiry> expiries;
+	/** number of expiries added so far */
+	private long nrofAdded;
+
+	static {
+		reset();
+		DTNSim.registerForReset(MessageExpiryQueue.class.getCanonicalName());
+	}
+
+	/**
+	 * The per-run state of the class
+	 */
+	private static class State {
+		/** queue where the expiries are added or null if they are not
+		 * scheduled */
+		private MessageExpiryQueue queue = null;
+	}
+
+	/**
+	 * Returns the per-run state of the class
+	 * @return the per-run state of the class
+	 */
+	private static State getState() {
+		return (State)SimContext.getCurrent().getState(
+				MessageExpiryQueue.class);
+	}
+
+	/**
+	 * Constructor. Creates an empty queue.
+	 */
+	MessageExpiryQueue() {
+		this.expiries = new PriorityQueue<Expiry>(11, EXPIRY_ORDER);
+		this.nrofAdded = 0;
+	}
+
+	/**
+	 * Returns the queue where the routers should add the expiries of the
+	 * messages they buffer
+	 * @return The queue or null if the messages are not dropped at their
+	 * exact expiry times
+	 */
+	public static MessageExpiryQueue getQueue() {
+		return getState().queue;
+	}
+
+	/**
+	 * Sets the queue where the routers add the expiries of the messages
+	 * (see {@link World#EXACT_EXPIRY_TIMES_S})
+	 * @param queue The queue or null if the expiries should not be
+	 * scheduled
+	 */
+	static void setQueue(MessageExpiryQueue queue) {
+		getState().queue = queue;
+	}
+
+	/**
+	 * Adds the expiry of a message that was just buffered. The TTL is
+	 * rounded down to minutes (see {@link Message#getTtl()}), so it
+	 * reaches zero a minute before the message's expiry time. If that time
+	 * has already passed, the expiry happens at the current time.
+	 * @param router The router that buffered the message
+	 * @param m The message
+	 */
+	public void add(MessageRouter router, Message m) {
+		double time = Math.max(m.getExpiryTime() - 60, SimClock.getTime());
+		this.expiries.add(new Expiry(time, router, m, this.nrofAdded++));
+	}
+
+	/**
+	 * Returns the next expiry or an event with time Double.MAX_VALUE if
+	 * there aren't any
+	 * @return the next expiry
+	 */
+	public ExternalEvent nextEvent() {
+		Expiry e = this.expiries.poll();
+		if (e == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return e;
+	}
+
+	/**
+	 * Returns the time of the next expiry or Double.MAX_VALUE if there
+	 * aren't any
+	 * @return the time of the next expiry
+	 */
+	public double nextEventsTime() {
+		Expiry e = this.expiries.peek();
+		return e == null ? Double.MAX_VALUE : e.getTime();
+	}
+
+	/**
+	 * Resets all static fields to default values
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(MessageExpiryQueue.class,
+				new State());
+	}
+
+	/**
+	 * Expiry of a buffered message. Tells the router about it; the router
+	 * checks if it still has the message. The router and message refer to
+	 * the running simulation and are not serialized.
+	 */
+	private static class Expiry extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private transient MessageRouter router;
+		private transient Message message;
+		private long seqNr;
+
+		private Expiry(double time, MessageRouter router, Message message,
+				long seqNr) {
+			super(time);
+			this.router = router;
+			this.message = message;
+			this.seqNr = seqNr;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			this.router.messageExpired(this.message);
+		}
+
+		@Override
+		public String toString() {
+			return "MessageExpiry @" + this.time + " " + this.message;
+		}
+	}
+}
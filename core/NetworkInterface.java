@@ -8,6 +8,7 @@ import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -34,12 +35,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
-	private static int nextAddress = 0;
-	private static Random rng;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
-	protected List<Connection> connections; // connected hosts
+	/** connected hosts. Subclasses may read the list but must never change
+	 * it directly: all changes go through {@link #addConnection(Connection)}
+	 * and {@link #removeConnection(int)}, which keep the connections of the
+	 * host in sync */
+	protected List<Connection> connections;
+	private List<Connection> connectionsView; // read-only view of the above
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
@@ -48,6 +52,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** interfaces that were within range when the in-range snapshot was 
+	 * taken, sorted by address */
+	private NetworkInterface[] inRange;
+	private int nrofInRange;
+	/** is the in-range snapshot in use */
+	private boolean hasInRangeSnapshot;
 
 
 	static {
@@ -59,8 +69,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		nextAddress = 0;
-		rng = new Random(0);
+		SimContext.getCurrent().setState(NetworkInterface.class, new State());
+	}
+
+	/**
+	 * The per-run state of the class
+	 */
+	private static class State {
+		private int nextAddress = 0;
+		private Random rng = new Random(0);
+	}
+
+	/**
+	 * Returns the per-run state of the class
+	 * @return the per-run state of the class
+	 */
+	private static State getState() {
+		return (State)SimContext.getCurrent().getState(NetworkInterface.class);
 	}
 	
 	/**
@@ -69,6 +94,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
 		this.connections = new ArrayList<Connection>();
+		this.connectionsView = Collections.unmodifiableList(connections);
 		this.address = getNextNetAddress();
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
@@ -88,6 +114,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public NetworkInterface() {
 		this.interfacetype = "Default";
 		this.connections = new ArrayList<Connection>();
+		this.connectionsView = Collections.unmodifiableList(connections);
 		this.address = getNextNetAddress();
 	}
 	
@@ -96,6 +123,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(NetworkInterface ni) {
 		this.connections = new ArrayList<Connection>();
+		this.connectionsView = Collections.unmodifiableList(connections);
 		this.address = getNextNetAddress();
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
@@ -104,7 +132,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.transmitSpeed = ni.transmitSpeed;
 		
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * scanInterval;
+		this.lastScanTime = getState().rng.nextDouble() * scanInterval;
 	}
 
 	/**
@@ -149,8 +177,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextNetAddress() {
-		return nextAddress++;	
+	private static int getNextNetAddress() {
+		return getState().nextAddress++;	
 	}
 
 	/**
@@ -178,11 +206,55 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	}
 
 	/**
-	 * Returns a list of currently connected connections
+	 * Returns a list of currently connected connections. The list is a
+	 * read-only view; the connections are changed with
+	 * {@link #addConnection(Connection)} and {@link #removeConnection(int)}.
 	 * @return a list of currently connected connections
 	 */
 	public List<Connection> getConnections() {
-		return this.connections;
+		return this.connectionsView;
+	}
+	
+	/**
+	 * Adds a connection to the connections of this interface and its host.
+	 * Subclasses must add their connections with this method (not to
+	 * {@link #connections} directly).
+	 * @param con The connection to add
+	 */
+	protected void addConnection(Connection con) {
+		this.connections.add(con);
+		this.host.addConnection(this, this.connections.size() - 1, con);
+	}
+	
+	/**
+	 * Removes a connection from the connections of this interface and its
+	 * host. Subclasses must remove their connections with this method or
+	 * {@link #removeConnection(Connection)} (not from {@link #connections}
+	 * directly).
+	 * @param index Index of the connection in the connections of this
+	 * interface
+	 * @return The removed connection
+	 */
+	protected Connection removeConnection(int index) {
+		Connection con = this.connections.remove(index);
+		this.host.removeConnection(this, index);
+		return con;
+	}
+	
+	/**
+	 * Removes a connection from the connections of this interface and its
+	 * host
+	 * @param con The connection to remove
+	 * @return True if the connection was removed, false if this interface
+	 * did not have the connection
+	 */
+	protected boolean removeConnection(Connection con) {
+		int index = this.connections.indexOf(con);
+		if (index < 0) {
+			return false;
+		}
+		removeConnection(index);
+		return true;
 	}
 	
 	/**
@@ -227,11 +299,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 
-		this.connections.add(con);
-		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
+		addConnection(con);
+		notifyConnectionListeners(CON_UP, anotherInterface);
 
 		// set up bidirectional connection
-		anotherInterface.getConnections().add(con);
+		anotherInterface.addConnection(con);
+		linkChanged(anotherInterface, true);
 
 		// inform routers about the connection
 		this.host.connectionUp(con);
@@ -246,13 +319,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void disconnect(Connection con, 
 			NetworkInterface anotherInterface) {
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
-		if (!anotherInterface.getConnections().remove(con)) {
+		if (!anotherInterface.removeConnection(con)) {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);	
 		}
+		linkChanged(anotherInterface, false);
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -265,6 +339,21 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @return True if the interface is within range, false if not
 	 */
 	protected boolean isWithinRange(NetworkInterface anotherInterface) {
+		if (this.hasInRangeSnapshot && anotherInterface.hasInRangeSnapshot &&
+				this.optimizer == anotherInterface.optimizer) {
+			return inRangeSnapshotContains(anotherInterface);
+		}
+		return computeWithinRange(anotherInterface);
+	}
+
+	/**
+	 * Computes from the current locations of the hosts whether another 
+	 * interface is within radio range of this interface and this interface 
+	 * is also within radio range of the another interface.
+	 * @param anotherInterface The another interface
+	 * @return True if the interface is within range, false if not
+	 */
+	public boolean computeWithinRange(NetworkInterface anotherInterface) {
 		double smallerRange = anotherInterface.getTransmitRange();
 		double myRange = getTransmitRange();
 		if (myRange < smallerRange) {
@@ -275,12 +364,92 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 	
+	/**
+	 * Sets the in-range snapshot of this interface, i.e., the interfaces that
+	 * are within radio range of this interface at the moment. As long as the
+	 * snapshot is in use, range checks against other interfaces that have
+	 * a snapshot from the same {@link ConnectivityOptimizer} are answered 
+	 * from it. The optimizer must clear the snapshot before hosts move.
+	 * @param interfaces The interfaces within range, sorted by address
+	 * @param count How many of the interfaces in the array are used
+	 */
+	public void setInRangeSnapshot(NetworkInterface[] interfaces, int count) {
+		if (this.inRange == null || this.inRange.length < count) {
+			this.inRange = new NetworkInterface[count];
+		}
+		System.arraycopy(interfaces, 0, this.inRange, 0, count);
+		this.nrofInRange = count;
+		this.hasInRangeSnapshot = true;
+	}
+
+	/**
+	 * Stops using the in-range snapshot of this interface
+	 */
+	public void clearInRangeSnapshot() {
+		this.hasInRangeSnapshot = false;
+	}
+
+	/**
+	 * Returns true if this interface has an in-range snapshot in use
+	 * @return true if this interface has an in-range snapshot in use
+	 */
+	public boolean hasInRangeSnapshot() {
+		return this.hasInRangeSnapshot;
+	}
+
+	/**
+	 * Returns the interfaces of the in-range snapshot. Only the first
+	 * {@link #getNrofInRange()} elements of the array are valid.
+	 * @return The interfaces that were within range, sorted by address
+	 */
+	public NetworkInterface[] getInRangeSnapshot() {
+		return this.inRange;
+	}
+
+	/**
+	 * Returns the number of interfaces in the in-range snapshot
+	 * @return the number of interfaces in the in-range snapshot
+	 */
+	public int getNrofInRange() {
+		return this.nrofInRange;
+	}
+
+	/**
+	 * Checks (using binary search by address) if an interface is in the 
+	 * in-range snapshot of this interface. Can be used only if the 
+	 * snapshot is in use (see {@link #hasInRangeSnapshot()}).
+	 * @param ni The interface to look for
+	 * @return True if the interface is in the snapshot
+	 */
+	public boolean inRangeSnapshotContains(NetworkInterface ni) {
+		int low = 0;
+		int high = this.nrofInRange - 1;
+		int key = ni.getAddress();
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midAddr = this.inRange[mid].getAddress();
+			if (midAddr < key) {
+				low = mid + 1;
+			} else if (midAddr > key) {
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host. 
 	 * @param netinterface The other NetworkInterface to check 
 	 * @return True if the two hosts are connected
 	 */
 	protected boolean isConnected(NetworkInterface netinterface) {
+		if (this.optimizer != null && this.optimizer.tracksLinks() && 
+				this.optimizer == netinterface.optimizer) {
+			return this.optimizer.isLinked(this, netinterface);
+		}
 		for (int i = 0; i < this.connections.size(); i++) {
 			if (this.connections.get(i).getOtherInterface(this) == 
 				netinterface) {
@@ -289,6 +458,25 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		return false;
 	}
+
+	/**
+	 * Informs the connectivity optimizer about a new or removed connection
+	 * between this and another interface (if they share the optimizer)
+	 * @param anotherInterface The other interface
+	 * @param up True if the interfaces were connected, false if disconnected
+	 */
+	private void linkChanged(NetworkInterface anotherInterface, boolean up) {
+		if (this.optimizer == null || 
+				this.optimizer != anotherInterface.optimizer) {
+			return;
+		}
+		if (up) {
+			this.optimizer.linkUp(this, anotherInterface);
+		}
+		else {
+			this.optimizer.linkDown(this, anotherInterface);
+		}
+	}
 	
 	/**
 	 * Makes sure that a value is positive
@@ -309,22 +497,55 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	abstract public void update();
 
+	/**
+	 * Returns the time until which updating this interface does nothing, as
+	 * long as no host moves or changes its activeness. Used for skipping
+	 * idle update intervals (see {@link World#SKIP_IDLE_UPDATES_S}). This 
+	 * implementation returns the current time, i.e., the interface is 
+	 * updated at every interval.
+	 * @return The time until which the updates do nothing
+	 */
+	public double getIdleUntil() {
+		return SimClock.getTime();
+	}
+
+	/**
+	 * Returns true if the interface scans at every update (the scan interval
+	 * is zero), so checking the scanning mode does not change the state of
+	 * the interface
+	 * @return true if the interface scans at every update
+	 * @see #isScanning()
+	 */
+	protected boolean isAlwaysScanning() {
+		return this.scanInterval <= 0.0;
+	}
+
 	/**
 	 * Notifies all the connection listeners about a change in connections.
 	 * @param type Type of the change (e.g. {@link #CON_DOWN} )
-	 * @param otherHost The other host on the other end of the connection.
+	 * @param otherInterface The interface on the other end of the connection
 	 */
-	private void notifyConnectionListeners(int type, DTNHost otherHost) {
+	private void notifyConnectionListeners(int type, 
+			NetworkInterface otherInterface) {
 		if (this.cListeners == null) {
 			return;
 		}
+		DTNHost otherHost = otherInterface.getHost();
 		for (ConnectionListener cl : this.cListeners) {
 			switch (type) {
 			case CON_UP:
 				cl.hostsConnected(this.host, otherHost);
+				if (cl instanceof InterfaceConnectionListener) {
+					((InterfaceConnectionListener)cl).interfacesConnected(
+							this, otherInterface);
+				}
 				break;
 			case CON_DOWN:
 				cl.hostsDisconnected(this.host, otherHost);
+				if (cl instanceof InterfaceConnectionListener) {
+					((InterfaceConnectionListener)cl).interfacesDisconnected(
+							this, otherInterface);
+				}
 				break;
 			default:
 				assert false : type;	// invalid type code
@@ -347,6 +568,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double)newValue;	
+			if (this.hasInRangeSnapshot || 
+					(optimizer != null && optimizer.detectsContacts())) {
+				/* snapshots or contacts were taken with the old range */
+				optimizer.clearInRangeSnapshots();
+			}
 		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
@@ -387,18 +613,19 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
-		if (!anotherInterface.getConnections().remove(con)) {
+		if (!anotherInterface.removeConnection(con)) {
 			throw new SimError("No connection " + con + " found in " +
 					anotherNode);   
 		}
+		linkChanged(anotherInterface, false);
 
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
-		connections.remove(index);
+		removeConnection(index);
 	}
 
 	/**
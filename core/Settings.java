@@ -55,8 +55,6 @@ public class Settings {
 	private static PrintStream out = null;
 	private static Set<String> writtenSettings = new HashSet<String>();
 	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -94,12 +92,15 @@ public class Settings {
 	 * zero (e.g. -1). When disabled, run-arrays are returned as normal values,
 	 * including the brackets.
 	 * @param index The run index to use for subsequent settings calls, or
-	 * -1 to disable run indexing
+	 * -1 to disable run indexing. The index is set for the 
+	 * {@link SimContext} of the current thread.
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
-	}
+		SimContext.getCurrent().runIndex = index;
+		synchronized (writtenSettings) {
+			writtenSettings.clear();
+		}
+	}
 	
 	/**
 	 * Checks that the given integer array contains a valid range. I.e., 
@@ -254,12 +255,18 @@ public class Settings {
 	 * @param setting The string to write
 	 */
 	private static void outputSetting(String setting) {
-		if (out != null && !writtenSettings.contains(setting)) {
-			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+		if (out == null) {
+			return;
+		}
+		synchronized (writtenSettings) {
+			if (!writtenSettings.contains(setting)) {
+				if (writtenSettings.size() == 0) {
+					out.println("# Settings for run " + 
+							(SimContext.getCurrent().runIndex + 1));
+				}
+				out.println(setting);
+				writtenSettings.add(setting);
 			}
-			out.println(setting);
-			writtenSettings.add(setting);
 		}
 	}
 	
@@ -353,6 +360,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimContext.getCurrent().runIndex;
 		
 		if (!value.startsWith(RUN_ARRAY_START) || 
 			!value.endsWith(RUN_ARRAY_END) || 
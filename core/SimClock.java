@@ -6,11 +6,11 @@ package core;
 
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. The time is kept in the
+ * {@link SimContext} of the current thread.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	private static SimClock clock = new SimClock();
 	
 	private SimClock() {}
 	
@@ -24,9 +24,6 @@ public class SimClock {
 	 * @return The instance of this clock
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
 		return clock;
 	}
 	
@@ -35,7 +32,10 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		if (!SimContext.threadContextsInUse) { // e.g., sequential batch runs
+			return SimContext.mainContext.clockTime;
+		}
+		return SimContext.getCurrent().clockTime;
 	}
 	
 	/**
@@ -43,7 +43,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
 	}
 	
 	/**
@@ -51,7 +51,7 @@ public class SimClock {
 	 * @param time Nrof seconds to increase the time
 	 */
 	public void advance(double time) {
-		clockTime += time;
+		SimContext.getCurrent().clockTime += time;
 	}
 	
 	/**
@@ -59,7 +59,7 @@ public class SimClock {
 	 * @param time the time to set
 	 */
 	public void setTime(double time) {
-		clockTime = time;
+		SimContext.getCurrent().clockTime = time;
 	}
 	
 	/**
@@ -67,13 +67,13 @@ public class SimClock {
 	 * @return the current simulation time in a string 
 	 */
 	public String toString() {
-		return "SimTime: " + clockTime;
+		return "SimTime: " + getTime();
 	}
 	
 	/**
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		clockTime = 0;
+		SimContext.getCurrent().clockTime = 0;
 	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Context of a single simulation run. Holds the state that would otherwise
+ * be static (and hence shared by all simulations in the same JVM), like the
+ * simulation time and the address counters. Every thread resolves the
+ * state against its own context, so multiple simulations can be run
+ * concurrently in different threads (see {@link DTNSim}). Threads that
+ * haven't been given a context use the main context.
+ * <P>Classes with per-run state store it as a state object using
+ * {@link #setState(Class, Object)} in their static <CODE>reset</CODE> method
+ * and register for resetting with {@link DTNSim#registerForReset(String)}.
+ * </P>
+ */
+public class SimContext {
+	/** context of the threads that have not been given a context */
+	static final SimContext mainContext = new SimContext();
+	/** contexts of the threads that have been given one */
+	private static final ThreadLocal<SimContext> threadContexts =
+		new ThreadLocal<SimContext>();
+	/** has any thread been given a context other than the main context. 
+	 * If not, the main context can be used without checking the thread's 
+	 * context. */
+	static volatile boolean threadContextsInUse = false;
+
+	/** simulation time of this context (see {@link SimClock}) */
+	double clockTime;
+	/** run index of this context (see {@link Settings#setRunIndex(int)}) */
+	int runIndex;
+	/** state objects of the classes, by the class */
+	private Map<Class<?>, Object> states;
+
+	/**
+	 * Creates a new, empty, context. The state of the classes is created
+	 * when it is first needed.
+	 */
+	public SimContext() {
+		this.clockTime = 0.0;
+		this.runIndex = 0;
+		this.states = new ConcurrentHashMap<Class<?>, Object>();
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 * @return the context of the current thread
+	 */
+	public static SimContext getCurrent() {
+		if (threadContextsInUse) {
+			SimContext context = threadContexts.get();
+			if (context != null) {
+				return context;
+			}
+		}
+		return mainContext;
+	}
+
+	/**
+	 * Sets the context for the current thread
+	 * @param context The context to use or null to use the main context
+	 */
+	public static void setCurrent(SimContext context) {
+		if (context != null && context != mainContext) {
+			threadContextsInUse = true;
+			threadContexts.set(context);
+		}
+		else {
+			threadContexts.remove();
+		}
+	}
+
+	/**
+	 * Returns the state object a class has stored in this context. If the
+	 * class has no state yet, the class is reset (in this context) first.
+	 * @param owner The class whose state is requested
+	 * @return The state object
+	 */
+	public Object getState(Class<?> owner) {
+		Object state = this.states.get(owner);
+		if (state == null) {
+			DTNSim.resetClass(owner);
+			state = this.states.get(owner);
+			assert state != null : owner + " did not set its state in reset";
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the state object a class has stored in this context without
+	 * creating one
+	 * @param owner The class whose state is requested
+	 * @return The state object or null if the class has no state yet
+	 */
+	public Object peekState(Class<?> owner) {
+		return this.states.get(owner);
+	}
+
+	/**
+	 * Sets (replaces) the state object of a class in this context
+	 * @param owner The class whose state is set
+	 * @param state The state object
+	 */
+	public void setState(Class<?> owner, Object state) {
+		this.states.put(owner, state);
+	}
+}
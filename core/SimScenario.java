@@ -6,6 +6,7 @@ package core;
 
 import input.EventQueue;
 import input.EventQueueHandler;
+import input.ExternalEventsQueue;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -22,8 +23,10 @@ import routing.MessageRouter;
  */
 public class SimScenario implements Serializable {
 	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
+	/** the per-run state of the class, i.e., a way to get a hold of this */
+	private static class State {
+		private SimScenario myinstance = null;
+	}
 
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
@@ -39,6 +42,11 @@ public class SimScenario implements Serializable {
 	public static final String UP_INT_S = "updateInterval";
 	/** simulate connections -setting id ({@value})*/
 	public static final String SIM_CON_S = "simulateConnections";
+	/** connectivity trace -setting id ({@value}). Path of a trace recorded
+	 * with {@link report.ConnectivityTraceReport}. If set, the connections
+	 * are replayed from the trace instead of simulating them and the hosts
+	 * are not moved. */
+	public static final String CONNECTION_TRACE_S = "connectionTrace";
 
 	/** namespace for interface type settings ({@value}) */
 	public static final String INTTYPE_NS = "Interface";
@@ -126,8 +134,14 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
-	}
+		State old = (State)SimContext.getCurrent().peekState(
+				SimScenario.class);
+		if (old != null && old.myinstance != null) {
+			/* the previous run may have ended without closing its world */
+			old.myinstance.world.close();
+		}
+		SimContext.getCurrent().setState(SimScenario.class, new State());
+	}
 
 	/**
 	 * Creates a scenario based on Settings object.
@@ -155,6 +169,15 @@ public class SimScenario implements Serializable {
 		this.appListeners = new ArrayList<ApplicationListener>();
 		this.eqHandler = new EventQueueHandler();
 
+		String connectionTrace = null;
+		if (s.contains(CONNECTION_TRACE_S)) {
+			connectionTrace = s.valueFillString(
+					s.getSetting(CONNECTION_TRACE_S));
+			this.simulateConnections = false;
+			this.eqHandler.getEventQueues().add(new ExternalEventsQueue(
+					connectionTrace, ExternalEventsQueue.DEFAULT_NROF_PRELOAD));
+		}
+
 		/* TODO: check size from movement models */
 		s.setNameSpace(MovementModel.MOVEMENT_MODEL_NS);
 		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE, 2);
@@ -166,17 +189,26 @@ public class SimScenario implements Serializable {
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval, 
 				updateListeners, simulateConnections, 
 				eqHandler.getEventQueues());
+		if (connectionTrace != null) {
+			this.world.setMovementEnabled(false);
+		}
+		if (this.world.getContactPredictor() != null) {
+			/* the predictor needs the waypoints the hosts reach */
+			addMovementListener(this.world.getContactPredictor());
+		}
 	}
 	
 	/**
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		State state = (State)SimContext.getCurrent().getState(
+				SimScenario.class);
+		if (state.myinstance == null) {
+			state.myinstance = new SimScenario();
 		}
-		return myinstance;
-	}
+		return state.myinstance;
+	}
 
 	/**
 	 * Makes sure that a value is positive
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Event queue of the times when the ongoing transfers of
+ * {@link CBRConnection}s are done. When a transfer is done, the sending
+ * host is told about it (see {@link DTNHost#transferCompleted(Connection)}),
+ * so the transfer is finalized (and the next transfer can be started) at 
+ * the exact time instead of at the next update interval. The events of 
+ * this queue don't request updates of all hosts.
+ * @see World#EXACT_TRANSFER_TIMES_S
+ */
+class TransferCompletionQueue implements EventQueue {
+	/** orders the completions by their times and then by the order they
+	 * were added in */
+	private static final Comparator<Completion> COMPLETION_ORDER =
+		new Comparator<Completion>() {
+		public int compare(Completion c1, Completion c2) {
+			int cmp = c1.compareTo(c2);
+			if (cmp == 0) {
+				cmp = c1.seqNr < c2.seqNr ? -1 : (c1.seqNr > c2.seqNr ? 1 : 0);
+			}
+			return cmp;
+		}
+	};
+
+	/** the completions of the ongoing (and aborted) transfers */
+	private PriorityQueue<Completion> completions;
+	/** number of completions added so far */
+	private long nrofAdded;
+
+	/**
+	 * Constructor. Creates an empty queue.
+	 */
+	TransferCompletionQueue() {
+		this.completions = new PriorityQueue<Completion>(11,
+				COMPLETION_ORDER);
+		this.nrofAdded = 0;
+	}
+
+	/**
+	 * Adds the completion of a transfer that was just started
+	 * @param con The connection that transfers the message
+	 * @param from The host sending the message
+	 * @param time The time when the transfer is done
+	 */
+	void add(Connection con, DTNHost from, double time) {
+		this.completions.add(new Completion(time, con, from,
+				con.getMessage(), this.nrofAdded++));
+	}
+
+	/**
+	 * Returns the next completion or an event with time Double.MAX_VALUE if
+	 * there aren't any
+	 * @return the next completion
+	 */
+	public ExternalEvent nextEvent() {
+		Completion c = this.completions.poll();
+		if (c == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the time of the next completion or Double.MAX_VALUE if there
+	 * aren't any
+	 * @return the time of the next completion
+	 */
+	public double nextEventsTime() {
+		Completion c = this.completions.peek();
+		return c == null ? Double.MAX_VALUE : c.getTime();
+	}
+
+	/**
+	 * Completion of a transfer. Tells the sending host about it unless
+	 * the transfer was aborted before it was done. The connection, host and
+	 * message refer to the running simulation and are not serialized.
+	 */
+	private static class Completion extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private transient Connection con;
+		private transient DTNHost from;
+		/** the message (replica) being transferred */
+		private transient Message message;
+		private long seqNr;
+
+		private Completion(double time, Connection con, DTNHost from,
+				Message message, long seqNr) {
+			super(time);
+			this.con = con;
+			this.from = from;
+			this.message = message;
+			this.seqNr = seqNr;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			if (this.con.getMessage() == this.message) { // still transferring
+				this.from.transferCompleted(this.con);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "TransferCompletion @" + this.time + " " + this.con;
+		}
+	}
+}
@@ -6,13 +6,19 @@ package core;
 
 import input.EventQueue;
 import input.ExternalEvent;
+import input.ExternalEventsQueue;
 import input.ScheduledUpdatesQueue;
+import input.StableEventQueue;
 import interfaces.ConnectivityGrid;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,11 +43,121 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should hosts be moved and the nodes within radio range be found using 
+	 * multiple threads -setting id ({@value}). Boolean (true/false) variable.
+	 * The connections are still created and torn down, and the routers 
+	 * updated, in the same order as in the serial mode so the results are
+	 * identical with both modes.
+	 * Default is {@link #DEF_PARALLEL_UPDATE}.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+	/**
+	 * Number of threads to use for the parallel update -setting id 
+	 * ({@value}). Default is the number of available processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should the contacts be detected with a grid-wide sweep that checks 
+	 * every pair of nearby interfaces only once, instead of letting every
+	 * interface check its neighborhood -setting id ({@value}). Boolean 
+	 * (true/false) variable. The same connections are created and torn down,
+	 * but not necessarily in the same order within an update.
+	 * Default is {@link #DEF_CONTACT_SWEEP}.
+	 */
+	public static final String CONTACT_SWEEP_S = "contactSweep";
+	/**
+	 * Should the contacts be predicted from the movement of the hosts 
+	 * -setting id ({@value}). Boolean (true/false) variable. If true, the 
+	 * connections are created and torn down at the exact times when the
+	 * interfaces come within range or go out of range (see 
+	 * {@link ContactPredictor}) instead of checking the ranges at every
+	 * update. Allows using longer update intervals without losing contacts.
+	 * Can't be used with interfaces that have a scan interval.
+	 * Default is {@link #DEF_KINETIC_CONTACTS}.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+	/**
+	 * Should only the hosts an external event acts on, their current 
+	 * neighbors and the hosts that are not idle be updated after the event
+	 * -setting id ({@value}). Boolean (true/false) variable. By default all
+	 * hosts are updated after every external event; with this setting the
+	 * updates of the hosts that are idle (see {@link DTNHost#getIdleUntil()})
+	 * are skipped. The hosts are updated in the same order as in the full
+	 * update, so the results are identical. This saves most of the host 
+	 * updates with large event traces. Events that don't tell which hosts 
+	 * they act on (see {@link ExternalEvent#getHosts(World)}) update all
+	 * hosts. Default is {@link #DEF_TARGETED_EVENT_UPDATES}.
+	 */
+	public static final String TARGETED_EVENT_UPDATES_S = 
+		"targetedEventUpdates";
+	/**
+	 * Should the update intervals during which nothing happens be skipped 
+	 * -setting id ({@value}). Boolean (true/false) variable. If true, the
+	 * hosts are not moved nor updated during the intervals that end before
+	 * the next external event, the next time any host starts moving or 
+	 * changes its activeness, and the next time any router or interface
+	 * has something to do (see {@link DTNHost#getIdleUntil()}); e.g., 
+	 * routers with connections (and transfers) are updated at every 
+	 * interval and the others at their TTL checks. The update order is 
+	 * still shuffled and the update listeners informed at every interval,
+	 * so the results are identical with the fixed interval updates.
+	 * Not used with {@link #KINETIC_CONTACTS_S kinetic contacts}.
+	 * Default is {@link #DEF_SKIP_IDLE_UPDATES}.
+	 */
+	public static final String SKIP_IDLE_UPDATES_S = "skipIdleUpdates";
+	/**
+	 * Should the transfers of constant bit-rate connections be finalized at
+	 * the exact times when they are done -setting id ({@value}). Boolean
+	 * (true/false) variable. If true, the router of the sending host is 
+	 * updated when a transfer is done (see {@link CBRConnection}), so the
+	 * message is delivered and the next transfer can be started right away;
+	 * otherwise the transfers are finalized at the next update interval.
+	 * Changes the transfer times, so the results are not identical to 
+	 * the update interval based finalizing. 
+	 * Default is {@link #DEF_EXACT_TRANSFER_TIMES}.
+	 */
+	public static final String EXACT_TRANSFER_TIMES_S = "exactTransferTimes";
+	/**
+	 * Should the messages be dropped at the exact times when their TTLs 
+	 * reach zero -setting id ({@value}). Boolean (true/false) variable. 
+	 * If true, the active routers are told when a buffered message 
+	 * expires (see {@link MessageExpiryQueue}) and drop it right away, or
+	 * right after it has been sent if it is being sent; otherwise the 
+	 * expired messages are dropped at the routers' TTL checks, which are 
+	 * skipped while the router is sending. Changes the drop times, so the 
+	 * results are not identical to the TTL check based dropping. 
+	 * Default is {@link #DEF_EXACT_EXPIRY_TIMES}.
+	 */
+	public static final String EXACT_EXPIRY_TIMES_S = "exactExpiryTimes";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should the update be done in parallel -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_UPDATE = false;
+	/** should the contacts be detected with a sweep -setting's default 
+	 * value ({@value}) */
+	public static final boolean DEF_CONTACT_SWEEP = false;
+	/** should the contacts be predicted -setting's default value 
+	 * ({@value}) */
+	public static final boolean DEF_KINETIC_CONTACTS = false;
+	/** should only the hosts of an event be updated -setting's default 
+	 * value ({@value}) */
+	public static final boolean DEF_TARGETED_EVENT_UPDATES = false;
+	/** should the idle update intervals be skipped -setting's default 
+	 * value ({@value}) */
+	public static final boolean DEF_SKIP_IDLE_UPDATES = false;
+	/** should the transfers be finalized at the exact times -setting's 
+	 * default value ({@value}) */
+	public static final boolean DEF_EXACT_TRANSFER_TIMES = false;
+	/** should the messages be dropped at the exact expiry times -setting's
+	 * default value ({@value}) */
+	public static final boolean DEF_EXACT_EXPIRY_TIMES = false;
+	/** how many hosts one parallel movement task moves at least */
+	private static final int MOVE_TASK_SIZE = 256;
 
 	private int sizeX;
 	private int sizeY;
@@ -50,21 +166,65 @@ public class World {
 	private SimClock simClock;
 	private double nextQueueEventTime;
 	private EventQueue nextEventQueue;
+	/** the {@link StableEventQueue stable} event queues in a heap ordered
+	 * by their next events' times */
+	private EventQueueHeap stableQueues;
+	/** indexes of the stable queues (by heap index) in the event queues */
+	private int[] stableQueueIndexes;
+	/** indexes of the other event queues in the event queues */
+	private int[] otherQueueIndexes;
+	/** heap index of the stable queue that has the next event or -1 if the
+	 * next event is in some other queue */
+	private int nextStableQueue;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
 	/** nodes in the order they should be updated (if the order should be 
 	 * randomized; null value means that the order should not be randomized) */
 	private ArrayList<DTNHost> updateOrder;
+	/** random number generator for shuffling the update order */
+	private Random orderRng;
 	/** is cancellation of simulation requested from UI */
 	private boolean isCancelled;
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** Queue of the times when the transfers are done (empty unless the
+	 * transfers are finalized at the exact times) */
+	private TransferCompletionQueue transferCompletions;
+	/** Queue of the times when the buffered messages expire (empty unless
+	 * the messages are dropped at the exact times) */
+	private MessageExpiryQueue messageExpiries;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
 
+	/** pool of worker threads for parallel updates or null if the update
+	 * is done serially */
+	private ForkJoinPool updatePool;
+	/** is host (by the index in the host list) active during the current
+	 * movement step */
+	private boolean[] activeHosts;
+	/** is the host's movement for the current step already done */
+	private boolean[] movedHosts;
+	/** are the contacts detected with a grid-wide sweep */
+	private boolean contactSweep;
+	/** predicts the contacts or null if the ranges are checked instead */
+	private ContactPredictor contactPredictor;
+	/** are only the hosts of an external event updated after it */
+	private boolean targetedEventUpdates;
+	/** the hosts to update after an event (if the updates are targeted) */
+	private List<DTNHost> eventHosts;
+	/** is host (by the index in the host list) in the event hosts list */
+	private boolean[] isEventHost;
+	/** are the idle update intervals skipped */
+	private boolean skipIdleUpdates;
+	/** time until which all hosts are idle (if the idle intervals are 
+	 * skipped) */
+	private double idleUntil;
+	/** are the hosts moved */
+	private boolean movementEnabled;
+
 	/**
 	 * Constructor.
 	 */
@@ -81,8 +241,12 @@ public class World {
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		this.transferCompletions = new TransferCompletionQueue();
+		this.messageExpiries = new MessageExpiryQueue();
 		this.isCancelled = false;		
+		this.movementEnabled = true;
 
+		initEventQueues();
 		setNextEventQueue();
 		initSettings();
 	}
@@ -100,6 +264,7 @@ public class World {
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
+			this.orderRng = new Random();
 		}
 		else { // null pointer means "don't randomize"
 			this.updateOrder = null;
@@ -117,6 +282,78 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		boolean parallelUpdate = DEF_PARALLEL_UPDATE;
+		if (s.contains(PARALLEL_UPDATE_S)) {
+			parallelUpdate = s.getBoolean(PARALLEL_UPDATE_S);
+		}
+		if (parallelUpdate) {
+			int nrofThreads = Runtime.getRuntime().availableProcessors();
+			if (s.contains(NROF_THREADS_S)) {
+				nrofThreads = s.getInt(NROF_THREADS_S);
+			}
+			if (nrofThreads < 1) {
+				throw new SettingsError("Too small value (" + nrofThreads +
+						") for " + SETTINGS_NS + "." + NROF_THREADS_S);
+			}
+			this.updatePool = new ForkJoinPool(nrofThreads, 
+					new ContextThreadFactory(SimContext.getCurrent()), 
+					null, false);
+		}
+		else {
+			this.updatePool = null;
+		}
+
+		this.contactSweep = DEF_CONTACT_SWEEP;
+		if (s.contains(CONTACT_SWEEP_S)) {
+			this.contactSweep = s.getBoolean(CONTACT_SWEEP_S);
+		}
+		if (this.contactSweep) {
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.trackLinks();
+			}
+		}
+
+		boolean kineticContacts = DEF_KINETIC_CONTACTS;
+		if (s.contains(KINETIC_CONTACTS_S)) {
+			kineticContacts = s.getBoolean(KINETIC_CONTACTS_S);
+		}
+		if (kineticContacts && this.simulateConnections) {
+			this.contactPredictor = new ContactPredictor(this.hosts);
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.setContactsPredicted(true);
+			}
+		}
+		else {
+			this.contactPredictor = null;
+		}
+
+		this.targetedEventUpdates = DEF_TARGETED_EVENT_UPDATES;
+		if (s.contains(TARGETED_EVENT_UPDATES_S)) {
+			this.targetedEventUpdates = s.getBoolean(TARGETED_EVENT_UPDATES_S);
+		}
+		this.eventHosts = new ArrayList<DTNHost>();
+		this.isEventHost = new boolean[this.hosts.size()];
+
+		this.skipIdleUpdates = DEF_SKIP_IDLE_UPDATES;
+		if (s.contains(SKIP_IDLE_UPDATES_S)) {
+			this.skipIdleUpdates = s.getBoolean(SKIP_IDLE_UPDATES_S);
+		}
+		this.idleUntil = Double.NEGATIVE_INFINITY;
+
+		boolean exactTransferTimes = DEF_EXACT_TRANSFER_TIMES;
+		if (s.contains(EXACT_TRANSFER_TIMES_S)) {
+			exactTransferTimes = s.getBoolean(EXACT_TRANSFER_TIMES_S);
+		}
+		CBRConnection.setCompletionQueue(exactTransferTimes ? 
+				this.transferCompletions : null);
+
+		boolean exactExpiryTimes = DEF_EXACT_EXPIRY_TIMES;
+		if (s.contains(EXACT_EXPIRY_TIMES_S)) {
+			exactExpiryTimes = s.getBoolean(EXACT_EXPIRY_TIMES_S);
+		}
+		MessageExpiryQueue.setQueue(exactExpiryTimes ? 
+				this.messageExpiries : null);
 	}
 
 	/**
@@ -141,24 +378,91 @@ public class World {
 		simClock.setTime(0);	
 	}
 
+	/**
+	 * Puts the {@link StableEventQueue stable} event queues into a heap
+	 * and finds the indexes of the other queues
+	 */
+	private void initEventQueues() {
+		List<EventQueue> stable = new ArrayList<EventQueue>();
+		int[] stableIndexes = new int[eventQueues.size()];
+		int[] otherIndexes = new int[eventQueues.size()];
+		int nrofOthers = 0;
+
+		for (int i=0, n = eventQueues.size(); i < n; i++) {
+			EventQueue eq = eventQueues.get(i);
+			if (eq instanceof StableEventQueue) {
+				stableIndexes[stable.size()] = i;
+				stable.add(eq);
+			}
+			else {
+				otherIndexes[nrofOthers++] = i;
+			}
+		}
+
+		this.stableQueues = new EventQueueHeap(stable);
+		this.stableQueueIndexes = Arrays.copyOf(stableIndexes, stable.size());
+		this.otherQueueIndexes = Arrays.copyOf(otherIndexes, nrofOthers);
+		this.nextStableQueue = -1;
+	}
+
 	/**
 	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * event queue that has the next event. The stable queues are kept in
+	 * a heap, so only the queue the previous event came from, and the 
+	 * queues that are not stable, need to be checked. 
 	 */
 	public void setNextEventQueue() {
+		if (this.nextStableQueue >= 0) {
+			/* its next event may have been processed */
+			this.stableQueues.update(this.nextStableQueue);
+		}
+
 		EventQueue nextQueue = scheduledUpdates;
 		double earliest = nextQueue.nextEventsTime();
+		int stableQueue = -1;
 
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
+		if (this.transferCompletions.nextEventsTime() < earliest) {
+			nextQueue = this.transferCompletions;
+			earliest = nextQueue.nextEventsTime();
+		}
+		if (this.messageExpiries.nextEventsTime() < earliest) {
+			nextQueue = this.messageExpiries;
+			earliest = nextQueue.nextEventsTime();
+		}
+
+		/* find the queue that has the next event; of the queues whose next
+		 * events are at the same time, the first one in the list is used */
+		EventQueue first = null;
+		double firstTime = Double.POSITIVE_INFINITY;
+		int firstIndex = Integer.MAX_VALUE;
+		if (!this.stableQueues.isEmpty()) {
+			stableQueue = this.stableQueues.first();
+			first = this.stableQueues.getQueue(stableQueue);
+			firstTime = this.stableQueues.getTime(stableQueue);
+			firstIndex = this.stableQueueIndexes[stableQueue];
+		}
+		for (int i : this.otherQueueIndexes) {
+			EventQueue eq = eventQueues.get(i);
+			double time = eq.nextEventsTime();
+			if (time < firstTime || (time == firstTime && i < firstIndex)) {
+				first = eq;
+				firstTime = time;
+				firstIndex = i;
+				stableQueue = -1;
 			}
 		}
 
+		if (first != null && firstTime < earliest) {
+			nextQueue = first;
+			earliest = firstTime;
+		}
+		else {
+			stableQueue = -1;
+		}
+
 		this.nextEventQueue = nextQueue;
 		this.nextQueueEventTime = earliest;
+		this.nextStableQueue = stableQueue;
 	}
 
 	/** 
@@ -170,26 +474,152 @@ public class World {
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
 		setNextEventQueue();
+
+		if (this.contactPredictor != null) {
+			updateWithPredictedContacts(runUntil);
+			return;
+		}
+
+		if (runUntil < this.idleUntil && this.nextQueueEventTime > runUntil) {
+			skipIdleUpdate(runUntil);
+			return;
+		}
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
-			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			processNextEvent();
 		}
 
-		moveHosts(this.updateInterval);
+		moveHosts(this.updateInterval);
 		simClock.setTime(runUntil);
 
-		updateHosts();
+		if (this.contactSweep && this.simulateConnections) {
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.sweepContacts();
+			}
+			updateHosts();
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.clearInRangeSnapshots();
+			}
+		}
+		else if (this.updatePool != null && this.simulateConnections) {
+			/* find the nodes within range in parallel for this update */
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.takeInRangeSnapshots(this.updatePool);
+			}
+			updateHosts();
+			for (ConnectivityGrid grid : ConnectivityGrid.getGrids()) {
+				grid.clearInRangeSnapshots();
+			}
+		}
+		else {
+			updateHosts();
+		}
+
+		if (this.skipIdleUpdates) {
+			this.idleUntil = getIdleUntil();
+		}
+
+		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Processes the next event of the event queues and updates the hosts
+	 * after it. The transfer completions update the sending hosts 
+	 * themselves and the message expiries only drop messages, so the hosts
+	 * are not updated after them.
+	 */
+	private void processNextEvent() {
+		simClock.setTime(this.nextQueueEventTime);
+		ExternalEvent ee = this.nextEventQueue.nextEvent();
+		ee.processEvent(this);
+		if (this.nextEventQueue != this.transferCompletions &&
+				this.nextEventQueue != this.messageExpiries) {
+			updateHostsAfter(ee);
+		}
+		setNextEventQueue();
+	}
+
+	/**
+	 * Skips an update interval during which all hosts are idle. The hosts
+	 * are not moved nor updated, but the update order is shuffled like in 
+	 * {@link #updateHosts()} (so that the following updates are done in the
+	 * same order as without skipping) and the update listeners are informed.
+	 * @param runUntil Time when the update interval ends
+	 */
+	private void skipIdleUpdate(double runUntil) {
+		simClock.setTime(runUntil);
+
+		if (this.updateOrder != null) {
+			shuffleUpdateOrder();
+		}
+
+		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Returns the time until which all hosts are idle
+	 * @return The earliest of the hosts' idle times (see 
+	 * {@link DTNHost#getIdleUntil()})
+	 */
+	private double getIdleUntil() {
+		double now = SimClock.getTime();
+		double earliest = Double.MAX_VALUE;
+		for (int i=0, n = hosts.size(); i < n && earliest > now; i++) {
+			earliest = Math.min(earliest, hosts.get(i).getIdleUntil());
+		}
+		return earliest;
+	}
+
+	/**
+	 * Update (move, connect, disconnect etc.) all hosts in the world using
+	 * the contact predictor. The external events are processed and the 
+	 * hosts moved like in {@link #update()}, so the hosts move the same way
+	 * (the movement depends on the time the hosts are moved at). The 
+	 * predicted contact events are then processed in the order of their 
+	 * times; the events that were predicted to happen before the last 
+	 * external event of the interval happen at the time of that event.
+	 * @param runUntil Time when the update interval ends
+	 */
+	private void updateWithPredictedContacts(double runUntil) {
+		this.contactPredictor.beginInterval(SimClock.getTime());
+		while (this.nextQueueEventTime <= runUntil) {
+			processNextEvent();
+		}
+		moveHosts(this.updateInterval);
+		this.contactPredictor.predict(runUntil);
+
+		double contactTime = this.contactPredictor.nextEventTime();
+		while (contactTime <= runUntil) {
+			if (contactTime > SimClock.getTime()) {
+				simClock.setTime(contactTime);
+			}
+			this.contactPredictor.processNextEvent(simulateConnections);
+			contactTime = this.contactPredictor.nextEventTime();
+		}
+
+		simClock.setTime(runUntil);
+		updateHosts();
 
 		/* inform all update listeners */
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
 	}
+
+	/**
+	 * Returns the contact predictor of the world
+	 * @return The predictor or null if the contacts are not predicted
+	 */
+	public ContactPredictor getContactPredictor() {
+		return this.contactPredictor;
+	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
@@ -206,10 +636,7 @@ public class World {
 			}
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -218,18 +645,159 @@ public class World {
 			}			
 		}
 	}
+
+	/**
+	 * Shuffles the update order of the hosts. The order depends only on
+	 * the current (integer) time and the previous order.
+	 */
+	private void shuffleUpdateOrder() {
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		this.orderRng.setSeed(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, this.orderRng); 
+	}
+
+	/**
+	 * Updates the hosts after an external event. All hosts are updated
+	 * unless the updates are targeted (see {@link #TARGETED_EVENT_UPDATES_S})
+	 * and the event tells which hosts it acts on. In that case the hosts are
+	 * gone through in the same order as in {@link #updateHosts()}, but only 
+	 * the event's hosts, their current neighbors and the hosts that are not
+	 * idle at their turn are updated. The updates of the other hosts would 
+	 * do nothing, so the result is the same as updating all hosts.
+	 * @param ee The event
+	 */
+	private void updateHostsAfter(ExternalEvent ee) {
+		List<DTNHost> touched = this.targetedEventUpdates ? 
+				ee.getHosts(this) : null;
+		if (touched == null) {
+			updateHosts(); // update all hosts after the event
+			return;
+		}
+
+		for (DTNHost host : touched) {
+			addEventHost(host);
+			for (Connection con : host.getConnections()) {
+				addEventHost(con.getOtherNode(host));
+			}
+		}
+
+		List<DTNHost> order = this.hosts;
+		if (this.updateOrder != null) {
+			shuffleUpdateOrder();
+			order = this.updateOrder;
+		}
+		double now = SimClock.getTime();
+		for (int i=0, n = order.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			DTNHost host = order.get(i);
+			if (this.isEventHost[host.getAddress()] || 
+					host.getIdleUntil() <= now) {
+				host.update(simulateConnections);
+			}
+		}
+
+		for (int i=0, n = this.eventHosts.size(); i < n; i++) {
+			this.isEventHost[this.eventHosts.get(i).getAddress()] = false;
+		}
+		this.eventHosts.clear();
+	}
+
+	/**
+	 * Adds a host to the hosts to update after an event (unless it was 
+	 * added already)
+	 * @param host The host to add
+	 */
+	private void addEventHost(DTNHost host) {
+		if (!this.isEventHost[host.getAddress()]) {
+			this.isEventHost[host.getAddress()] = true;
+			this.eventHosts.add(host);
+		}
+	}
 
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (!this.movementEnabled) {
+			return;
+		}
+		if (this.updatePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
 
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * worker threads. Hosts that don't reach their destination within the
+	 * time are moved in parallel and the rest (that need new waypoints or
+	 * paths from the movement models) serially in the host order, so the 
+	 * movement models get their requests in the same order as in the serial
+	 * mode.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		int n = hosts.size();
+		if (this.activeHosts == null || this.activeHosts.length != n) {
+			this.activeHosts = new boolean[n];
+			this.movedHosts = new boolean[n];
+		}
+
+		/* activeness handlers can be shared by many hosts */
+		for (int i=0; i<n; i++) {
+			this.activeHosts[i] = hosts.get(i).isActive();
+		}
+
+		this.updatePool.invoke(new MoveTask(0, n, timeIncrement));
+
+		for (int i=0; i<n; i++) {
+			if (!this.movedHosts[i]) {
+				hosts.get(i).moveActive(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Enables or disables the movement of the hosts. If the movement is
+	 * disabled, the hosts stay at their initial locations (e.g., when the
+	 * connections are replayed from a trace) and they don't wait for their
+	 * next paths, so their idle updates can be skipped.
+	 * @param enabled True to move the hosts, false to keep them in place
+	 */
+	public void setMovementEnabled(boolean enabled) {
+		this.movementEnabled = enabled;
+		for (int i=0, n = hosts.size(); i<n; i++) {
+			hosts.get(i).setMovementEnabled(enabled);
+		}
+	}
+
+	/**
+	 * Releases the resources the world holds for the simulation run: stops
+	 * the worker threads of the parallel update and closes the external
+	 * events queues. Should be called when the run ends. If the world is
+	 * updated after this, the update is done serially and no more external
+	 * events are read.
+	 */
+	public void close() {
+		if (this.updatePool != null) {
+			this.updatePool.shutdown();
+			this.updatePool = null;
+		}
+		for (EventQueue eq : this.eventQueues) {
+			if (eq instanceof ExternalEventsQueue) {
+				((ExternalEventsQueue)eq).close();
+			}
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -286,5 +854,67 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+	}
+
+	/**
+	 * Creates update pool threads that use the simulation context of the 
+	 * world (so that e.g. {@link SimClock} gives the right time in them).
+	 */
+	private static class ContextThreadFactory 
+		implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		private final SimContext context;
+
+		public ContextThreadFactory(SimContext context) {
+			this.context = context;
+		}
+
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+				@Override
+				protected void onStart() {
+					super.onStart();
+					SimContext.setCurrent(context);
+				}
+			};
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Fork-join task that moves a range of hosts on their current path
+	 * segments
+	 */
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+		private double timeIncrement;
+
+		/**
+		 * Constructor.
+		 * @param from Index of the first host to move
+		 * @param to Index of the host after the last host to move
+		 * @param timeIncrement The time how long the hosts should move
+		 */
+		private MoveTask(int from, int to, double timeIncrement) {
+			this.from = from;
+			this.to = to;
+			this.timeIncrement = timeIncrement;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= MOVE_TASK_SIZE) {
+				for (int i=from; i<to; i++) {
+					movedHosts[i] = !activeHosts[i] || 
+						hosts.get(i).moveOnSegment(timeIncrement);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new MoveTask(from, middle, timeIncrement), 
+					new MoveTask(middle, to, timeIncrement));
+		}
 	}
-}
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a columnar binary file. The file is memory
+ * mapped and the events are decoded straight from the mapping, so large
+ * (e.g., connectivity trace) files can be streamed without parsing text.
+ * Files are created from other external events files with
+ * {@link #storeToColumnarFile(String, ExternalEventsReader)} or from the
+ * command line:<BR>
+ * <TT>java input.ColumnarEventsReader &lt;events file&gt;
+ * &lt;output file&gt;</TT>
+ * </P><P>
+ * File layout (big-endian): a header (magic, version, number of events and
+ * offset of the string table), blocks of at most {@link #BLOCK_SIZE} events
+ * and the string table. Each block starts with its event count (and
+ * padding) followed by the columns time (double), host1, host2, string,
+ * size, response size (int) and type (byte). The string column is an index
+ * to the string table (message ID or interface ID) or -1 for none.
+ * </P>
+ */
+public class ColumnarEventsReader implements ExternalEventsReader {
+	/** Extension of columnar external events file */
+	public static final String COLUMNAR_EXT = ".colee";
+	/** Maximum number of events in a block */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	/** first int of the file ("ONEC") */
+	private static final int MAGIC = 0x4F4E4543;
+	private static final int VERSION = 1;
+	/** magic, version, number of events, string table offset */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+	/** event count and padding */
+	private static final int BLOCK_HEADER_SIZE = 8;
+	/** bytes per event in a block */
+	private static final int EVENT_SIZE = 8 + 5 * 4 + 1;
+	/** maximum size of a mapped window of the file */
+	private static final long MAX_WINDOW = 1L << 28;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** event type values */
+	private static final byte CREATE = 0;
+	private static final byte SEND = 1;
+	private static final byte DELIVERED = 2;
+	private static final byte ABORT = 3;
+	private static final byte DROP = 4;
+	private static final byte REMOVE = 5;
+	private static final byte CONNECTION_UP = 6;
+	private static final byte CONNECTION_DOWN = 7;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long eventsLeft;
+	/** offset of the string table (= end of the event blocks) */
+	private long stringTableOffset;
+	private String[] strings;
+
+	/** mapped part of the file and the file offset of its start */
+	private MappedByteBuffer window;
+	private long windowStart;
+	/** file offset of the next block */
+	private long nextBlock;
+	/** number of events in the current block and index of the next one */
+	private int blockCount;
+	private int blockIndex;
+	/** offsets of the current block's columns in the window */
+	private int timeCol;
+	private int host1Col;
+	private int host2Col;
+	private int stringCol;
+	private int sizeCol;
+	private int respSizeCol;
+	private int typeCol;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public ColumnarEventsReader(File eventsFile) {
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			this.channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new SimError("Invalid columnar external events file " +
+						eventsFile.getAbsolutePath());
+			}
+			this.eventsLeft = header.getLong();
+			this.stringTableOffset = header.getLong();
+			this.strings = readStrings();
+		} catch (IOException e) {
+			close();
+			throw new SimError(e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+		this.nextBlock = HEADER_SIZE;
+	}
+
+	/**
+	 * Read events from a columnar file created with storeToColumnarFile
+	 * method
+	 * @param nrof Maximum number of events to read
+	 * @return Events in an ArrayList (empty list if didn't read any)
+	 * @see #storeToColumnarFile(String, ExternalEventsReader)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(
+				(int)Math.min(nrof, eventsLeft));
+
+		try {
+			while (events.size() < nrof && eventsLeft > 0) {
+				if (blockIndex == blockCount) {
+					mapNextBlock();
+				}
+				events.add(decode(blockIndex++));
+				eventsLeft--;
+			}
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+		return events;
+	}
+
+	/**
+	 * Creates the event of the current block with the given index
+	 * @param i Index of the event in the block
+	 * @return The event
+	 */
+	private ExternalEvent decode(int i) {
+		double time = window.getDouble(timeCol + 8 * i);
+		int host1 = window.getInt(host1Col + 4 * i);
+		int host2 = window.getInt(host2Col + 4 * i);
+		int stringIndex = window.getInt(stringCol + 4 * i);
+		String string = stringIndex < 0 ? null : strings[stringIndex];
+		byte type = window.get(typeCol + i);
+
+		switch (type) {
+		case CREATE:
+			return new MessageCreateEvent(host1, host2, string,
+					window.getInt(sizeCol + 4 * i),
+					window.getInt(respSizeCol + 4 * i), time);
+		case SEND:
+			return new MessageRelayEvent(host1, host2, string, time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(host1, host2, string, time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(host1, host2, string, time,
+					MessageRelayEvent.ABORTED);
+		case DROP:
+			return new MessageDeleteEvent(host1, string, time, true);
+		case REMOVE:
+			return new MessageDeleteEvent(host1, string, time, false);
+		case CONNECTION_UP:
+			return new ConnectionEvent(host1, host2, string, true, time);
+		case CONNECTION_DOWN:
+			return new ConnectionEvent(host1, host2, string, false, time);
+		default:
+			throw new SimError("Unknown event type " + type +
+					" in columnar external events file");
+		}
+	}
+
+	/**
+	 * Maps the next block of events and sets the column offsets
+	 * @throws IOException if mapping the file fails
+	 */
+	private void mapNextBlock() throws IOException {
+		map(nextBlock, BLOCK_HEADER_SIZE);
+		int count = window.getInt((int)(nextBlock - windowStart));
+		if (count <= 0 || count > BLOCK_SIZE) {
+			throw new SimError("Invalid block in columnar external events " +
+					"file at " + nextBlock);
+		}
+		long length = blockLength(count);
+		map(nextBlock, length);
+
+		int offset = (int)(nextBlock - windowStart) + BLOCK_HEADER_SIZE;
+		timeCol = offset;
+		host1Col = timeCol + 8 * count;
+		host2Col = host1Col + 4 * count;
+		stringCol = host2Col + 4 * count;
+		sizeCol = stringCol + 4 * count;
+		respSizeCol = sizeCol + 4 * count;
+		typeCol = respSizeCol + 4 * count;
+
+		blockCount = count;
+		blockIndex = 0;
+		nextBlock += length;
+	}
+
+	/**
+	 * Makes sure that the given part of the file is in the mapped window
+	 * @param position File offset of the part
+	 * @param length Length of the part
+	 * @throws IOException if mapping the file fails
+	 */
+	private void map(long position, long length) throws IOException {
+		if (window != null && position >= windowStart &&
+				position + length <= windowStart + window.capacity()) {
+			return; // already mapped
+		}
+		if (position + length > stringTableOffset) {
+			throw new SimError("Truncated columnar external events file");
+		}
+		long size = Math.min(Math.max(MAX_WINDOW, length),
+				stringTableOffset - position);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		windowStart = position;
+	}
+
+	/**
+	 * Reads the string table from the end of the file
+	 * @return The strings
+	 * @throws IOException if reading the file fails
+	 */
+	private String[] readStrings() throws IOException {
+		ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+				stringTableOffset, channel.size() - stringTableOffset);
+		String[] strings = new String[table.getInt()];
+		for (int i=0; i<strings.length; i++) {
+			byte[] bytes = new byte[table.getInt()];
+			table.get(bytes);
+			strings[i] = new String(bytes, UTF8);
+		}
+		return strings;
+	}
+
+	/**
+	 * Returns the length of a block in the file
+	 * @param count Number of events in the block
+	 * @return The length (bytes), padded to a multiple of eight
+	 */
+	private static long blockLength(int count) {
+		long length = BLOCK_HEADER_SIZE + (long)EVENT_SIZE * count;
+		return (length + 7) & ~7L;
+	}
+
+	/**
+	 * Checks if the given file is a columnar external events file
+	 * @param file The file to check
+	 * @return True if the file is a columnar ee file, false if not
+	 */
+	public static boolean isColumnarEeFile(File file) {
+		if (!file.getName().endsWith(COLUMNAR_EXT)) {
+			return false;
+		}
+
+		try {
+			new ColumnarEventsReader(file).close();
+		}
+		catch (SimError e) {
+			return false; // read failed -> not a valid file
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads all events from a reader and stores them to a columnar file
+	 * @param fileName Path to the file where the events are stored
+	 * @param source The reader where the events are read from
+	 * @return Number of events stored
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static long storeToColumnarFile(String fileName,
+			ExternalEventsReader source) throws IOException {
+		Writer out = new Writer(fileName);
+		try {
+			List<ExternalEvent> events = source.readEvents(BLOCK_SIZE);
+			while (events.size() > 0) {
+				out.write(events);
+				events = source.readEvents(BLOCK_SIZE);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		return out.getNrofEvents();
+	}
+
+	/**
+	 * Writes one block of events
+	 * @param channel Where to write
+	 * @param events The events of the block
+	 * @param stringIndices Indices of the strings in the string table
+	 * @param strings The string table
+	 * @throws IOException if writing fails
+	 */
+	private static void writeBlock(FileChannel channel,
+			List<ExternalEvent> events, HashMap<String, Integer> stringIndices,
+			List<String> strings) throws IOException {
+		int count = events.size();
+		ByteBuffer block = ByteBuffer.allocate((int)blockLength(count));
+		block.putInt(0, count);
+		int timeCol = BLOCK_HEADER_SIZE;
+		int host1Col = timeCol + 8 * count;
+		int host2Col = host1Col + 4 * count;
+		int stringCol = host2Col + 4 * count;
+		int sizeCol = stringCol + 4 * count;
+		int respSizeCol = sizeCol + 4 * count;
+		int typeCol = respSizeCol + 4 * count;
+
+		for (int i=0; i<count; i++) {
+			ExternalEvent ee = events.get(i);
+			int host1;
+			int host2;
+			String string;
+			int size = 0;
+			int respSize = 0;
+			byte type;
+
+			if (ee instanceof ConnectionEvent) {
+				ConnectionEvent ce = (ConnectionEvent)ee;
+				host1 = ce.fromAddr;
+				host2 = ce.toAddr;
+				string = ce.interfaceId;
+				type = ce.isUp ? CONNECTION_UP : CONNECTION_DOWN;
+			}
+			else if (ee instanceof MessageEvent) {
+				MessageEvent me = (MessageEvent)ee;
+				host1 = me.fromAddr;
+				host2 = me.toAddr;
+				string = me.id;
+				if (ee instanceof MessageCreateEvent) {
+					size = ((MessageCreateEvent)ee).getSize();
+					respSize = ((MessageCreateEvent)ee).getResponseSize();
+					type = CREATE;
+				}
+				else if (ee instanceof MessageDeleteEvent) {
+					type = ((MessageDeleteEvent)ee).isDrop() ? DROP : REMOVE;
+				}
+				else if (ee instanceof MessageRelayEvent) {
+					switch (((MessageRelayEvent)ee).getStage()) {
+					case MessageRelayEvent.SENDING: type = SEND; break;
+					case MessageRelayEvent.TRANSFERRED: type = DELIVERED; break;
+					default: type = ABORT;
+					}
+				}
+				else {
+					throw new SimError("Can't store event " + ee);
+				}
+			}
+			else {
+				throw new SimError("Can't store event " + ee);
+			}
+
+			int stringIndex = -1;
+			if (string != null) {
+				Integer index = stringIndices.get(string);
+				if (index == null) {
+					index = strings.size();
+					stringIndices.put(string, index);
+					strings.add(string);
+				}
+				stringIndex = index;
+			}
+
+			block.putDouble(timeCol + 8 * i, ee.getTime());
+			block.putInt(host1Col + 4 * i, host1);
+			block.putInt(host2Col + 4 * i, host2);
+			block.putInt(stringCol + 4 * i, stringIndex);
+			block.putInt(sizeCol + 4 * i, size);
+			block.putInt(respSizeCol + 4 * i, respSize);
+			block.put(typeCol + i, type);
+		}
+
+		writeFully(channel, block);
+	}
+
+	/**
+	 * Writes all of the buffer's content
+	 * @param channel Where to write
+	 * @param buffer What to write
+	 * @throws IOException if writing fails
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.rewind();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public void close() {
+		window = null;
+		try {
+			if (this.file != null) {
+				this.file.close();
+			}
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+
+	/**
+	 * Writes events to a columnar file as they are given, so the events
+	 * don't need to be in memory all at once. The string table and the
+	 * header are written when the writer is closed.
+	 */
+	public static class Writer {
+		private RandomAccessFile out;
+		private FileChannel channel;
+		private HashMap<String, Integer> stringIndices;
+		private List<String> strings;
+		private long nrofEvents;
+
+		/**
+		 * Creates the file (or truncates an existing one)
+		 * @param fileName Path to the file where the events are stored
+		 * @throws IOException if the file can't be created
+		 */
+		public Writer(String fileName) throws IOException {
+			this.out = new RandomAccessFile(fileName, "rw");
+			this.out.setLength(0);
+			this.channel = out.getChannel();
+			this.channel.position(HEADER_SIZE);
+			this.stringIndices = new HashMap<String, Integer>();
+			this.strings = new ArrayList<String>();
+			this.nrofEvents = 0;
+		}
+
+		/**
+		 * Writes events to the file. The events must be in the order of
+		 * their times (also with respect to the earlier written events).
+		 * @param events The events to write
+		 * @throws IOException if writing fails
+		 */
+		public void write(List<ExternalEvent> events) throws IOException {
+			for (int i=0; i<events.size(); i+=BLOCK_SIZE) {
+				List<ExternalEvent> block = events.subList(i, 
+						Math.min(i + BLOCK_SIZE, events.size()));
+				writeBlock(channel, block, stringIndices, strings);
+				this.nrofEvents += block.size();
+			}
+		}
+
+		/**
+		 * Returns the number of events written so far
+		 * @return the number of events written so far
+		 */
+		public long getNrofEvents() {
+			return this.nrofEvents;
+		}
+
+		/**
+		 * Writes the string table and the header and closes the file
+		 * @throws IOException if writing fails
+		 */
+		public void close() throws IOException {
+			try {
+				long stringTableOffset = channel.position();
+				int tableSize = 4;
+				List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+				for (String s : strings) {
+					byte[] bytes = s.getBytes(UTF8);
+					encoded.add(bytes);
+					tableSize += 4 + bytes.length;
+				}
+				ByteBuffer table = ByteBuffer.allocate(tableSize);
+				table.putInt(encoded.size());
+				for (byte[] bytes : encoded) {
+					table.putInt(bytes.length);
+					table.put(bytes);
+				}
+				writeFully(channel, table);
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(VERSION);
+				header.putLong(nrofEvents).putLong(stringTableOffset);
+				channel.position(0);
+				writeFully(channel, header);
+			}
+			finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Converts an external events file to a columnar file
+	 * @param args Path of the events file and path of the output file
+	 * @throws IOException if the conversion fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: ColumnarEventsReader <events file> " +
+					"<output file>");
+			System.exit(1);
+		}
+
+		File input = new File(args[0]);
+		ExternalEventsReader reader;
+		if (BinaryEventsReader.isBinaryEeFile(input)) {
+			reader = new BinaryEventsReader(input);
+		}
+		else {
+			reader = new StandardEventsReader(input);
+		}
+
+		long nrof = storeToColumnarFile(args[1], reader);
+		reader.close();
+		System.out.println("Stored " + nrof + " events to " + args[1]);
+	}
+}
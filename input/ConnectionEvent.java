@@ -3,6 +3,9 @@
  * Released under GPLv3. See LICENSE.txt for details. 
  */
 package input;
+
+import java.util.Arrays;
+import java.util.List;
 
 import core.DTNHost;
 import core.World;
@@ -46,6 +49,12 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 	
+	@Override
+	public List<DTNHost> getHosts(World world) {
+		return Arrays.asList(world.getNodeByAddress(this.fromAddr),
+				world.getNodeByAddress(this.toAddr));
+	}
+	
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " + 
@@ -5,7 +5,9 @@
 package input;
 
 import java.io.Serializable;
+import java.util.List;
 
+import core.DTNHost;
 import core.World;
 
 /**
@@ -28,6 +30,17 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 	public void processEvent(World world) {
 		// this is just a dummy event
 	}
+	
+	/**
+	 * Returns the hosts that processing this event acts on directly. 
+	 * Events that may affect any host (like this dummy event that requests 
+	 * an update of all hosts) return null.
+	 * @param world World where the actors of the event are
+	 * @return The hosts or null if the event may affect any host
+	 */
+	public List<DTNHost> getHosts(World world) {
+		return null;
+	}
 
 	/**
 	 * Returns the time when this event should happen.
@@ -7,20 +7,32 @@ package input;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import core.Settings;
+import core.SimError;
 
 /**
  * Queue of external events. This class also takes care of buffering
  * the events and preloading only a proper amount of them.
  */
-public class ExternalEventsQueue implements EventQueue {
+public class ExternalEventsQueue implements StableEventQueue {
 	/** ExternalEvents namespace ({@value})*/
 	public static final String SETTINGS_NAMESPACE = "ExternalEvents";
 	/** number of event to preload -setting id ({@value})*/
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** read the next events in background -setting id ({@value}). Boolean 
+	 * valued. If true, the next {@link #PRELOAD_SETTING} events are read 
+	 * in a background thread while the previous ones are processed. 
+	 * Default is false. */
+	public static final String PREFETCH_SETTING = "prefetch";
 	
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -31,15 +43,21 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	/** reads the next events in background (null if prefetching is off) */
+	private ExecutorService prefetcher;
+	/** the next events being read in background */
+	private Future<List<ExternalEvent>> prefetched;
 	
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file and if it ends with 
+	 * {@link ColumnarEventsReader#COLUMNAR_EXT} a columnar file.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
+	 * @see ColumnarEventsReader#storeToColumnarFile(String, ExternalEventsReader)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
 		setNrofPreload(nrofPreload);
@@ -57,6 +75,16 @@ public class ExternalEventsQueue implements EventQueue {
 		}
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
+		}
+		if (s.contains(PREFETCH_SETTING) && s.getBoolean(PREFETCH_SETTING)) {
+			this.prefetcher = Executors.newSingleThreadExecutor(
+					new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ExternalEventsPrefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
@@ -77,7 +105,10 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ColumnarEventsReader.isColumnarEeFile(eventsFile)) {
+			this.reader = new ColumnarEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
@@ -86,6 +117,7 @@ public class ExternalEventsQueue implements EventQueue {
 		
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
+		prefetch();
 	}
 	
 	/**
@@ -117,8 +149,10 @@ public class ExternalEventsQueue implements EventQueue {
 		nextEventIndex++;
 		
 		if (nextEventIndex >= queue.size()) { // ran out of events
-			queue = readEvents(nrofPreload);
+			queue = (prefetched != null) ? takePrefetched() :
+				readEvents(nrofPreload);
 			nextEventIndex = 0;
+			prefetch();
 		}
 		
 		return ee;
@@ -153,11 +187,89 @@ public class ExternalEventsQueue implements EventQueue {
 		List<ExternalEvent> events = reader.readEvents(nrof);
 		
 		if (nrof > 0 && events.size() == 0) {
-			reader.close();
-			allEventsRead = true;
+			closeReader();
 		}
 				
 		return events;
 	}
 	
+	/**
+	 * Starts reading the next events in the background, if prefetching is
+	 * on and there can be more events to read. The reader is used only by
+	 * the background thread until {@link #takePrefetched()} is called.
+	 */
+	private void prefetch() {
+		if (prefetcher == null) {
+			return;
+		}
+		if (allEventsRead || queue.size() == 0) {
+			prefetcher.shutdown();
+			prefetcher = null;
+			return;
+		}
+		
+		prefetched = prefetcher.submit(new Callable<List<ExternalEvent>>() {
+			public List<ExternalEvent> call() {
+				return readEvents(nrofPreload);
+			}
+		});
+	}
+	
+	/**
+	 * Closes the queue: stops reading events in background and closes the
+	 * events file. No more events are returned after this. Should be called
+	 * if the simulation ends before all the events have been read.
+	 */
+	public void close() {
+		this.queue = new ArrayList<ExternalEvent>(0);
+		this.nextEventIndex = 0;
+		if (prefetcher != null) {
+			/* the reader is closed in the background thread after the
+			 * possibly ongoing read */
+			prefetched.cancel(false);
+			prefetched = null;
+			prefetcher.submit(new Runnable() {
+				public void run() {
+					closeReader();
+				}
+			});
+			prefetcher.shutdown();
+			prefetcher = null;
+		}
+		else {
+			closeReader();
+		}
+	}
+	
+	/**
+	 * Closes the events reader unless all the events were already read
+	 */
+	private void closeReader() {
+		if (!allEventsRead) {
+			reader.close();
+			allEventsRead = true;
+		}
+	}
+	
+	/**
+	 * Waits for the events that are being read in background
+	 * @return The events
+	 */
+	private List<ExternalEvent> takePrefetched() {
+		try {
+			return prefetched.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while reading external events");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new SimError(e.getMessage(), e);
+		}
+		finally {
+			prefetched = null;
+		}
+	}
+	
 }
@@ -31,6 +31,22 @@ public class MessageCreateEvent extends MessageEvent {
 		this.size = size;
 		this.responseSize = responseSize;
 	}
+	
+	/**
+	 * Returns the size of the message
+	 * @return the size of the message
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns the size of the requested response message
+	 * @return the size of the response or 0 if no response is requested
+	 */
+	public int getResponseSize() {
+		return this.responseSize;
+	}
 
 	
 	/**
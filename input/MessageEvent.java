@@ -4,6 +4,12 @@
  */
 package input;
 
+import java.util.Arrays;
+import java.util.List;
+
+import core.DTNHost;
+import core.World;
+
 /**
  * A message related external event
  */
@@ -29,6 +35,12 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 	
+	@Override
+	public List<DTNHost> getHosts(World world) {
+		return Arrays.asList(world.getNodeByAddress(this.fromAddr),
+				world.getNodeByAddress(this.toAddr));
+	}
+	
 	@Override
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
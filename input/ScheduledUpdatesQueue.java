@@ -4,25 +4,29 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time 
- * are merged to a single update.
+ * are merged to a single update. The update times are kept in a heap, so
+ * adding an update and taking the next one take logarithmic time.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** Times of the requested updates (simulated seconds) */
+	private PriorityQueue<Double> updates;
+	/** The same times, for merging updates at the same time */
+	private Set<Double> updateTimes;
 	
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new PriorityQueue<Double>();
+		this.updateTimes = new HashSet<Double>();
 	}
 	
 	/**
@@ -31,16 +35,12 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-		
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		Double time = this.updates.poll();
+		if (time == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
-		
-		return event;
+		this.updateTimes.remove(time);
+		return new ExternalEvent(time);
 	}
 	
 	/**
@@ -49,7 +49,8 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		Double time = this.updates.peek();
+		return time == null ? Double.MAX_VALUE : time;
 	}
 
 	/**
@@ -57,49 +58,22 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
-
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
+		Double time = simTime + 0.0; // -0.0 is the same time as 0.0
+		if (this.updateTimes.add(time)) {
+			this.updates.add(time);
 		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
-		}
-		else { // given event happens later..
-			putToQueue(ee);
-		}
-	}
-	
-	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
-	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-		
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
-			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
-			}
-		}
-		
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);  
+		// else: update with the given time exists -> no need for new
 	}
 	
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		Double[] times = this.updates.toArray(new Double[0]);
+		Arrays.sort(times);
+		String s = "updates @ " + nextEventsTime();
 		
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		for (int i = 1; i < times.length; i++) {
+			s += ", " + times[i];
 		}
 		
-		return times;
+		return s;
 	}
 }
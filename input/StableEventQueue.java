@@ -0,0 +1,17 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+/**
+ * An event queue whose next event's time changes only when the next event
+ * is taken from the queue with {@link #nextEvent()}. The world keeps
+ * the stable queues in a heap ordered by their next events' times instead
+ * of asking every queue for its next event's time after every event.
+ * Queues whose next event's time can change otherwise (e.g. because events
+ * are added to the queue from outside) must not implement this interface.
+ */
+public interface StableEventQueue extends EventQueue {
+
+}
@@ -192,19 +192,25 @@ public class StandardEventsReader implements ExternalEventsReader {
 	 * @throws SimError if no address could be parsed from the id
 	 */
 	private int getHostAddress(String hostId) {
-		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
-			addressPart = hostId; // host id is only the address
+		/* the address is the run of digits in the end, and there must not
+		 * be other digits before it (e.g., "p12" or "12", but not "p1p2") */
+		int start = hostId.length();
+		while (start > 0 && isDigit(hostId.charAt(start - 1))) {
+			start--;
 		}
-		else if (hostId.matches("^\\D+\\d+$")) {
-			String [] parts = hostId.split("\\D");
-			addressPart = parts[parts.length-1]; // last occurence is the addr
+		boolean valid = start < hostId.length();
+		for (int i=0; valid && i < start; i++) {
+			valid = !isDigit(hostId.charAt(i));
 		}
-		else {
+		if (!valid) {
 			throw new SimError("Invalid host ID '" + hostId + "'");
 		}
 		
-		return Integer.parseInt(addressPart);
+		return Integer.parseInt(hostId.substring(start));
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
 	}
 	
 	public void close() {
@@ -5,15 +5,20 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import movement.MovementModel;
 
 import core.Coord;
 import core.DTNSim;
+import core.LongHashSet;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimContext;
 
 /**
  * <P>
@@ -38,15 +43,49 @@ import core.Settings;
  * from zero to conserve memory. 
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
+	/** how many interfaces one in-range snapshot task handles at least */
+	private static final int SNAPSHOT_TASK_SIZE = 128;
 	private GridCell[][] cells;
 	private HashMap<NetworkInterface,GridCell> ginterfaces;
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
 
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
+	/** interfaces ordered by the cells they are currently located in */
+	private NetworkInterface[] snapshotOrder;
+	/** cell indexes of the interfaces in {@link #snapshotOrder} */
+	private int[] snapshotCells;
+	/** number of interfaces in the snapshot arrays */
+	private int snapshotSize;
+
+	/** the live connections between the interfaces of this grid by 
+	 * {@link #linkKey(NetworkInterface, NetworkInterface)}, or null if the
+	 * connections are not tracked */
+	private LongHashSet links;
+	/** are the results of a contact sweep in use */
+	private boolean hasContactSweep;
+	/** are the connections created and torn down by a contact predictor 
+	 * instead of the interfaces */
+	private boolean contactsPredicted;
+	/** pairs of interfaces (snapshot order indexes) that were in range but
+	 * not connected in a sweep */
+	private int[] sweepPairs;
+	/** the interfaces that were in range but not connected in the sweep,
+	 * grouped by interface (see {@link #pendingOffsets}) */
+	private int[] pending;
+	/** pending interfaces of the interface at snapshot order index i are at
+	 * indexes pendingOffsets[i]...pendingOffsets[i+1]-1 of {@link #pending} 
+	 */
+	private int[] pendingOffsets;
+	/** number of connected interfaces that were in range in the sweep, by 
+	 * snapshot order index */
+	private int[] linkedInRange;
+	/** snapshot order indexes of the interfaces by their addresses */
+	private int[] indexByAddress;
+	/** the interfaces of the snapshot order by their addresses */
+	private NetworkInterface[] byAddress;
+	/** buffer for sorting the interfaces to the snapshot order */
+	private long[] sortKeys;
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
@@ -54,12 +93,31 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 	
 	public static void reset() {
-		gridobjects = new HashMap<Integer,ConnectivityGrid>();
+		State state = new State();
+		state.gridobjects = new HashMap<Integer,ConnectivityGrid>();
 
 		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
 		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
+		state.worldSizeX = worldSize[0];
+		state.worldSizeY = worldSize[1];
+		SimContext.getCurrent().setState(ConnectivityGrid.class, state);
+	}
+
+	/**
+	 * The per-run state of the class
+	 */
+	private static class State {
+		private HashMap<Integer,ConnectivityGrid> gridobjects;
+		private int worldSizeX;
+		private int worldSizeY;
+	}
+
+	/**
+	 * Returns the per-run state of the class
+	 * @return the per-run state of the class
+	 */
+	private static State getState() {
+		return (State)SimContext.getCurrent().getState(ConnectivityGrid.class);
 	}
 
 	/**
@@ -69,15 +127,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * 	radio coverage's diameter)
 	 */
 	private ConnectivityGrid(int cellSize) {
-		this.rows = worldSizeY/cellSize + 1;
-		this.cols = worldSizeX/cellSize + 1;
+		State state = getState();
+		this.rows = state.worldSizeY/cellSize + 1;
+		this.cols = state.worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
 		this.cells = new GridCell[rows+2][cols+2];
 		this.cellSize = cellSize;
 
 		for (int i=0; i<rows+2; i++) {
 			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+				this.cells[i][j] = new GridCell(i, j);
 			}
 		}
 		ginterfaces = new HashMap<NetworkInterface,GridCell>();
@@ -92,6 +151,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double cellSize) {
+		HashMap<Integer,ConnectivityGrid> gridobjects = getState().gridobjects;
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
@@ -102,6 +162,14 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		}
 	}
 
+	/**
+	 * Returns all the connectivity grid objects created so far
+	 * @return all the connectivity grid objects
+	 */
+	public static Collection<ConnectivityGrid> getGrids() {
+		return getState().gridobjects.values();
+	}
+
 	/**
 	 * Adds a network interface to the overlay grid
 	 * @param ni The new network interface
@@ -208,6 +276,9 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		ni.clear();
 
 		GridCell loc = (GridCell)ginterfaces.get(netinterf);
+		if (loc != null && netinterf.hasInRangeSnapshot()) {
+			return getNearInterfacesInRange(netinterf);
+		}
 		if (loc != null) {	
 			GridCell[] neighbors = 
 				getNeighborCellsByCoord(netinterf.getLocation());
@@ -218,6 +289,486 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		return ni;
 	}
 
+	/**
+	 * Visits all interfaces using the same technology and channel that are in
+	 * neighboring cells. The interfaces are visited in the cell lists, in
+	 * the same order as {@link #getNearInterfaces(NetworkInterface)} would
+	 * return them without in-range snapshots. If the results of a contact 
+	 * sweep are in use, only the interface itself and the interfaces that 
+	 * were in range but not connected to it are visited.
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface netinterf, 
+			NearInterfaceVisitor visitor) {
+		if (contactsPredicted || !ginterfaces.containsKey(netinterf)) {
+			return;
+		}
+		if (hasContactSweep) {
+			int index = indexOf(netinterf);
+			if (index >= 0) {
+				visitor.visit(netinterf); // it's in its own cell too
+				for (int i = pendingOffsets[index]; 
+						i < pendingOffsets[index + 1]; i++) {
+					visitor.visit(snapshotOrder[pending[i]]);
+				}
+				return;
+			}
+		}
+
+		Coord c = netinterf.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+
+		for (int r = row - 1; r <= row + 1; r++) {
+			GridCell[] cellRow = this.cells[r];
+			for (int k = col - 1; k <= col + 1; k++) {
+				ArrayList<NetworkInterface> interfaces = cellRow[k].interfaces;
+				for (int i=0, n = interfaces.size(); i < n; i++) {
+					visitor.visit(interfaces.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the same interfaces as {@link #getNearInterfaces(
+	 * NetworkInterface)} would (and in the same order), except those that
+	 * are not in the in-range snapshot of the interface. The interface 
+	 * itself is included first, like it is in the unfiltered result. The
+	 * neighboring cells are gone through like in {@link 
+	 * #visitNearInterfaces(NetworkInterface, NearInterfaceVisitor)} and
+	 * each interface is looked up from the snapshot.
+	 * @param netinterf The interface whose near interfaces are returned
+	 * @return Near interfaces that are within range
+	 */
+	private Collection<NetworkInterface> getNearInterfacesInRange(
+			NetworkInterface netinterf) {
+		Coord c = netinterf.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		ArrayList<NetworkInterface> ni = 
+			new ArrayList<NetworkInterface>(netinterf.getNrofInRange() + 1);
+		ni.add(netinterf);
+
+		/* the cells where the interfaces are now, not where they will be
+		 * after they have been updated */
+		for (int r = row - 1; r <= row + 1; r++) {
+			GridCell[] cellRow = this.cells[r];
+			for (int k = col - 1; k <= col + 1; k++) {
+				ArrayList<NetworkInterface> interfaces = cellRow[k].interfaces;
+				for (int i=0, n = interfaces.size(); i < n; i++) {
+					NetworkInterface near = interfaces.get(i);
+					if (near != netinterf && 
+							netinterf.inRangeSnapshotContains(near)) {
+						ni.add(near);
+					}
+				}
+			}
+		}
+		return ni;
+	}
+
+	/**
+	 * Takes in-range snapshots of all the interfaces in the grid. The 
+	 * interfaces are first sorted by the (row-major) indexes of the cells of
+	 * their current locations and then handed out in spatially contiguous
+	 * batches to the pool.
+	 */
+	@Override
+	public void takeInRangeSnapshots(ForkJoinPool pool) {
+		int nrofInterfaces = sortByCell();
+		pool.invoke(new SnapshotTask(0, nrofInterfaces));
+	}
+
+	/**
+	 * Puts all the interfaces in the snapshot order, i.e., sorts them by the
+	 * (row-major) indexes of the cells of their current locations and, 
+	 * within a cell, by their addresses
+	 * @return The number of interfaces
+	 */
+	private int sortByCell() {
+		int width = cols + 2;
+		int nrofInterfaces = ginterfaces.size();
+		int maxAddress = -1;
+
+		if (snapshotOrder == null || snapshotOrder.length < nrofInterfaces) {
+			snapshotOrder = new NetworkInterface[nrofInterfaces];
+			snapshotCells = new int[nrofInterfaces];
+			sortKeys = new long[nrofInterfaces];
+		}
+
+		int i = 0;
+		for (NetworkInterface ni : ginterfaces.keySet()) {
+			Coord c = ni.getLocation();
+			long row = (int)(c.getY()/cellSize) + 1; 
+			long col = (int)(c.getX()/cellSize) + 1;
+			snapshotOrder[i] = ni;
+			sortKeys[i++] = ((row * width + col) << 32) | ni.getAddress();
+			maxAddress = Math.max(maxAddress, ni.getAddress());
+		}
+
+		if (indexByAddress == null || indexByAddress.length <= maxAddress) {
+			indexByAddress = new int[maxAddress + 1];
+			byAddress = new NetworkInterface[maxAddress + 1];
+		}
+		for (i = 0; i < nrofInterfaces; i++) {
+			byAddress[snapshotOrder[i].getAddress()] = snapshotOrder[i];
+		}
+
+		Arrays.sort(sortKeys, 0, nrofInterfaces);
+		for (i = 0; i < nrofInterfaces; i++) {
+			int address = (int)sortKeys[i];
+			snapshotOrder[i] = byAddress[address];
+			snapshotCells[i] = (int)(sortKeys[i] >>> 32);
+			indexByAddress[address] = i;
+		}
+		snapshotSize = nrofInterfaces;
+		return nrofInterfaces;
+	}
+
+	/**
+	 * Starts tracking the connections between the interfaces of this grid,
+	 * which is needed for {@link #sweepContacts()}. Must be called before
+	 * any of the interfaces are connected.
+	 */
+	public void trackLinks() {
+		if (this.links == null) {
+			this.links = new LongHashSet(ginterfaces.size());
+		}
+	}
+
+	@Override
+	public boolean tracksLinks() {
+		return this.links != null;
+	}
+
+	@Override
+	public boolean isLinked(NetworkInterface ni1, NetworkInterface ni2) {
+		if (this.links == null) {
+			return super.isLinked(ni1, ni2);
+		}
+		return this.links.contains(linkKey(ni1, ni2));
+	}
+
+	@Override
+	public void linkUp(NetworkInterface ni1, NetworkInterface ni2) {
+		if (this.links != null) {
+			this.links.add(linkKey(ni1, ni2));
+		}
+	}
+
+	@Override
+	public void linkDown(NetworkInterface ni1, NetworkInterface ni2) {
+		if (this.links != null) {
+			this.links.remove(linkKey(ni1, ni2));
+		}
+	}
+
+	/**
+	 * Sets whether the connections between the interfaces of this grid are
+	 * created and torn down by a contact predictor (see 
+	 * {@link core.ContactPredictor}). If they are, the interfaces neither
+	 * look for new connections nor check the old ones.
+	 * @param predicted True if the contacts are predicted
+	 */
+	public void setContactsPredicted(boolean predicted) {
+		this.contactsPredicted = predicted;
+	}
+
+	@Override
+	public boolean detectsContacts() {
+		return this.hasContactSweep || this.contactsPredicted;
+	}
+
+	/**
+	 * Returns false if, according to the last contact sweep, all the 
+	 * interfaces the given interface was connected to were still within 
+	 * its range, or if the contacts are predicted
+	 */
+	@Override
+	public boolean mayHaveLostConnections(NetworkInterface ni) {
+		if (this.contactsPredicted) {
+			return false;
+		}
+		if (!this.hasContactSweep) {
+			return true;
+		}
+		int index = indexOf(ni);
+		return index < 0 || 
+			linkedInRange[index] != ni.getConnections().size();
+	}
+
+	/**
+	 * Returns the key of the link between two interfaces. The key is the
+	 * same regardless of the order of the interfaces.
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 * @return The key
+	 */
+	private static long linkKey(NetworkInterface ni1, NetworkInterface ni2) {
+		long a1 = ni1.getAddress();
+		long a2 = ni2.getAddress();
+		return a1 < a2 ? (a1 << 32) | a2 : (a2 << 32) | a1;
+	}
+
+	/**
+	 * Finds all pairs of interfaces of this grid that are within range of
+	 * each other. Every pair of neighboring cells is checked only once and 
+	 * the distances are compared squared. The found pairs are compared to 
+	 * the connections (as tracked since {@link #trackLinks()}) and, until
+	 * {@link #clearInRangeSnapshots()} is called, 
+	 * {@link #visitNearInterfaces(NetworkInterface, NearInterfaceVisitor)}
+	 * visits only the pairs that are not connected yet and 
+	 * {@link #mayHaveLostConnections(NetworkInterface)} tells which 
+	 * interfaces have connections that went out of range.
+	 */
+	public void sweepContacts() {
+		int width = cols + 2;
+		int nrofInterfaces = sortByCell();
+		int nrofPairs = 0;
+
+		if (sweepPairs == null) {
+			sweepPairs = new int[Math.max(16, nrofInterfaces * 2)];
+		}
+		if (linkedInRange == null || linkedInRange.length < nrofInterfaces) {
+			linkedInRange = new int[nrofInterfaces];
+		}
+		else {
+			Arrays.fill(linkedInRange, 0, nrofInterfaces, 0);
+		}
+		/* the cells only grow in the snapshot order, so the ends of the 
+		 * neighboring cells' ranges can be found by moving forward */
+		int sameRowEnd = 0;
+		int nextRowStart = 0;
+		int nextRowEnd = 0;
+		for (int i = 0; i < nrofInterfaces; i++) {
+			int cell = snapshotCells[i];
+			sameRowEnd = skipCellsBefore(cell + 2, sameRowEnd);
+			nextRowStart = skipCellsBefore(cell + width - 1, nextRowStart);
+			nextRowEnd = skipCellsBefore(cell + width + 2, nextRowEnd);
+			/* rest of this cell and the next one in the same row, and the 
+			 * three neighboring cells in the next row */
+			nrofPairs = addPairsInRange(i, i + 1, sameRowEnd, nrofPairs);
+			nrofPairs = addPairsInRange(i, nextRowStart, nextRowEnd, 
+					nrofPairs);
+		}
+
+		/* group the pending pairs by both of their interfaces: count the 
+		 * pairs of each interface, sum up to the ends of the groups and fill 
+		 * the groups backwards to their starts */
+		if (pendingOffsets == null || 
+				pendingOffsets.length < nrofInterfaces + 1) {
+			pendingOffsets = new int[nrofInterfaces + 1];
+		}
+		else {
+			Arrays.fill(pendingOffsets, 0, nrofInterfaces + 1, 0);
+		}
+		for (int k = 0; k < nrofPairs; k++) {
+			pendingOffsets[sweepPairs[2 * k]]++;
+			pendingOffsets[sweepPairs[2 * k + 1]]++;
+		}
+		for (int i = 1; i < nrofInterfaces; i++) {
+			pendingOffsets[i] += pendingOffsets[i - 1];
+		}
+		pendingOffsets[nrofInterfaces] = nrofPairs * 2;
+		if (pending == null || pending.length < nrofPairs * 2) {
+			pending = new int[nrofPairs * 2];
+		}
+		for (int k = 0; k < nrofPairs; k++) {
+			int i = sweepPairs[2 * k];
+			int j = sweepPairs[2 * k + 1];
+			pending[--pendingOffsets[i]] = j;
+			pending[--pendingOffsets[j]] = i;
+		}
+		hasContactSweep = true;
+	}
+
+	/**
+	 * Checks which interfaces in a range of the snapshot order are within
+	 * range of an interface. Connected pairs are counted to 
+	 * {@link #linkedInRange} and the other pairs are added to 
+	 * {@link #sweepPairs}.
+	 * @param i Snapshot order index of the interface
+	 * @param from Index of the first interface to check
+	 * @param to Index of the interface after the last one to check
+	 * @param nrofPairs Number of not connected pairs found so far
+	 * @return Number of not connected pairs after the new ones
+	 */
+	private int addPairsInRange(int i, int from, int to, int nrofPairs) {
+		NetworkInterface ni = snapshotOrder[i];
+		Coord c = ni.getLocation();
+		double x = c.getX();
+		double y = c.getY();
+		double range = ni.getTransmitRange();
+
+		for (int j = from; j < to; j++) {
+			NetworkInterface other = snapshotOrder[j];
+			Coord oc = other.getLocation();
+			double dx = oc.getX() - x;
+			double dy = oc.getY() - y;
+			double smallerRange = Math.min(range, other.getTransmitRange());
+			if (dx * dx + dy * dy > smallerRange * smallerRange) {
+				continue;
+			}
+			if (links.contains(linkKey(ni, other))) {
+				linkedInRange[i]++;
+				linkedInRange[j]++;
+				continue;
+			}
+			if (2 * nrofPairs + 2 > sweepPairs.length) {
+				sweepPairs = Arrays.copyOf(sweepPairs, sweepPairs.length * 2);
+			}
+			sweepPairs[2 * nrofPairs] = i;
+			sweepPairs[2 * nrofPairs + 1] = j;
+			nrofPairs++;
+		}
+		return nrofPairs;
+	}
+
+	/**
+	 * Returns the index of the first interface in the snapshot order, 
+	 * starting from a given index, that is in the given cell or in a cell 
+	 * after it
+	 * @param cell Index of the cell
+	 * @param from Index where to start looking from
+	 * @return The index of the interface (or snapshot size if there are none)
+	 */
+	private int skipCellsBefore(int cell, int from) {
+		while (from < snapshotSize && snapshotCells[from] < cell) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the snapshot order index of an interface
+	 * @param ni The interface
+	 * @return The index or -1 if the interface isn't in the snapshot order
+	 */
+	private int indexOf(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address < 0 || address >= indexByAddress.length) {
+			return -1;
+		}
+		int index = indexByAddress[address];
+		if (index < snapshotSize && snapshotOrder[index] == ni) {
+			return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Clears the in-range snapshots and the results of the last contact
+	 * sweep
+	 */
+	@Override
+	public void clearInRangeSnapshots() {
+		if (hasContactSweep) {
+			hasContactSweep = false;
+			return; // no snapshots were taken
+		}
+		super.clearInRangeSnapshots();
+	}
+
+	/**
+	 * Takes the in-range snapshots of a range of interfaces in the
+	 * snapshot order
+	 * @param from Index of the first interface
+	 * @param to Index of the interface after the last one
+	 */
+	private void takeSnapshots(int from, int to) {
+		int width = cols + 2;
+		NetworkInterface[] buffer = new NetworkInterface[16];
+
+		for (int i = from; i < to; i++) {
+			NetworkInterface ni = snapshotOrder[i];
+			int cell = snapshotCells[i];
+			int count = 0;
+			for (int r = -1; r <= 1; r++) {
+				/* three neighboring cells of a row are consecutive */
+				int first = firstInCell(cell + r * width - 1);
+				int last = firstInCell(cell + r * width + 2);
+				for (int j = first; j < last; j++) {
+					NetworkInterface other = snapshotOrder[j];
+					if (other == ni || !ni.computeWithinRange(other)) {
+						continue;
+					}
+					if (count == buffer.length) {
+						buffer = Arrays.copyOf(buffer, count * 2);
+					}
+					buffer[count++] = other;
+				}
+			}
+			sortByAddress(buffer, count);
+			ni.setInRangeSnapshot(buffer, count);
+		}
+	}
+
+	/**
+	 * Returns the index of the first interface in the snapshot order that
+	 * is in the given cell or in a cell after it
+	 * @param cell Index of the cell
+	 * @return The index of the interface (or snapshot size if there are none)
+	 */
+	private int firstInCell(int cell) {
+		int low = 0;
+		int high = snapshotSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (snapshotCells[mid] < cell) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sorts interfaces by their address (insertion sort; the arrays are
+	 * short)
+	 * @param interfaces The interfaces to sort
+	 * @param count Number of interfaces to sort from the start of the array
+	 */
+	private static void sortByAddress(NetworkInterface[] interfaces, 
+			int count) {
+		for (int i=1; i < count; i++) {
+			NetworkInterface ni = interfaces[i];
+			int j = i - 1;
+			while (j >= 0 && interfaces[j].getAddress() > ni.getAddress()) {
+				interfaces[j + 1] = interfaces[j];
+				j--;
+			}
+			interfaces[j + 1] = ni;
+		}
+	}
+
+	/**
+	 * Fork-join task that takes the in-range snapshots of a range of 
+	 * interfaces in the snapshot order
+	 */
+	private class SnapshotTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+
+		private SnapshotTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SNAPSHOT_TASK_SIZE) {
+				takeSnapshots(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SnapshotTask(from, middle), 
+					new SnapshotTask(middle, to));
+		}
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -236,10 +787,14 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		private int row;
+		private int col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
+			this.row = row;
+			this.col = col;
 		}
 
 		/**
@@ -5,7 +5,10 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import core.Connection;
 import core.NetworkInterface;
 
 /**
@@ -40,9 +43,118 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Gives all network interfaces that might be located so that they can be
+	 * connected with the network interface to a visitor, one at a time. 
+	 * This implementation visits the interfaces returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers should 
+	 * override this to visit the interfaces without collecting them first.
+	 * The visitor must not change the locations of the interfaces.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor that is given the interfaces
+	 */
+	public void visitNearInterfaces(NetworkInterface ni, 
+			NearInterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Takes in-range snapshots (see 
+	 * {@link NetworkInterface#setInRangeSnapshot(NetworkInterface[], int)})
+	 * of all the interfaces of this optimizer based on the current locations.
+	 * This implementation does nothing; optimizers that can find the 
+	 * interfaces within range efficiently should override this.
+	 * @param pool Pool of worker threads that can be used for the work
+	 */
+	public void takeInRangeSnapshots(ForkJoinPool pool) {
+		/* no snapshots -> interfaces compute the ranges themselves */
+	}
+
+	/**
+	 * Returns true if this optimizer keeps track of the connections between
+	 * its interfaces (see {@link #isLinked(NetworkInterface, 
+	 * NetworkInterface)}). This implementation returns false.
+	 * @return True if the connections are tracked
+	 */
+	public boolean tracksLinks() {
+		return false;
+	}
+
+	/**
+	 * Returns true if two interfaces of this optimizer are connected. This
+	 * implementation goes through the connections of the first interface; 
+	 * optimizers that track the links (see {@link #tracksLinks()}) should
+	 * override this to look up the link directly.
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 * @return True if the interfaces are connected
+	 */
+	public boolean isLinked(NetworkInterface ni1, NetworkInterface ni2) {
+		List<Connection> connections = ni1.getConnections();
+		for (int i = 0, n = connections.size(); i < n; i++) {
+			if (connections.get(i).getOtherInterface(ni1) == ni2) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Informs the optimizer that two of its interfaces were connected. 
+	 * This implementation does nothing.
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 */
+	public void linkUp(NetworkInterface ni1, NetworkInterface ni2) {
+		/* links are not tracked */
+	}
+
+	/**
+	 * Informs the optimizer that two of its interfaces were disconnected.
+	 * This implementation does nothing.
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 */
+	public void linkDown(NetworkInterface ni1, NetworkInterface ni2) {
+		/* links are not tracked */
+	}
+
+	/**
+	 * Returns true if the optimizer currently knows which of its interfaces 
+	 * are within range of each other (see {@link #mayHaveLostConnections(
+	 * NetworkInterface)}). This implementation returns false.
+	 * @return True if the contacts have been detected by the optimizer
+	 */
+	public boolean detectsContacts() {
+		return false;
+	}
+
+	/**
+	 * Returns true if some of the connections of an interface may have gone
+	 * out of range, i.e., if the connections need to be checked. Can return
+	 * false only if {@link #detectsContacts()} returns true. This 
+	 * implementation returns true.
+	 * @param ni The interface
+	 * @return True if the connections of the interface need to be checked
+	 */
+	public boolean mayHaveLostConnections(NetworkInterface ni) {
+		return true;
+	}
+
+	/**
+	 * Clears the in-range snapshots of all the interfaces of this optimizer
+	 */
+	public void clearInRangeSnapshots() {
+		for (NetworkInterface ni : getAllInterfaces()) {
+			ni.clearInRangeSnapshot();
+		}
+	}
 }
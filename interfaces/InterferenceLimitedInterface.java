@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
@@ -21,6 +19,12 @@ import core.VBRConnection;
 public class InterferenceLimitedInterface extends NetworkInterface {
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
+	/** tries to connect to the near interfaces it is given */
+	private final NearInterfaceVisitor connector = new NearInterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
@@ -80,25 +84,24 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 	public void update() {
 		// First break the old ones
 		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			} else {
-				i++;
+		if (optimizer.mayHaveLostConnections(this)) {
+			for (int i=0; i<this.connections.size(); ) {
+				Connection con = this.connections.get(i);
+				NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+				// all connections should be up at this stage
+				assert con.isUp() : "Connection " + con + " was down!";
+
+				if (!isWithinRange(anotherInterface)) {
+					disconnect(con,anotherInterface);
+					removeConnection(i);
+				} else {
+					i++;
+				}
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		optimizer.visitNearInterfaces(this, connector);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import core.NetworkInterface;
+
+/**
+ * Interface for classes that want to go through the interfaces near some
+ * interface without collecting them first (see
+ * {@link ConnectivityOptimizer#visitNearInterfaces(NetworkInterface,
+ * NearInterfaceVisitor)}).
+ */
+public interface NearInterfaceVisitor {
+
+	/**
+	 * Method is called for every interface that might be located so that
+	 * it can be connected with the interface whose neighborhood is visited.
+	 * The visited interface itself may also be given to this method.
+	 * @param ni The near interface
+	 */
+	public void visit(NetworkInterface ni);
+}
@@ -4,19 +4,25 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimClock;
 
 /**
  * A simple Network Interface that provides a constant bit-rate service, where
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	/** tries to connect to the near interfaces it is given */
+	private final NearInterfaceVisitor connector = new NearInterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+
 	/**
 	 * Reads the interface settings from the Settings file
 	 *  
@@ -68,27 +74,39 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 	public void update() {
 		// First break the old ones
 		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
+		if (optimizer.mayHaveLostConnections(this)) {
+			for (int i=0; i<this.connections.size(); ) {
+				Connection con = this.connections.get(i);
+				NetworkInterface anotherInterface = con.getOtherInterface(this);
 
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
+				// all connections should be up at this stage
+				assert con.isUp() : "Connection " + con + " was down!";
 
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			}
-			else {
-				i++;
+				if (!isWithinRange(anotherInterface)) {
+					disconnect(con,anotherInterface);
+					removeConnection(i);
+				}
+				else {
+					i++;
+				}
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		optimizer.visitNearInterfaces(this, connector);
+	}
+
+	/**
+	 * Returns Double.MAX_VALUE if the interface scans at every update: when
+	 * no host moves, the connections out of range have been torn down and
+	 * the interfaces within range connected already, so the updates do
+	 * nothing. Otherwise returns the current time.
+	 */
+	@Override
+	public double getIdleUntil() {
+		if (isAlwaysScanning()) {
+			return Double.MAX_VALUE;
 		}
+		return SimClock.getTime();
 	}
 
 	/** 
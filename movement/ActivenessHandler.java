@@ -84,7 +84,9 @@ public class ActivenessHandler {
 		
 		double time = SimClock.getTime();
 		
-		if (this.curRange.isOut(time)) { // time for the next time range
+		/* skip all the ranges that have ended so that the result depends
+		 * only on the time and not on how many times this was called */
+		while (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
 			if (curRange == null) {
 				return false; // out of active times
@@ -94,6 +96,27 @@ public class ActivenessHandler {
 		return curRange.isInRange(time);
 	}
 
+	/**
+	 * Returns the time when the activeness may change the next time
+	 * @return The time when the activeness may change or Double.MAX_VALUE
+	 * if it never changes anymore
+	 */
+	public double getNextChangeTime() {
+		if (this.activeTimes == null) {
+			return Double.MAX_VALUE; // always active
+		}
+
+		isActive(); // skips the ranges that have ended
+
+		if (curRange == null) {
+			return Double.MAX_VALUE; // never active again
+		}
+		if (SimClock.getTime() < curRange.start) {
+			return curRange.start;
+		}
+		return curRange.end;
+	}
+
 	/**
 	 * Class for handling time ranges
 	 */
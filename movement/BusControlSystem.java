@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls busses and passengers that can use the bus. 
@@ -22,8 +23,6 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 	
-	private static HashMap<Integer, BusControlSystem> systems;
-	
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
 	private List<Coord> busStops;
@@ -46,7 +45,7 @@ public class BusControlSystem {
 	}
 	
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		SimContext.getCurrent().setState(BusControlSystem.class, new State());
 	}
 	
 	/**
@@ -84,6 +83,8 @@ public class BusControlSystem {
 	 */
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		HashMap<Integer, BusControlSystem> systems = ((State)SimContext.
+				getCurrent().getState(BusControlSystem.class)).systems;
 		
 		if (systems.containsKey(id)) {
 			return systems.get(id);
@@ -141,4 +142,12 @@ public class BusControlSystem {
 		this.busStops = busStops;
 	}
 	
+	/**
+	 * Per simulation run state: the bus control systems by their IDs
+	 */
+	private static class State {
+		private HashMap<Integer, BusControlSystem> systems = 
+			new HashMap<Integer, BusControlSystem>();
+	}
+	
 }
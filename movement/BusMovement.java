@@ -10,6 +10,7 @@ import java.util.List;
 import movement.map.MapNode;
 import core.Coord;
 import core.Settings;
+import core.SimContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -21,7 +22,6 @@ public class BusMovement extends MapRouteMovement {
 	
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
 	private boolean startMode;
 	private List<Coord> stops;
 	
@@ -34,7 +34,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,7 +52,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
@@ -86,4 +86,27 @@ public class BusMovement extends MapRouteMovement {
 		return id;
 	}
 	
+	/**
+	 * Resets the ID counter of the busses
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(BusMovement.class, new State());
+	}
+	
+	/**
+	 * Returns the next free bus ID of the current simulation run
+	 * @return the next free ID
+	 */
+	private static int getNextID() {
+		return ((State)SimContext.getCurrent().getState(BusMovement.class)).
+			nextID++;
+	}
+	
+	/**
+	 * Per simulation run state of the busses
+	 */
+	private static class State {
+		private int nextID = 0;
+	}
+	
 }
@@ -12,6 +12,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimContext;
 
 /**
  * 
@@ -52,8 +53,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	
 	private boolean takeBus;
 	
-	private static int nextID = 0;
-	
 	/**
 	 * Creates a BusTravellerModel 
 	 * @param settings
@@ -62,7 +61,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -89,7 +88,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -351,7 +350,24 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 	
 	public static void reset() {
-		nextID = 0;
+		SimContext.getCurrent().setState(BusTravellerMovement.class, 
+				new State());
+	}
+	
+	/**
+	 * Returns the next free traveller ID of the current simulation run
+	 * @return the next free ID
+	 */
+	private static int getNextID() {
+		return ((State)SimContext.getCurrent().getState(
+				BusTravellerMovement.class)).nextID++;
+	}
+	
+	/**
+	 * Per simulation run state of the travellers
+	 */
+	private static class State {
+		private int nextID = 0;
 	}
 	
 }
@@ -10,6 +10,7 @@ import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,9 +26,6 @@ public class EveningActivityControlSystem {
 	
 	private Random rng;
 	
-	private static HashMap<Integer, EveningActivityControlSystem> 
-		controlSystems;
-	
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
 				getCanonicalName());
@@ -44,7 +42,8 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		SimContext.getCurrent().setState(EveningActivityControlSystem.class,
+				new State());
 	}
 	
 	/**
@@ -127,6 +126,9 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		HashMap<Integer, EveningActivityControlSystem> controlSystems = 
+			((State)SimContext.getCurrent().getState(
+					EveningActivityControlSystem.class)).controlSystems;
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
@@ -137,4 +139,12 @@ public class EveningActivityControlSystem {
 		}
 	}
 	
+	/**
+	 * Per simulation run state: the control systems by their IDs
+	 */
+	private static class State {
+		private HashMap<Integer, EveningActivityControlSystem> controlSystems =
+			new HashMap<Integer, EveningActivityControlSystem>();
+	}
+	
 }
@@ -15,6 +15,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other 
@@ -60,8 +61,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int id;
 	
-	private static int nextID = 0;
-	
 	private int minGroupSize;
 	private int maxGroupSize;
 	
@@ -120,7 +119,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 		
-		this.id = nextID++;
+		this.id = getNextID();
 		
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 		
@@ -144,7 +143,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = getNextID();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -277,7 +276,8 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		SimContext.getCurrent().setState(EveningActivityMovement.class, 
+				new State());
 	}
 
 	public int getMinGroupSize() {
@@ -296,4 +296,20 @@ public class EveningActivityMovement extends MapBasedMovement
 		this.maxGroupSize = maxGroupSize;
 	}
 	
+	/**
+	 * Returns the next free node ID of the current simulation run
+	 * @return the next free ID
+	 */
+	private static int getNextID() {
+		return ((State)SimContext.getCurrent().getState(
+				EveningActivityMovement.class)).nextID++;
+	}
+	
+	/**
+	 * Per simulation run state of the nodes
+	 */
+	private static class State {
+		private int nextID = 0;
+	}
+	
 }
@@ -200,6 +200,11 @@ public class ExternalMapBasedMovement extends MapBasedMovement implements Switch
 		return isActive;
 	}
 
+	@Override
+	public double getNextActivenessChange() {
+		return Double.MAX_VALUE; // set when the node is created
+	}
+
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
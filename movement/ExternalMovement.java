@@ -16,6 +16,7 @@ import core.Coord;
 import core.DTNSim;
 import core.Settings;
 import core.SimClock;
+import core.SimContext;
 import core.Tuple;
 
 /**
@@ -31,21 +32,6 @@ public class ExternalMovement extends MovementModel {
 	
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-	
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 		
@@ -63,6 +49,8 @@ public class ExternalMovement extends MovementModel {
 	
 	/** is this node active */
 	private boolean isActive;
+	/** state shared by the nodes of the simulation run */
+	private State state;
 	
 	static {
 		DTNSim.registerForReset(ExternalMovement.class.getCanonicalName());
@@ -75,24 +63,26 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public ExternalMovement(Settings settings) {
 		super(settings);
+		this.state = (State)SimContext.getCurrent().getState(
+				ExternalMovement.class);
 		
-		if (idMapping == null) {
+		if (state.idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			state.idMapping = new HashMap<String, ExternalMovement>();
+			state.inputFileName = s.getSetting(MOVEMENT_FILE_S);
+			state.reader = new ExternalMovementReader(state.inputFileName);
 			
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
+			state.initLocations = state.reader.readNextMovements();
+			state.initTime = state.reader.getLastTimeStamp();
+			state.samplingInterval = -1;
+			state.lastPreloadTime = -1;
 			
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				state.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (state.nrofPreload <= 0) {
+					state.nrofPreload = 1;
 				}
 			}
 		}
@@ -105,18 +95,19 @@ public class ExternalMovement extends MovementModel {
 	 */
 	private ExternalMovement(MovementModel mm) {
 		super(mm);
+		this.state = ((ExternalMovement)mm).state;
 		
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 		
-		if (initLocations.size() > 0) { // we have location data left
+		if (state.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0); 
+			Tuple<String, Coord> initLoc = state.initLocations.remove(0); 
 			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = state.initTime;
 			
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			state.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		}
 		else {
@@ -129,17 +120,19 @@ public class ExternalMovement extends MovementModel {
 	/**
 	 * Checks if more paths should be preloaded and preloads them if
 	 * needed.
+	 * @param state The state of the simulation run
 	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
+	private static void checkPathNeed(State state) {
+		if (state.samplingInterval == -1) { // first preload
+			state.lastPreloadTime = readMorePaths(state);
 		}
 		
-		if (lastPreloadTime != Double.NaN && SimClock.getTime() >= 
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload && 
-					lastPreloadTime != Double.NaN; i++) {
-				lastPreloadTime = readMorePaths();
+		if (state.lastPreloadTime != Double.NaN && SimClock.getTime() >= 
+				state.lastPreloadTime - (state.samplingInterval * 
+						MIN_AHEAD_INTERVALS) ) {
+			for (int i=0; i < state.nrofPreload && 
+					state.lastPreloadTime != Double.NaN; i++) {
+				state.lastPreloadTime = readMorePaths(state);
 			}
 		}
 	}
@@ -154,6 +147,11 @@ public class ExternalMovement extends MovementModel {
 		return isActive;
 	}
 
+	@Override
+	public double getNextActivenessChange() {
+		return Double.MAX_VALUE; // set when the node is created
+	}
+
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
@@ -162,7 +160,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert state.samplingInterval > 0 : "Non-positive sampling interval!";
 		
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
@@ -180,7 +178,8 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();			
 		}
 			
-		double speed = loc.distance(this.latestLocation) / samplingInterval;		
+		double speed = loc.distance(this.latestLocation) / 
+			state.samplingInterval;
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -204,7 +203,7 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 		
-		checkPathNeed(); // check if we should preload more paths		
+		checkPathNeed(state); // check if we should preload more paths		
 		
 		if (SimClock.getTime() < this.nextPathAvailable()) {
 			return null;
@@ -223,12 +222,12 @@ public class ExternalMovement extends MovementModel {
 	
 	@Override
 	public int getMaxX() {
-		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
+		return (int)(state.reader.getMaxX() - state.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
+		return (int)(state.reader.getMaxY() - state.reader.getMinY()) + 1;
 	}
 
 	
@@ -242,16 +241,16 @@ public class ExternalMovement extends MovementModel {
 	 * @return The time stamp of the reading or Double.NaN if no movements
 	 * were read.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private static double readMorePaths(State state) {
+		List<Tuple<String, Coord>> list = state.reader.readNextMovements();
+		double time = state.reader.getLastTimeStamp();
 		
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
+		if (state.samplingInterval == -1) {
+			state.samplingInterval = time - state.initTime;
 		}
 		
 		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+			ExternalMovement em = state.idMapping.get(t.getKey());
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
 				em.addLocation(t.getValue(), time);
@@ -270,7 +269,29 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
-		idMapping = null;
+		SimContext.getCurrent().setState(ExternalMovement.class, 
+				new State());
+	}
+	
+	/**
+	 * State shared by the external movement models of a simulation run
+	 */
+	private static class State {
+		private ExternalMovementReader reader;
+		private String inputFileName;
+		
+		/** mapping of external id to movement model */
+		private Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
 	}
 
 }
@@ -12,6 +12,7 @@ import core.DTNSim;
 import core.ModuleCommunicationBus;
 import core.Settings;
 import core.SimClock;
+import core.SimContext;
 import core.SimError;
 
 /**
@@ -43,8 +44,8 @@ public abstract class MovementModel {
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
 	
-	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	/** common rng for all movement models in the simulation (run) */
+	protected final Random rng = getState().rng; 
 	
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -228,6 +229,16 @@ public abstract class MovementModel {
 	public boolean isActive() {
 		return ah.isActive();
 	}
+
+	/**
+	 * Returns the time when the activeness of this node may change the next
+	 * time (see {@link #isActive()})
+	 * @return The time or Double.MAX_VALUE if the activeness never changes
+	 * anymore
+	 */
+	public double getNextActivenessChange() {
+		return ah.getNextChangeTime();
+	}
 		
 	/**
 	 * Returns a sim time when the next path is available. This implementation
@@ -273,13 +284,31 @@ public abstract class MovementModel {
 	 */
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
+		State state = new State();
 		if (s.contains(RNG_SEED)) {
 			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			state.rng = new Random(seed);
 		}
 		else {
-			rng = new Random(0);
+			state.rng = new Random(0);
 		}
+		SimContext.getCurrent().setState(MovementModel.class, state);
+	}
+	
+	/**
+	 * Returns the state of the movement models in the current simulation
+	 * context
+	 * @return The state
+	 */
+	private static State getState() {
+		return (State)SimContext.getCurrent().getState(MovementModel.class);
+	}
+	
+	/**
+	 * Per simulation run state of the movement models
+	 */
+	private static class State {
+		private Random rng;
 	}
 	
 	/**
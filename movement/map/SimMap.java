@@ -51,12 +51,13 @@ public class SimMap implements Serializable {
 	 * @param c The coordinate
 	 * @return The map node in that location or null if it doesn't exist
 	 */
-	public MapNode getNodeByCoord(Coord c) {
+	public synchronized MapNode getNodeByCoord(Coord c) {
 		if (needsRehash) { // some coordinates have changed after creating hash
 			nodesMap.clear();
 			for (MapNode node : getNodes()) {
 				nodesMap.put(node.getLocation(), node); // re-hash
 			}
+			needsRehash = false;
 		}
 	
 		return nodesMap.get(c);
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import input.ColumnarEventsReader;
+import input.ConnectionEvent;
+import input.ExternalEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNHost;
+import core.InterfaceConnectionListener;
+import core.NetworkInterface;
+import core.SimError;
+
+/**
+ * Records the connections between the hosts' interfaces to a columnar
+ * external events file (see {@link ColumnarEventsReader}) that can be
+ * replayed with the {@link core.SimScenario#CONNECTION_TRACE_S} setting.
+ * The events tell the interface type of the connection, so hosts with 
+ * multiple interfaces are replayed correctly. The trace file is named like
+ * the report but with the {@value ColumnarEventsReader#COLUMNAR_EXT}
+ * extension and it is written in blocks as the simulation runs. The report
+ * itself tells the number of recorded events. All connections are 
+ * recorded, also during the warm up period, so that the replay has the
+ * same connections as the recorded run.
+ */
+public class ConnectivityTraceReport extends Report 
+	implements InterfaceConnectionListener {
+	private ColumnarEventsReader.Writer trace;
+	private String traceFileName;
+	/** the events not written to the trace file yet */
+	private List<ExternalEvent> events;
+
+	/**
+	 * Constructor.
+	 */
+	public ConnectivityTraceReport() {
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		String name = getOutFileName();
+		if (name.endsWith(OUT_SUFFIX)) {
+			name = name.substring(0, name.length() - OUT_SUFFIX.length());
+		}
+		this.traceFileName = name + ColumnarEventsReader.COLUMNAR_EXT;
+		try {
+			this.trace = new ColumnarEventsReader.Writer(traceFileName);
+		} catch (IOException e) {
+			throw new SimError("Couldn't create trace file '" + 
+					traceFileName + "'", e);
+		}
+		this.events = new ArrayList<ExternalEvent>();
+	}
+
+	public void hostsConnected(DTNHost h1, DTNHost h2) {
+		// recorded in interfacesConnected
+	}
+
+	public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+		// recorded in interfacesDisconnected
+	}
+
+	public void interfacesConnected(NetworkInterface ni1,
+			NetworkInterface ni2) {
+		addEvent(ni1, ni2, true);
+	}
+
+	public void interfacesDisconnected(NetworkInterface ni1,
+			NetworkInterface ni2) {
+		addEvent(ni1, ni2, false);
+	}
+
+	/**
+	 * Adds a connection event and writes the events to the trace file when
+	 * there are enough of them for a block
+	 * @param ni1 The interface that initiated the (dis)connection
+	 * @param ni2 The interface at the other end
+	 * @param up True for a connection up event, false for down
+	 */
+	private void addEvent(NetworkInterface ni1, NetworkInterface ni2,
+			boolean up) {
+		this.events.add(new ConnectionEvent(ni1.getHost().getAddress(),
+				ni2.getHost().getAddress(), ni1.getInterfaceType(), up,
+				getSimTime()));
+		if (this.events.size() >= ColumnarEventsReader.BLOCK_SIZE) {
+			writeEvents();
+		}
+	}
+
+	/**
+	 * Writes the events to the trace file
+	 */
+	private void writeEvents() {
+		try {
+			this.trace.write(this.events);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write trace file '" + 
+					traceFileName + "'", e);
+		}
+		this.events.clear();
+	}
+
+	@Override
+	public void done() {
+		writeEvents();
+		try {
+			this.trace.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write trace file '" + 
+					traceFileName + "'", e);
+		}
+		write("Recorded " + this.trace.getNrofEvents() + 
+				" connection events to " + this.traceFileName);
+		super.done();
+	}
+}
@@ -263,6 +263,15 @@ public abstract class Report {
 	protected String getScenarioName() {
 		return this.scenarioName;
 	}
+
+	/**
+	 * Returns the name (and path) of the report's output file (without the
+	 * suffixes of intervalled reports)
+	 * @return the name of the report's output file
+	 */
+	protected String getOutFileName() {
+		return this.outFileName;
+	}
 	
 	/**
 	 * Returns the current simulation time from the SimClock
@@ -5,14 +5,16 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageExpiryQueue;
 import core.MessageListener;
 import core.Settings;
 import core.SimClock;
@@ -40,6 +42,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** messages that expired while they were being sent (if the messages
+	 * are dropped at the exact expiry times) */
+	private List<Message> expiredWhileSending;
 	
 
 	/**
@@ -72,6 +77,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.expiredWhileSending = new ArrayList<Message>(1);
 	}
 	
 	/**
@@ -88,15 +94,12 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		DTNHost other = con.getOtherNode(getHost());
-		/* do a copy to avoid concurrent modification exceptions 
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp = 
-			new ArrayList<Message>(this.getMessageCollection());
+		/* the list is a copy, so there are no concurrent modification 
+		 * exceptions (startTransfer may remove messages) */
+		List<Message> temp = getMessagesTo(Collections.singletonList(other));
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -209,7 +212,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ){
+		if ( hasMessage(m) || isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
@@ -259,11 +262,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * Drops messages whose TTL is less than zero.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		/* the TTL is rounded down to minutes, so it is zero already when less
+		 * than a minute is left (the extra second covers rounding errors) */
+		double time = SimClock.getTime() + 60 + 1;
+		for (Message m : getMessagesExpiringBefore(time)) {
+			if (m.getTtl() <= 0) {
+				deleteMessage(m.getId(), true);
 			}
 		}
 	}
@@ -281,33 +285,26 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer 
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the message that should be dropped first from the message
+	 * buffer (that is not being sent if excludeMsgBeingSent is true). With 
+	 * the default {@link #DROP_POLICY_S drop policy} this is the oldest 
+	 * (by receive time) message.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
-	 * being sent from the oldest message check (i.e. if oldest message is
-	 * being sent, the second oldest message is returned)
-	 * @return The oldest message or null if no message could be returned
+	 * being sent from the check (i.e. if the first message to drop is
+	 * being sent, the second one is returned)
+	 * @return The message or null if no message could be returned
 	 * (no messages in buffer or all messages in buffer are being sent and
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
+		for (Message m : getMessagesInDropOrder()) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 		
-		return oldest;
+		return null;
 	}
 	
 	/**
@@ -321,14 +318,28 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0); 
 		}
 
+		/* the connections to each connected host, in the connection order */
+		List<Connection> connections = getConnections();
+		List<DTNHost> others = new ArrayList<DTNHost>();
+		Map<DTNHost, List<Connection>> consTo = 
+			new HashMap<DTNHost, List<Connection>>();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			DTNHost other = con.getOtherNode(getHost());
+			List<Connection> cons = consTo.get(other);
+			if (cons == null) {
+				cons = new ArrayList<Connection>(1);
+				consTo.put(other, cons);
+				others.add(other);
+			}
+			cons.add(con);
+		}
+
 		List<Tuple<Message, Connection>> forTuples = 
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+		for (Message m : getMessagesTo(others)) {
+			for (Connection con : consTo.get(m.getTo())) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 		
@@ -410,7 +421,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Tries to send all messages that this router is carrying to all
 	 * connections this node has. Messages are ordered using the 
-	 * {@link MessageRouter#sortByQueueMode(List)}. See 
+	 * {@link MessageRouter#getMessagesInQueueOrder()}. See 
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -421,11 +432,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages = 
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
-
-		return tryMessagesToConnections(messages, connections);
+		return tryMessagesToConnections(getMessagesInQueueOrder(),
+				connections);
 	}
 		
 	/**
@@ -452,7 +460,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		// didn't start transfer to any node -> ask messages from connected
-		for (Connection con : connections) {
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
 			if (con.getOtherNode(getHost()).requestDeliverableMessages(con)) {
 				return con;
 			}
@@ -518,11 +527,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @return True if the message is being sent false if not
 	 */
 	public boolean isSending(String msgId) {
+		int idHandle = Message.getIdHandle(msgId);
 		for (Connection con : this.sendingConnections) {
 			if (con.getMessage() == null) {
 				continue; // transmission is finalized
 			}
-			if (con.getMessage().getId().equals(msgId)) {
+			if (con.getMessage().getIdHandle() == idHandle) {
 				return true;
 			}
 		}
@@ -532,7 +542,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Checks out all sending connections to finalize the ready ones 
 	 * and abort those whose connection went down. Also drops messages
-	 * whose TTL <= 0 (checking every one simulated minute).
+	 * whose TTL <= 0 (checking every one simulated minute), unless they are
+	 * dropped at the exact expiry times (see {@link #messageExpired(Message)}).
 	 * @see #addToSendingConnections(Connection)
 	 */
 	@Override
@@ -546,8 +557,10 @@ public abstract class ActiveRouter extends MessageRouter {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
 			
-			/* finalize ready transfers */
-			if (con.isMessageTransferred()) {
+			/* finalize ready transfers (the ones whose completion is 
+			 * scheduled are finalized by transferCompleted) */
+			if (con.isCompletionScheduled() ? con.getMessage() == null :
+					con.isMessageTransferred()) {
 				if (con.getMessage() != null) {
 					transferDone(con);
 					con.finalizeTransfer();
@@ -575,14 +588,104 @@ public abstract class ActiveRouter extends MessageRouter {
 				i++;
 			}
 		}
+		dropMessagesExpiredWhileSending();
 		
-		/* time to do a TTL check and drop old messages? Only if not sending */
+		/* time to do a TTL check and drop old messages? Only if not sending
+		 * and the messages are not dropped at the exact expiry times */
 		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
-				sendingConnections.size() == 0) {
+				sendingConnections.size() == 0 &&
+				MessageExpiryQueue.getQueue() == null) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
 		}
 	}
+
+	/**
+	 * Finalizes the transfer of a sending connection at the exact time it
+	 * is done
+	 */
+	@Override
+	public void transferCompleted(Connection con) {
+		int i = this.sendingConnections.indexOf(con);
+		if (i < 0 || con.getMessage() == null) {
+			return; // not sending over the connection
+		}
+		transferDone(con);
+		con.finalizeTransfer();
+		if (this.getFreeBufferSize() < 0) {
+			this.makeRoomForMessage(0);
+		}
+		this.sendingConnections.remove(i);
+		dropMessagesExpiredWhileSending();
+	}
+
+	/**
+	 * Adds the message to the buffer and, if the messages are dropped at 
+	 * the exact expiry times, schedules its expiry
+	 */
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		MessageExpiryQueue expiries = MessageExpiryQueue.getQueue();
+		if (expiries != null && m.getExpiryTime() < Double.POSITIVE_INFINITY) {
+			expiries.add(this, m);
+		}
+	}
+
+	/**
+	 * Drops the message at the exact time its TTL reaches zero if it is 
+	 * still in the buffer. A message that is being sent is dropped right 
+	 * after the transfer is finalized or aborted.
+	 */
+	@Override
+	public void messageExpired(Message m) {
+		String id = m.getId();
+		if (getMessage(id) != m) {
+			return; // already removed (or replaced by another copy)
+		}
+		if (isSending(id)) {
+			this.expiredWhileSending.add(m);
+		}
+		else {
+			deleteMessage(id, true);
+		}
+	}
+
+	/**
+	 * Drops the messages that expired while they were being sent and are
+	 * not being sent anymore
+	 */
+	private void dropMessagesExpiredWhileSending() {
+		if (this.expiredWhileSending.isEmpty()) {
+			return;
+		}
+		List<Message> expired = this.expiredWhileSending;
+		this.expiredWhileSending = new ArrayList<Message>(1);
+		for (Message m : expired) {
+			messageExpired(m);
+		}
+	}
+
+	/**
+	 * Returns the time of the next TTL check if the router has no 
+	 * connections and no applications (so the updates between the TTL checks
+	 * do nothing), or the current time if it has some. If the messages are
+	 * dropped at the exact expiry times, there are no TTL checks and the
+	 * router without connections and applications is idle indefinitely.
+	 * Subclasses whose updates do something else without connections must
+	 * override this.
+	 */
+	@Override
+	public double getIdleUntil() {
+		if (hasApplications() || !this.sendingConnections.isEmpty() ||
+				!getConnections().isEmpty()) {
+			return SimClock.getTime();
+		}
+		if (MessageExpiryQueue.getQueue() != null) {
+			return Double.MAX_VALUE;
+		}
+		return lastTtlCheck + TTL_CHECK_INTERVAL;
+	}
 	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
@@ -594,7 +697,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Method is called just before a transfer is finalized 
-	 * at {@link #update()}.
+	 * at {@link #update()} or {@link #transferCompleted(Connection)}.
 	 * Subclasses that are interested of the event may want to override this.
 	 * @param con The connection whose transfer was finalized
 	 */
@@ -1,278 +1,438 @@
 package routing;
-import java.util.*;
 
-import core.*;
+import core.DTNHost;
+import core.Message;
 
+/**
+ * Contact table of a {@link SimbetRouter}: the ego network of a host (the
+ * host, the hosts it has met and the contacts between those hosts) and the
+ * hosts known only through the met hosts (indirect nodes).
+ * <P>
+ * The adjacency of the ego network is kept in rows of bits indexed by host
+ * addresses and the ego betweenness is updated every time an edge is added
+ * or removed, so neither the betweenness nor the similarity needs a pass
+ * over the whole table.
+ * </P>
+ */
 public class ContactTable {
-	
-	private Map< String, Map< String, Integer > > Table;
-	private Map< String, Map< String, Integer > > IndirectTable;
-	private String host;
-	
-	public ContactTable(  )
-	{	
-		
+	/** number of bits in a word of a row */
+	private static final int WORD_BITS = 64;
+
+	/** address of the host whose ego network this is */
+	private int hostAddr;
+	/** adjacency rows of the ego network by address (null for non-members) */
+	private long[][] rows;
+	/** which indirect nodes each member has met, by address */
+	private long[][] indirectRows;
+	/** the known indirect nodes */
+	private long[] indirect;
+	/** contact tables of the members, by address */
+	private ContactTable[] tables;
+	/** number of words in a row */
+	private int words;
+	/** number of hosts in the ego network (including the host itself) */
+	private int size;
+	/** sum of 1/(number of common neighbors) over non-adjacent pairs */
+	private double betweenness;
+
+	public ContactTable() {
 	}
-	
-	public void initialContactTable( String host )
-	{	
-		this.host = host;
-		Table = new  LinkedHashMap< String, Map< String, Integer > >();
-		Table.put( host, new LinkedHashMap<String, Integer >() );
-		Table.get( host ).put( host, new Integer( 0 ) );
-		//System.out.println(Table.get(host).get(host));
-		IndirectTable = new  LinkedHashMap< String, Map< String, Integer > >();
-		IndirectTable.put( host, new LinkedHashMap<String, Integer >() );
-		
+
+	/**
+	 * Initializes the table with only the host itself in the ego network
+	 * @param host The host whose table this is
+	 */
+	public void initialContactTable(DTNHost host) {
+		this.hostAddr = host.getAddress();
+		this.words = hostAddr / WORD_BITS + 1;
+		this.rows = new long[words * WORD_BITS][];
+		this.indirectRows = new long[words * WORD_BITS][];
+		this.tables = new ContactTable[words * WORD_BITS];
+		this.indirect = new long[words];
+		this.size = 0;
+		this.betweenness = 0;
+		addMember(hostAddr, this);
 	}
-	
-	public void AddNode( DTNHost b )
-	{//PrintTable();
-		if ( Table.containsKey( b.toString() ) ){
-			return ;
+
+	/**
+	 * Adds a met host to the ego network. The host is connected to the
+	 * hosts of the ego network it has in its own table and the hosts only
+	 * it knows become indirect nodes.
+	 * @param b The met host
+	 * @param other Contact table of the met host
+	 */
+	public void AddNode(DTNHost b, ContactTable other) {
+		int addr = b.getAddress();
+		if (isMember(addr)) {
+			return;
 		}
-		
-		if ( Table.get( host ).containsKey( b.toString() ) ){		
-			return ;			
+		ensureCapacity(addr);
+		if (!other.IsNull()) {
+			long[] otherRow = other.rows[other.hostAddr];
+			for (int w = otherRow.length - 1; w >= 0; w--) {
+				if (otherRow[w] != 0) { // other's highest member
+					ensureCapacity(w * WORD_BITS + WORD_BITS - 1 -
+							Long.numberOfLeadingZeros(otherRow[w]));
+					break;
+				}
+			}
 		}
-		//PrintTable1();
-		Table.put( b.toString(), new LinkedHashMap<String, Integer >() ) ;
-		//System.out.println(host + " " + b.toString());
-		
-		for ( String key : Table.keySet() ) {
-			
-			if ( key.equals( host ) )
-			{	//System.out.println(key+host);	
-				
-				Table.get( key ).put( b.toString(), new Integer( 1 ) ) ;
-				Table.get( b.toString() ).put( key, new Integer( 1 ) ) ;//PrintTable1();
-					
+
+		addMember(addr, other);
+		addEdge(hostAddr, addr);
+		long[] egoRow = rows[hostAddr];
+		for (int w = 0; w < words; w++) {
+			long bits = egoRow[w];
+			while (bits != 0) {
+				int k = w * WORD_BITS + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (k != addr && other.isMember(k)) {
+					addEdge(k, addr);
+				}
 			}
-			else if ( key.equals( b.toString() ) )
-			{
-				Table.get( key ).put( b.toString(), new Integer( 0 ) ) ;
+		}
+
+		/* b is no longer an indirect node; the hosts only b knows are */
+		clear(indirect, addr);
+		for (long[] row : indirectRows) {
+			if (row != null) {
+				clear(row, addr);
 			}
-			else if ( ( ( SimbetRouter )b.getRouter() ).TablecontactedWith( key ) ) 
-			{
-			    Table.get( key ).put( b.toString(), new Integer( 1 ) ) ;
-			    Table.get( b.toString() ).put( key, new Integer( 1 ) ) ;
+		}
+		long[] newIndirect = new long[words];
+		for (int w = 0; w < words; w++) {
+			newIndirect[w] = memberWord(other, w) & ~egoRow[w];
+		}
+		clear(newIndirect, hostAddr);
+		for (int w = 0; w < words; w++) {
+			indirect[w] |= newIndirect[w];
+		}
+		for (int c = 0; c < rows.length; c++) {
+			if (rows[c] == null || c == hostAddr) {
+				continue;
 			}
-			else if( !( ( SimbetRouter )b.getRouter() ).TablecontactedWith( key ) ) 
-			{
-				Table.get( key ).put( b.toString(), new Integer( 0 ) ) ;
-				Table.get( b.toString() ).put( key, new Integer( 0 ) ) ;
+			long[] row = indirectRows[c];
+			for (int w = 0; w < words; w++) {
+				if (c == addr) {
+					row[w] = indirect[w] & memberWord(other, w);
+				}
+				else {
+					row[w] = (row[w] & ~newIndirect[w]) |
+						(newIndirect[w] & memberWord(tables[c], w));
+				}
 			}
 		}
-		
-		//if( Table.get(host).containsKey(b.toString()) )
-		//{
-			for ( String key : IndirectTable.keySet() ) {	
-				IndirectTable.get(key).remove(b.toString());	
+	}
+
+	/**
+	 * Removes a host from the ego network
+	 * @param b The host to remove
+	 */
+	public void DeleteNode(DTNHost b) {
+		int addr = b.getAddress();
+		if (addr == hostAddr || !isMember(addr)) {
+			return;
+		}
+		long[] row = rows[addr];
+		for (int w = 0; w < words; w++) {
+			long bits = row[w];
+			while (bits != 0) {
+				int k = w * WORD_BITS + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				removeEdge(k, addr);
 			}
-			//return;
-		//}			
-		IndirectTable.put( b.toString(), new LinkedHashMap<String, Integer >() ) ;
-		for ( String key : IndirectTable.get(host).keySet() ) {	
-			if( ( ( SimbetRouter )b.getRouter() ).TablecontactedWith( key ) )
-				IndirectTable.get(b.toString()).put(key,  new Integer( 1 ) );
-			else
-				IndirectTable.get(b.toString()).put(key,  new Integer( 0 ) );
 		}
-		
-		
-		//System.out.println(host + " " + b.toString());
-		ContactTable otherContactTable = ((SimbetRouter)b.getRouter()).getContactTable();
-		//otherContactTable.PrintTable();
-		for ( String key : otherContactTable.Table.keySet() ) {
-			if ( !Table.containsKey(key) ) 
-			{			
-				for ( String key1 : IndirectTable.keySet() ) {
-					List<DTNHost> nodes = SimScenario.getInstance().getHosts();
-					//System.out.println(IndirectTable.size());
-					for(DTNHost h : nodes)
-					{
-						//System.out.println( h.toString() + key1);
-						if( h.toString().equals(key1) )
-						{
-							//System.out.println( "yes");
-							if ( ( ( SimbetRouter )h.getRouter() ).TablecontactedWith( key ) )
-							{
-								IndirectTable.get(key1).put(key, new Integer(1));
-							}else
-							{
-								IndirectTable.get(key1).put(key, new Integer(0));
-							}
-							break;
-						}						
-					}	
-				}//key1		
-			}//if
-		}//key
-		//System.out.println(host);
-		//PrintTable();
+		rows[addr] = null;
+		indirectRows[addr] = null;
+		tables[addr] = null;
+		size--;
+	}
+
+	/**
+	 * Returns true if the host is in the ego network
+	 * @param from The host
+	 * @return True if the host is in the ego network
+	 */
+	public boolean Tablecontains(DTNHost from) {
+		return isMember(from.getAddress());
 	}
-	
-	public void DeleteNode( DTNHost b  )
-	{	
-		Table.remove( b.toString() );
-		
-		for ( String key : Table.keySet() ) {	
-			Table.get(key).remove(b.toString());	
+
+	/**
+	 * Returns true if the host is known as an indirect node
+	 * @param from The host
+	 * @return True if the host is an indirect node
+	 */
+	public boolean IndirectTablecontains(DTNHost from) {
+		int addr = from.getAddress();
+		return addr / WORD_BITS < words && get(indirect, addr);
+	}
+
+	/**
+	 * Returns the similarity of the host with the destination of a message
+	 * that is an indirect node: the number of met hosts that had met the
+	 * destination (when the destination became known)
+	 * @param m The message
+	 * @return The similarity
+	 */
+	public int getindirectSim(Message m) {
+		int dest = m.getTo().getAddress();
+		if (dest / WORD_BITS >= words) {
+			return 0;
+		}
+		int sim = 0;
+		for (int c = 0; c < indirectRows.length; c++) {
+			if (c != hostAddr && indirectRows[c] != null &&
+					get(indirectRows[c], dest)) {
+				sim++;
+			}
 		}
+		return sim;
+	}
 
+	/**
+	 * Returns the number of hosts in the ego network
+	 * @return The number of hosts (including the host itself)
+	 */
+	public int getsize() {
+		return size;
 	}
-	
-	public boolean Tablecontains( String from )
-	{	
-		//PrintTable();	
-		return Table.containsKey(from);		
+
+	/**
+	 * Returns the ego betweenness of the host: the sum of 1 / (number of
+	 * shared neighbors) over the non-adjacent pairs of the ego network.
+	 * The value is kept up to date as the ego network changes.
+	 * @return The ego betweenness
+	 */
+	public double computeBetweenness() {
+		return betweenness;
 	}
-	
-	public boolean IndirectTablecontains( String from )
-	{	
-		//PrintTable();	
-		return IndirectTable.containsKey(from);		
+
+	/**
+	 * Returns the similarity of the host with the destination of a message
+	 * in the ego network: the number of neighbors they have in common
+	 * @param m The message
+	 * @return The similarity
+	 */
+	public int computeSimilar(Message m) {
+		int dest = m.getTo().getAddress();
+		if (!isMember(dest)) {
+			return 0;
+		}
+		return common(hostAddr, dest);
 	}
-	
-	public int getindirectSim( Message m )
-	{	
-		//PrintTable();	
-			int sumsimilar = 0;
-			if (IndirectTable.get(host).containsKey(m.toString())){
-				for (String key : IndirectTable.keySet())
-				{
-					sumsimilar += IndirectTable.get(key).get(m.toString());
-					
+
+	/**
+	 * Prints the adjacency of the ego network, one member per line
+	 */
+	public void PrintTable() {
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i] == null) {
+				continue;
+			}
+			StringBuilder sb = new StringBuilder(i + " |");
+			for (int j = 0; j < rows.length; j++) {
+				if (rows[j] != null) {
+					sb.append(get(rows[i], j) ? " 1" : " 0");
 				}
 			}
-				return sumsimilar;
-		
+			System.out.println(sb);
+		}
+		System.out.println("--------------------------------");
+	}
+
+	/**
+	 * Returns true if the table has not been initialized
+	 * @return True if {@link #initialContactTable(DTNHost)} has not been
+	 * called
+	 */
+	public boolean IsNull() {
+		return rows == null;
 	}
-	public int getsize()
-	{	
-		return Table.size();
+
+	/**
+	 * Adds a host without any edges to the ego network
+	 * @param addr Address of the host
+	 * @param table Contact table of the host
+	 */
+	private void addMember(int addr, ContactTable table) {
+		rows[addr] = new long[words];
+		indirectRows[addr] = new long[words];
+		tables[addr] = table;
+		size++;
 	}
-	
-	public double computeBetweenness( )
-	{	
-		int size = this.getsize();
-		
-		//System.out.println( size  + "  " + Table.get(host).size());
-		
-		int i = 0, j = 0;
-		int A[][] = new int[size][size];	
-		int B[][] = new int[size][size];
-		int C[][] = new int[size][size];
-		int D[][] = new int[size][size];
-		//PrintTable();	
-		for ( String row : Table.keySet() ) {
-			j = 0;
-			for ( String col : Table.get(row).keySet() ) {	
-				A[i][j] = Table.get(row).get(col);
-				j++;
-			}
-			i++;		
+
+	/**
+	 * Adds an edge between two members and updates the betweenness of
+	 * the pairs whose number of shared neighbors changes
+	 * @param u Address of the first member
+	 * @param v Address of the second member
+	 */
+	private void addEdge(int u, int v) {
+		if (get(rows[u], v)) {
+			return;
 		}
-		
-		/*for (int m = 0; m < B.length; m++) {
-			for (int p = 0; p < B[0].length; p++) {
-				System.out.print(B[m][p]+" ");
-			}	
-			System.out.println();
+		double delta = -inverse(common(u, v)); // the pair becomes adjacent
+		delta += sharedNeighborAdded(u, v);
+		delta += sharedNeighborAdded(v, u);
+		set(rows[u], v);
+		set(rows[v], u);
+		betweenness += delta;
+	}
+
+	/**
+	 * Removes an edge between two members and updates the betweenness of
+	 * the pairs whose number of shared neighbors changes
+	 * @param u Address of the first member
+	 * @param v Address of the second member
+	 */
+	private void removeEdge(int u, int v) {
+		if (!get(rows[u], v)) {
+			return;
 		}
-		System.out.println();*/
-		
-		//A*A
-		for (int m = 0; m < A.length; m++) {
-			for (int p = 0; p < A[0].length; p++) {
-				for (int n = 0; n < A[0].length; n++) {
-					B[m][p] = B[m][p] + A[m][n] * A[n][p];
+		clear(rows[u], v);
+		clear(rows[v], u);
+		double delta = inverse(common(u, v)); // the pair becomes non-adjacent
+		delta += sharedNeighborRemoved(u, v);
+		delta += sharedNeighborRemoved(v, u);
+		betweenness += delta;
+	}
+
+	/**
+	 * Returns the change of betweenness when z becomes a neighbor of x:
+	 * z becomes a shared neighbor of x and every neighbor of z that is not
+	 * adjacent to x
+	 * @param x Address of the member getting a new neighbor
+	 * @param z Address of the new neighbor
+	 * @return The change of betweenness
+	 */
+	private double sharedNeighborAdded(int x, int z) {
+		double delta = 0;
+		long[] zRow = rows[z];
+		long[] xRow = rows[x];
+		for (int w = 0; w < words; w++) {
+			long bits = zRow[w] & ~xRow[w];
+			while (bits != 0) {
+				int y = w * WORD_BITS + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (y != x) {
+					int c = common(x, y);
+					delta += inverse(c + 1) - inverse(c);
 				}
 			}
 		}
+		return delta;
+	}
 
-		//1-A
-		for( int row = 0; row < A.length; row++ )
-		{
-		    for( int col = 0; col < A.length; col++ )
-			{
-		        C[row][col] = 1 - A[row][col];
-			}
-	    }
-		
-		//A*A*[1-A]
-		for (int m = 0; m < A.length; m++) {
-			for (int p = 0; p < A[0].length; p++) {
-				for (int n = 0; n < A[0].length; n++) {
-					D[m][p] = D[m][p] + B[m][n] * C[n][p];
+	/**
+	 * Returns the change of betweenness when z (that is no longer a
+	 * neighbor of x) stopped being a shared neighbor of x and the
+	 * neighbors of z that are not adjacent to x
+	 * @param x Address of the member that lost a neighbor
+	 * @param z Address of the lost neighbor
+	 * @return The change of betweenness
+	 */
+	private double sharedNeighborRemoved(int x, int z) {
+		double delta = 0;
+		long[] zRow = rows[z];
+		long[] xRow = rows[x];
+		for (int w = 0; w < words; w++) {
+			long bits = zRow[w] & ~xRow[w];
+			while (bits != 0) {
+				int y = w * WORD_BITS + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (y != x) {
+					int c = common(x, y);
+					delta += inverse(c) - inverse(c + 1);
 				}
 			}
 		}
+		return delta;
+	}
 
-		double reciprocal = 0.0;
-		for( int row = 0; row < A.length; row++ )
-		{
-		    for( int col = 0; col < A.length; col++ )
-			{
-		    	if( C[row][col] != 0.0 )
-		    		reciprocal += 1 / C[row][col];
-			}
-	    }
-		
-		//System.out.println(reciprocal);
-		return reciprocal;
+	/**
+	 * Returns the number of neighbors two members have in common
+	 * @param x Address of the first member
+	 * @param y Address of the second member
+	 * @return The number of shared neighbors
+	 */
+	private int common(int x, int y) {
+		long[] xRow = rows[x];
+		long[] yRow = rows[y];
+		int count = 0;
+		for (int w = 0; w < words; w++) {
+			count += Long.bitCount(xRow[w] & yRow[w]);
+		}
+		return count;
 	}
-	
-	public int computeSimilar( Message m )
-	{
-		int sim = 0;
-		for ( String key : Table.keySet()) {
-			
-			if( Table.get(host).get(key) == 1 && Table.get(m.getTo().toString()).get(key) == 1 )
-				sim++;
+
+	private static double inverse(int count) {
+		return count == 0 ? 0 : 1.0 / count;
+	}
+
+	/**
+	 * Returns true if the address is in this ego network
+	 * @param addr The address
+	 * @return True if the address is in this ego network
+	 */
+	private boolean isMember(int addr) {
+		return rows != null && addr < rows.length && rows[addr] != null;
+	}
+
+	/**
+	 * Returns a word of the members of a contact table's ego network,
+	 * excluding the owner of the table
+	 * @param table The contact table (or null for an empty table)
+	 * @param w Index of the word
+	 * @return The word
+	 */
+	private static long memberWord(ContactTable table, int w) {
+		if (table == null || table.IsNull() || w >= table.words) {
+			return 0;
 		}
-		
-		return sim;
-		
+		return table.rows[table.hostAddr][w];
 	}
-	
-	public void PrintTable1()
-	{
-		System.out.print( "     " );
-		for ( String key2 : Table.get(host).keySet() ) {		
-					System.out.print( key2 + " " );
+
+	/**
+	 * Grows the rows so that they can hold the given address
+	 * @param addr The address
+	 */
+	private void ensureCapacity(int addr) {
+		if (addr < words * WORD_BITS) {
+			return;
 		}
-		System.out.println();
-		
-		for ( String key1 : Table.keySet() ) {
-			System.out.print( key1 + " | " );
-			for ( String key2 : Table.get(key1).keySet() ) {		
-					System.out.print(  Table.get(key1).get(key2) + "   " );
+		int newWords = Math.max(words * 2, addr / WORD_BITS + 1);
+		long[][] newRows = new long[newWords * WORD_BITS][];
+		long[][] newIndirectRows = new long[newWords * WORD_BITS][];
+		ContactTable[] newTables = new ContactTable[newWords * WORD_BITS];
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i] != null) {
+				newRows[i] = grow(rows[i], newWords);
+				newIndirectRows[i] = grow(indirectRows[i], newWords);
+				newTables[i] = tables[i];
 			}
-			System.out.println();
 		}
+		rows = newRows;
+		indirectRows = newIndirectRows;
+		tables = newTables;
+		indirect = grow(indirect, newWords);
+		words = newWords;
+	}
 
-		System.out.println( "--------------------------------");
-		
+	private static long[] grow(long[] row, int newWords) {
+		long[] newRow = new long[newWords];
+		System.arraycopy(row, 0, newRow, 0, row.length);
+		return newRow;
 	}
-	
-	public void PrintTable()
-	{
-		
-		for ( String key1 : Table.keySet() ) {
-			for ( String key2 : Table.get(key1).keySet() ) {		
-					System.out.print(  Table.get(key1).get(key2) + " " );
-			}
-			System.out.println();
-		}
 
-		System.out.println( "--------------------------------");
-		
+	private static boolean get(long[] row, int bit) {
+		return (row[bit / WORD_BITS] & (1L << bit)) != 0;
 	}
-	
-	public boolean IsNull()
-	{
-		return Table == null;
+
+	private static void set(long[] row, int bit) {
+		row[bit / WORD_BITS] |= 1L << bit;
 	}
 
+	private static void clear(long[] row, int bit) {
+		row[bit / WORD_BITS] &= ~(1L << bit);
+	}
 }
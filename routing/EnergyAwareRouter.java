@@ -42,7 +42,6 @@ public class EnergyAwareRouter extends ActiveRouter
 	private double lastUpdate;
 	private double scanInterval;	
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -85,9 +84,12 @@ public class EnergyAwareRouter extends ActiveRouter
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
+			State state = (State)SimContext.getCurrent().getState(
+					EnergyAwareRouter.class);
+			if (state.rng == null) {
+				state.rng = new Random((int)(range[0] + range[1]));
 			}
+			Random rng = state.rng;
 			this.currentEnergy = range[0] + 
 				rng.nextDouble() * (range[1] - range[0]);
 		}
@@ -185,6 +187,11 @@ public class EnergyAwareRouter extends ActiveRouter
 		
 		this.tryAllMessagesToAllConnections();
 	}
+
+	@Override
+	public double getIdleUntil() {
+		return SimClock.getTime(); // the energy is reduced at every update
+	}
 		
 	@Override
 	public EnergyAwareRouter replicate() {
@@ -205,4 +212,21 @@ public class EnergyAwareRouter extends ActiveRouter
 	public String toString() {
 		return super.toString() + " energy level = " + this.currentEnergy;
 	}	
+	
+	/**
+	 * Resets the energy level random number generator (of the current 
+	 * simulation run)
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(EnergyAwareRouter.class, 
+				new State());
+	}
+	
+	/**
+	 * Per simulation run state of the energy aware routers
+	 */
+	private static class State {
+		/** rng for the initial energy levels; created on first use */
+		private Random rng = null;
+	}
 }
\ No newline at end of file
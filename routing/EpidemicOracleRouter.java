@@ -19,9 +19,6 @@ import core.*;
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 	
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
-
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
 		reset();
@@ -42,20 +39,16 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
+		getAllRouters().add(this);
 	}
 	
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) {
 			DTNHost peer = con.getOtherNode(getHost());
-			List<Message> newMessages = new ArrayList<Message>();
+			List<Message> newMessages =
+				peer.getRouter().getMessagesNotIn(getSummaryVector());
 			
-			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
-					newMessages.add(m);
-				}
-			}
 			for (Message m : newMessages) {
 				/* try to start transfer from peer */
 				if (con.startTransfer(peer, m) == RCV_OK) {
@@ -110,7 +103,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
+			for (EpidemicOracleRouter r : getAllRouters()) {
 				if (r != this && r != from.getRouter()) {
 					r.removeDeliveredMessage(id);
 				}
@@ -123,7 +116,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
+		if ( isIncomingMessage(m.getId()) || hasMessage(m) || 
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -162,6 +155,11 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		   are created or new messages are created or received, and transfers
 		   are finalized immediately */
 	}
+
+	@Override
+	public double getIdleUntil() {
+		return Double.MAX_VALUE; // see update()
+	}
 	
 	
 	@Override
@@ -170,10 +168,29 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Resets the static router list
+	 * Resets the router list (of the current simulation run)
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
-	}
+		SimContext.getCurrent().setState(EpidemicOracleRouter.class, 
+				new State());
+	}
+	
+	/**
+	 * Returns the list of all routers of the current simulation run
+	 * @return the list of all routers
+	 */
+	private static List<EpidemicOracleRouter> getAllRouters() {
+		return ((State)SimContext.getCurrent().getState(
+				EpidemicOracleRouter.class)).allRouters;
+	}
+	
+	/**
+	 * Per simulation run state of the oracle routers
+	 */
+	private static class State {
+		/** List of all routers in this node group */
+		private List<EpidemicOracleRouter> allRouters = 
+			new ArrayList<EpidemicOracleRouter>();
+	}
 
 }
\ No newline at end of file
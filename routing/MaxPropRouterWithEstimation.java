@@ -9,15 +9,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
+import core.IdHandleSet;
 import core.Message;
 import core.Settings;
 import core.SimClock;
@@ -51,13 +50,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	private IdHandleSet ackedMessageIds;
+	/** Have the meeting probabilities changed since the costs were last
+	 * updated. This should be set to true always when a host is met. */
+	private boolean probsChanged = true;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -121,7 +117,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new IdHandleSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}	
@@ -142,7 +138,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.probsChanged = true; // invalidate old cost estimates
 			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -317,23 +313,25 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * Deletes the messages from the message buffer that are known to be ACKed.
+	 * The ACKs of messages that no router has a copy of anymore are 
+	 * forgotten.
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		this.ackedMessageIds.removeBelow(Message.getDeadIdHandleBound());
+		for (Message m : getMessagesIn(this.ackedMessageIds)) {
+			if (!isSending(m.getId())) {
+				this.deleteMessage(m.getId(), false);
 			}
 		}
 	}
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIdHandle());
 		}
 		return m;
 	}
@@ -349,7 +347,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIdHandle()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -428,8 +426,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs are calculated from the
+	 * cached shortest path trees of the "from" hosts.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
@@ -437,29 +435,14 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (this.probsChanged) {
+			/* probabilities have changed -> update the costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			dijkstra.updateCosts();
+			this.probsChanged = false;
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		return dijkstra.getCost(from.getAddress(), to.getAddress());
 	}
 	
 	/**
@@ -471,8 +454,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		List<Tuple<Message, Connection>> messages = 
 			new ArrayList<Tuple<Message, Connection>>(); 
 	
-		Collection<Message> msgCollection = getMessageCollection();
-		
 		/* for all connected hosts that are not transferring at the moment,
 		 * collect all the messages that could be sent */
 		for (Connection con : getConnections()) {
@@ -483,11 +464,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 			
-			for (Message m : msgCollection) {
-				/* skip messages that the other host has or that have
-				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+			/* skip messages that the other host has or that have
+			 * passed the other host */
+			for (Message m : getMessagesNotIn(othRouter.getSummaryVector())) {
+				if (m.getHops().contains(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
@@ -0,0 +1,579 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import core.DTNHost;
+import core.IdHandleSet;
+import core.LongHashMap;
+import core.Message;
+
+/**
+ * Message buffer of a router. Keeps the messages by their
+ * {@link Message#getIdHandle() ID handles}, the total
+ * size of the messages, an index of the messages in the order they
+ * should be dropped (as defined by a {@link DropPolicy}), an index of
+ * the messages in the order their TTLs expire, an index of
+ * the messages by their destination and the set of the ID handles (a
+ * summary vector), so that neither checking the free space, choosing the
+ * message to drop, finding the expired messages, finding the messages to
+ * a host nor comparing the messages with another buffer requires going
+ * through all the messages. Once asked for, the messages are also kept in
+ * the order they were received. The messages are iterated in the same 
+ * order as the hash map of message IDs the routers used to keep them in.
+ */
+public class MessageBuffer {
+	/** Drop policy that drops the message received first */
+	public static final DropPolicy DROP_OLDEST = new DropPolicy() {
+		public double dropOrder(Message m) {
+			return m.getReceiveTime();
+		}
+	};
+	/** Drop policy that drops the message received last */
+	public static final DropPolicy DROP_YOUNGEST = new DropPolicy() {
+		public double dropOrder(Message m) {
+			return -m.getReceiveTime();
+		}
+	};
+	/** Drop policy that drops the largest message */
+	public static final DropPolicy DROP_LARGEST = new DropPolicy() {
+		public double dropOrder(Message m) {
+			return -m.getSize();
+		}
+	};
+	/** Drop policy that drops the message whose TTL expires first */
+	public static final DropPolicy DROP_SHORTEST_TTL = new DropPolicy() {
+		public double dropOrder(Message m) {
+			return m.getExpiryTime();
+		}
+	};
+
+	/** initial capacity of the hash map whose iteration order is emulated */
+	private static final int DEFAULT_MAP_CAPACITY = 16;
+
+	/** the buffered messages by their ID handles */
+	private LongHashMap<Entry> entries;
+	/** the buffered messages in the drop order */
+	private TreeSet<Entry> dropOrder;
+	/** the buffered messages with a finite TTL in the order their TTLs
+	 * expire */
+	private TreeSet<Entry> expiryOrder;
+	/** first entries of the lists of messages to each destination, indexed
+	 * by the destination's address */
+	private Entry[] byDestination;
+	/** the destinations (by address) already checked by the ongoing 
+	 * {@link #getMessagesTo(List)} call are marked with its stamp */
+	private int[] checked;
+	/** stamp of the latest {@link #getMessagesTo(List)} call */
+	private int checkStamp;
+	/** the buffered messages in the iteration order of the
+	 * {@link #getMessages() view of the messages} */
+	private TreeSet<Entry> iterationOrder;
+	/** capacity of the hash map whose iteration order is emulated (see
+	 * {@link IterationOrder}) */
+	private int mapCapacity;
+	/** the buffered messages in the receive order (see 
+	 * {@link #inReceiveOrder()}) or null if it hasn't been asked for */
+	private ArrayList<Entry> receiveOrder;
+	/** has the receive order list been given out, i.e., must it be copied 
+	 * before it is changed */
+	private boolean receiveOrderShared;
+	/** ID handles of the buffered messages */
+	private IdHandleSet idHandles;
+	private DropPolicy policy;
+	/** total size of the buffered messages */
+	private long occupancy;
+	/** insertion number of the next message; breaks ties in the order */
+	private long nextSeq;
+	/** view of the messages */
+	private Collection<Message> messages;
+
+	/**
+	 * Creates a new, empty, buffer
+	 * @param policy The policy that defines the order the messages are
+	 * dropped in
+	 */
+	public MessageBuffer(DropPolicy policy) {
+		this.policy = policy;
+		this.entries = new LongHashMap<Entry>();
+		this.dropOrder = new TreeSet<Entry>();
+		this.expiryOrder = new TreeSet<Entry>(EXPIRY_ORDER);
+		this.mapCapacity = DEFAULT_MAP_CAPACITY;
+		this.iterationOrder = new TreeSet<Entry>(new IterationOrder());
+		this.byDestination = new Entry[0];
+		this.checked = new int[0];
+		this.checkStamp = 0;
+		this.idHandles = new IdHandleSet();
+		this.messages = new Messages();
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * @param m The message
+	 */
+	public void add(Message m) {
+		Entry e = new Entry(m, policy.dropOrder(m), nextSeq++);
+		Entry old = entries.put(m.getIdHandle(), e);
+		if (old != null) {
+			unindex(old);
+			e.mapSeq = old.mapSeq; // a replacing message keeps the place
+		}
+		else {
+			Message.copyAdded(m.getIdHandle());
+		}
+		iterationOrder.add(e);
+		if (entries.size() > mapCapacity / 4 * 3) {
+			growMap();
+		}
+		if (receiveOrder != null) {
+			int index = Collections.binarySearch(receiveOrder, e, 
+					RECEIVE_ORDER);
+			ownReceiveOrder().add(-index - 1, e); // usually the last one
+		}
+		dropOrder.add(e);
+		if (e.expiry != Double.POSITIVE_INFINITY) {
+			expiryOrder.add(e);
+		}
+		occupancy += m.getSize();
+		addToDestination(e);
+		idHandles.add(m.getIdHandle());
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param idHandle ID handle of the message
+	 * @return The removed message or null if there was no message with the
+	 * ID
+	 */
+	public Message remove(int idHandle) {
+		Entry e = entries.remove(idHandle);
+		if (e == null) {
+			return null;
+		}
+		unindex(e);
+		idHandles.remove(idHandle);
+		Message.copyRemoved(idHandle);
+		return e.message;
+	}
+
+	/**
+	 * Returns a message by ID handle
+	 * @param idHandle ID handle of the message
+	 * @return The message or null if there's no message with the ID
+	 */
+	public Message get(int idHandle) {
+		Entry e = entries.get(idHandle);
+		return e == null ? null : e.message;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID handle
+	 * @param idHandle ID handle of the message
+	 * @return True if the message is in the buffer
+	 */
+	public boolean contains(int idHandle) {
+		return entries.containsKey(idHandle);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return The total size (bytes)
+	 */
+	public long getOccupancy() {
+		return occupancy;
+	}
+
+	/**
+	 * Returns a view of the messages. The view can't be modified.
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the messages to a destination host in the order the
+	 * {@link #getMessages() view of the messages} iterates them. The
+	 * returned list is a copy, so the buffer can be modified while going
+	 * through it.
+	 * @param to The destination host
+	 * @return The messages to the host
+	 */
+	public List<Message> getMessagesTo(DTNHost to) {
+		return getMessagesTo(Collections.singletonList(to));
+	}
+
+	/**
+	 * Returns the messages to any of the given destination hosts in the
+	 * order the {@link #getMessages() view of the messages} iterates them.
+	 * The returned list is a copy, so the buffer can be modified while going
+	 * through it.
+	 * @param hosts The destination hosts
+	 * @return The messages to the hosts
+	 */
+	public List<Message> getMessagesTo(List<DTNHost> hosts) {
+		List<Entry> found = new ArrayList<Entry>();
+		if (checked.length < byDestination.length) {
+			checked = new int[byDestination.length];
+		}
+		int stamp = ++checkStamp;
+		for (int i = 0; i < hosts.size(); i++) {
+			int address = hosts.get(i).getAddress();
+			if (address >= byDestination.length || checked[address] == stamp) {
+				continue; // no messages or the host was already checked
+			}
+			checked[address] = stamp;
+			for (Entry e = byDestination[address]; e != null;
+					e = e.nextByDestination) {
+				found.add(e);
+			}
+		}
+
+		return inIterationOrder(found);
+	}
+
+	/**
+	 * Returns the ID handles of the messages. The set must not be modified.
+	 * @return The ID handles of the messages
+	 */
+	public IdHandleSet getIdHandles() {
+		return idHandles;
+	}
+
+	/**
+	 * Returns the messages whose ID handles are in (or are not in) the given
+	 * set in the order the {@link #getMessages() view of the messages}
+	 * iterates them. The returned list is a copy, so the buffer can be
+	 * modified while going through it.
+	 * @param handles The set of ID handles
+	 * @param in Should the ID handles be in the set (or not)
+	 * @return The messages
+	 */
+	public List<Message> getMessages(IdHandleSet handles, boolean in) {
+		List<Entry> found = new ArrayList<Entry>();
+		int h = in ? idHandles.nextHandleIn(handles, 0) :
+			idHandles.nextHandleNotIn(handles, 0);
+		while (h >= 0) {
+			found.add(entries.get(h));
+			h = in ? idHandles.nextHandleIn(handles, h + 1) :
+				idHandles.nextHandleNotIn(handles, h + 1);
+		}
+		return inIterationOrder(found);
+	}
+
+	/**
+	 * Returns the messages whose TTL expires before the given time (see
+	 * {@link Message#getExpiryTime()}) in the order the
+	 * {@link #getMessages() view of the messages} iterates them. The
+	 * returned list is a copy, so the buffer can be modified while going
+	 * through it.
+	 * @param time The time
+	 * @return The messages
+	 */
+	public List<Message> getMessagesExpiringBefore(double time) {
+		List<Entry> found = new ArrayList<Entry>();
+		for (Entry e : expiryOrder) {
+			if (e.expiry >= time) {
+				break;
+			}
+			found.add(e);
+		}
+		return inIterationOrder(found);
+	}
+
+	/**
+	 * Returns the messages of entries in the order the
+	 * {@link #getMessages() view of the messages} iterates them
+	 * @param found The entries
+	 * @return The messages
+	 */
+	private List<Message> inIterationOrder(List<Entry> found) {
+		Collections.sort(found, iterationOrder.comparator());
+		List<Message> result = new ArrayList<Message>(found.size());
+		for (Entry e : found) {
+			result.add(e.message);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the messages in the order they were received, i.e., by their
+	 * receive times and, if those are equal, in the order they were added
+	 * to the buffer. The order is kept up to date from the first call on,
+	 * so the messages are not sorted again when the buffer changes. The 
+	 * returned list is read-only and doesn't change even if the buffer
+	 * does.
+	 * @return The messages in the receive order
+	 */
+	public List<Message> inReceiveOrder() {
+		if (receiveOrder == null) {
+			receiveOrder = new ArrayList<Entry>(entries.values());
+			Collections.sort(receiveOrder, RECEIVE_ORDER);
+		}
+		receiveOrderShared = true;
+		return new EntryMessages(receiveOrder);
+	}
+
+	/**
+	 * Returns the receive order list for changing it. If the list has been
+	 * given out, it is copied first.
+	 * @return The receive order list
+	 */
+	private ArrayList<Entry> ownReceiveOrder() {
+		if (receiveOrderShared) {
+			receiveOrder = new ArrayList<Entry>(receiveOrder);
+			receiveOrderShared = false;
+		}
+		return receiveOrder;
+	}
+
+	/**
+	 * Returns the messages in the order they should be dropped. The buffer
+	 * must not be modified while iterating.
+	 * @return The messages in the drop order
+	 */
+	public Iterable<Message> inDropOrder() {
+		return new Iterable<Message>() {
+			public Iterator<Message> iterator() {
+				return new MessageIterator(dropOrder.iterator());
+			}
+		};
+	}
+
+	/**
+	 * Removes an entry from the drop order, the expiry order, the
+	 * destination index and the occupancy
+	 * @param e The entry
+	 */
+	private void unindex(Entry e) {
+		iterationOrder.remove(e);
+		if (receiveOrder != null) {
+			ownReceiveOrder().remove(Collections.binarySearch(receiveOrder,
+					e, RECEIVE_ORDER));
+		}
+		dropOrder.remove(e);
+		if (e.expiry != Double.POSITIVE_INFINITY) {
+			expiryOrder.remove(e);
+		}
+		occupancy -= e.message.getSize();
+
+		if (e.message.getTo() == null) {
+			return; // not in the destination index
+		}
+		if (e.prevByDestination != null) {
+			e.prevByDestination.nextByDestination = e.nextByDestination;
+		}
+		else {
+			byDestination[e.message.getTo().getAddress()] =
+				e.nextByDestination;
+		}
+		if (e.nextByDestination != null) {
+			e.nextByDestination.prevByDestination = e.prevByDestination;
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the emulated hash map (like the map would
+	 * when it gets too full) and reorders the entries by their new buckets
+	 */
+	private void growMap() {
+		mapCapacity *= 2;
+		TreeSet<Entry> reordered = new TreeSet<Entry>(
+				iterationOrder.comparator());
+		reordered.addAll(entries.values()); // not sorted by the new order
+		iterationOrder = reordered;
+	}
+
+	/**
+	 * Adds an entry to the list of its destination (if it has one)
+	 * @param e The entry
+	 */
+	private void addToDestination(Entry e) {
+		if (e.message.getTo() == null) {
+			return;
+		}
+		int address = e.message.getTo().getAddress();
+		if (address >= byDestination.length) {
+			byDestination = Arrays.copyOf(byDestination,
+					Math.max(address + 1, 2 * byDestination.length));
+		}
+		e.nextByDestination = byDestination[address];
+		if (e.nextByDestination != null) {
+			e.nextByDestination.prevByDestination = e;
+		}
+		byDestination[address] = e;
+	}
+
+	/**
+	 * Policy that defines the order in which the messages are dropped when
+	 * room has to be made for new ones
+	 */
+	public interface DropPolicy {
+		/**
+		 * Returns the drop order value of a message when it is added to
+		 * the buffer. Messages with smaller values are dropped first.
+		 * @param m The message
+		 * @return The order value
+		 */
+		public double dropOrder(Message m);
+	}
+
+	/** Orders entries by the expiry times of their messages */
+	private static final Comparator<Entry> EXPIRY_ORDER =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if (e1.expiry != e2.expiry) {
+				return e1.expiry < e2.expiry ? -1 : 1;
+			}
+			return e1.seq < e2.seq ? -1 : (e1.seq > e2.seq ? 1 : 0);
+		}
+	};
+
+	/** Orders entries by the receive times of their messages */
+	private static final Comparator<Entry> RECEIVE_ORDER =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if (e1.received != e2.received) {
+				return e1.received < e2.received ? -1 : 1;
+			}
+			return e1.seq < e2.seq ? -1 : (e1.seq > e2.seq ? 1 : 0);
+		}
+	};
+
+	/**
+	 * Orders entries like a {@link java.util.HashMap} with the message IDs
+	 * as keys would iterate them, i.e., by the buckets of the IDs' hash
+	 * codes and in the order the messages were added within a bucket. The
+	 * routers used to keep their messages in such a map, and some of them
+	 * (e.g., MaxProp with its stable sort) order messages with equal
+	 * priority by the iteration order.
+	 */
+	private class IterationOrder implements Comparator<Entry> {
+		public int compare(Entry e1, Entry e2) {
+			int b1 = e1.hash & (mapCapacity - 1);
+			int b2 = e2.hash & (mapCapacity - 1);
+			if (b1 != b2) {
+				return b1 < b2 ? -1 : 1;
+			}
+			return e1.mapSeq < e2.mapSeq ? -1 :
+				(e1.mapSeq > e2.mapSeq ? 1 : 0);
+		}
+	}
+
+	/**
+	 * A buffered message, its drop order, its expiry time, its place in the
+	 * iteration order and its neighbors in the list of messages to the same
+	 * destination
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private Message message;
+		private double order;
+		private double expiry;
+		private double received;
+		private long seq;
+		/** hash of the message ID, spread like in a hash map */
+		private int hash;
+		/** insertion number of the message that first took the place of
+		 * the entry in the iteration order */
+		private long mapSeq;
+		private Entry prevByDestination;
+		private Entry nextByDestination;
+
+		private Entry(Message message, double order, long seq) {
+			this.message = message;
+			this.order = order;
+			this.expiry = message.getExpiryTime();
+			this.received = message.getReceiveTime();
+			this.seq = seq;
+			int h = message.getId().hashCode();
+			this.hash = h ^ (h >>> 16);
+			this.mapSeq = seq;
+		}
+
+		public int compareTo(Entry other) {
+			if (this.order != other.order) {
+				return this.order < other.order ? -1 : 1;
+			}
+			return this.seq < other.seq ? -1 : (this.seq > other.seq ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Read-only collection view of the buffered messages
+	 */
+	private class Messages extends AbstractCollection<Message> {
+		@Override
+		public Iterator<Message> iterator() {
+			return new MessageIterator(iterationOrder.iterator());
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Read-only list view of the messages of a list of entries
+	 */
+	private static class EntryMessages extends AbstractList<Message> {
+		private List<Entry> entries;
+
+		private EntryMessages(List<Entry> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public Message get(int index) {
+			return entries.get(index).message;
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Iterator that returns the messages of entries
+	 */
+	private static class MessageIterator implements Iterator<Message> {
+		private Iterator<Entry> entries;
+
+		private MessageIterator(Iterator<Entry> entries) {
+			this.entries = entries;
+		}
+
+		public boolean hasNext() {
+			return entries.hasNext();
+		}
+
+		public Message next() {
+			return entries.next().message;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+	}
+}
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -15,6 +16,8 @@ import java.util.Random;
 import core.Application;
 import core.Connection;
 import core.DTNHost;
+import core.IdHandleSet;
+import core.LongHashMap;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
@@ -46,11 +49,45 @@ public abstract class MessageRouter {
 	 * </UL>
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
+	/**
+	 * Message drop policy -setting id ({@value}). Defines which messages
+	 * are dropped first when room has to be made in the buffer for new
+	 * messages. Valid values are<BR>
+	 * <UL>
+	 * <LI/> 1 : oldest (the message received first is dropped first; 
+	 * default option)
+	 * <LI/> 2 : youngest (the message received last is dropped first)
+	 * <LI/> 3 : largest (the largest message is dropped first)
+	 * <LI/> 4 : TTL (the message whose TTL expires first is dropped first)
+	 * </UL>
+	 */
+	public static final String DROP_POLICY_S = "dropPolicy";
 	
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+
+	/** Setting values for the drop policies, in the order of the values */
+	private static final MessageBuffer.DropPolicy[] DROP_POLICIES = {
+		MessageBuffer.DROP_OLDEST, MessageBuffer.DROP_YOUNGEST, 
+		MessageBuffer.DROP_LARGEST, MessageBuffer.DROP_SHORTEST_TTL};
+	
+	/** Compares messages by their receiving time */
+	private static final Comparator<Message> MESSAGE_FIFO_COMPARATOR =
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			return compareReceiveTimes(m1, m2);
+		}
+	};
+	/** Compares tuples by their messages' receiving time */
+	private static final Comparator<Tuple<Message, Connection>>
+		TUPLE_FIFO_COMPARATOR = new Comparator<Tuple<Message, Connection>>() {
+		public int compare(Tuple<Message, Connection> t1,
+				Tuple<Message, Connection> t2) {
+			return compareReceiveTimes(t1.getKey(), t2.getKey());
+		}
+	};
 	
 	/** Receive return value for OK */
 	public static final int RCV_OK = 0;
@@ -66,12 +103,16 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred with (message ID handle, sender 
+	 * address) keys. See {@link #incomingKey(int, DTNHost)} */
+	private LongHashMap<Message> incomingMessages;
+	/** Number of incoming messages (from any sender) by message ID handle */
+	private LongHashMap<Integer> incomingCounts;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	private MessageBuffer messages; 
+	/** The messages this router has received as the final recipient, by 
+	 * their ID handles */
+	private LongHashMap<Message> deliveredMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -80,6 +121,15 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** The buffered messages in the sending queue order or null if the
+	 * buffer has changed after they were ordered */
+	private List<Message> sendQueue;
+	/** Simulation time (as integer) when the send queue was ordered */
+	private int sendQueueTime;
+	/** Random number generator for shuffling the queue in random mode */
+	private Random queueRng;
+	/** Policy for dropping messages from the buffer */
+	private MessageBuffer.DropPolicy dropPolicy;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
@@ -111,7 +161,16 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
-		
+
+		this.dropPolicy = MessageBuffer.DROP_OLDEST;
+		if (s.contains(DROP_POLICY_S)) {
+			int policy = s.getInt(DROP_POLICY_S);
+			if (policy < 1 || policy > DROP_POLICIES.length) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(DROP_POLICY_S));
+			}
+			this.dropPolicy = DROP_POLICIES[policy - 1];
+		}
 	}
 	
 	/**
@@ -122,9 +181,12 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.incomingMessages = new LongHashMap<Message>();
+		this.incomingCounts = new LongHashMap<Integer>();
+		this.messages = new MessageBuffer(this.dropPolicy);
+		this.deliveredMessages = new LongHashMap<Message>();
+		this.sendQueue = null;
+		this.queueRng = new Random();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -137,6 +199,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.dropPolicy = r.dropPolicy;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -157,6 +220,46 @@ public abstract class MessageRouter {
 				app.update(this.host);
 			}
 		}
+	}
+
+	/**
+	 * Informs the router that a transfer it started over a connection is
+	 * done at this exact time (see {@link 
+	 * core.World#EXACT_TRANSFER_TIMES_S}). The router is updated right after
+	 * this if its host is active. This implementation does nothing.
+	 * @param con The connection whose transfer is done
+	 */
+	public void transferCompleted(Connection con) { }
+
+	/**
+	 * Informs the router that the TTL of a message it buffered has reached
+	 * zero at this exact time (see {@link core.World#EXACT_EXPIRY_TIMES_S}).
+	 * The message may already have been removed from the buffer. This 
+	 * implementation does nothing.
+	 * @param m The message that expired
+	 */
+	public void messageExpired(Message m) { }
+
+	/**
+	 * Returns the time until which updating this router does nothing, as
+	 * long as no connections go up or down and no messages are created or
+	 * received. Used for skipping idle update intervals (see 
+	 * {@link core.World#SKIP_IDLE_UPDATES_S}). This implementation returns
+	 * the current time, i.e., the router is updated at every interval;
+	 * routers that know when their updates have something to do should 
+	 * override this.
+	 * @return The time until which the updates do nothing
+	 */
+	public double getIdleUntil() {
+		return SimClock.getTime();
+	}
+
+	/**
+	 * Returns true if there are applications attached to this router
+	 * @return true if there are applications attached to this router
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
 	}
 	
 	/**
@@ -171,7 +274,7 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return this.messages.get(Message.getIdHandle(id));
 	}
 	
 	/**
@@ -180,7 +283,17 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(Message.getIdHandle(id));
+	}
+	
+	/**
+	 * Checks if this router has a message with the same ID as the given
+	 * message buffered.
+	 * @param m The message
+	 * @return True if the router has message with the ID, false if not
+	 */
+	protected boolean hasMessage(Message m) {
+		return this.messages.contains(m.getIdHandle());
 	}
 	
 	/**
@@ -192,7 +305,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getIdHandle()));
 	}
 	
 	/**
@@ -204,7 +317,75 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+
+	/**
+	 * Returns the messages of this router in the order they should be 
+	 * dropped, as defined by the {@link #DROP_POLICY_S drop policy}. 
+	 * The buffer must not be modified while iterating.
+	 * @return The messages in the drop order
+	 */
+	protected Iterable<Message> getMessagesInDropOrder() {
+		return this.messages.inDropOrder();
+	}
+	
+	/**
+	 * Returns the messages of this router whose final recipient is one of
+	 * the given hosts, in the order of {@link #getMessageCollection()}. 
+	 * The returned list is a copy, so messages can be deleted while going
+	 * through it.
+	 * @param hosts The final recipients
+	 * @return The messages to the hosts
+	 */
+	protected List<Message> getMessagesTo(List<DTNHost> hosts) {
+		return this.messages.getMessagesTo(hosts);
+	}
+	
+	/**
+	 * Returns the messages of this router whose TTL expires before the given
+	 * time, in the order of {@link #getMessageCollection()}. The returned
+	 * list is a copy, so messages can be deleted while going through it.
+	 * @param time The time
+	 * @return The messages expiring before the time
+	 * @see Message#getExpiryTime()
+	 */
+	protected List<Message> getMessagesExpiringBefore(double time) {
+		return this.messages.getMessagesExpiringBefore(time);
+	}
+	
+	/**
+	 * Returns the summary vector of this router: the set of the 
+	 * {@link Message#getIdHandle() ID handles} of the messages this router
+	 * has. The set must not be modified.
+	 * @return The ID handles of the messages of this router
+	 */
+	public IdHandleSet getSummaryVector() {
+		return this.messages.getIdHandles();
+	}
+	
+	/**
+	 * Returns the messages of this router whose ID handles are in the given 
+	 * set, in the order of {@link #getMessageCollection()}. The returned
+	 * list is a copy, so messages can be deleted while going through it.
+	 * @param handles The set of ID handles
+	 * @return The messages whose ID handles are in the set
+	 */
+	protected List<Message> getMessagesIn(IdHandleSet handles) {
+		return this.messages.getMessages(handles, true);
+	}
+	
+	/**
+	 * Returns the messages of this router that are not in the given summary
+	 * vector (e.g., the one of another router), in the order of
+	 * {@link #getMessageCollection()}. The returned list is a copy, so
+	 * messages can be deleted while going through it.
+	 * @param summaryVector The ID handles of the messages to leave out
+	 * @return The messages that are not in the summary vector
+	 * @see #getSummaryVector()
+	 */
+	public List<Message> getMessagesNotIn(IdHandleSet summaryVector) {
+		return this.messages.getMessages(summaryVector, false);
 	}
 	
 	/**
@@ -231,17 +412,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)(this.getBufferSize() - this.messages.getOccupancy());
 	}
 	
 	/**
@@ -341,7 +516,7 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(aMessage.getIdHandle(), aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -359,7 +534,12 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int idHandle = m.getIdHandle();
+		if (this.incomingMessages.put(incomingKey(idHandle, from), m) == null) {
+			Integer count = this.incomingCounts.get(idHandle);
+			this.incomingCounts.put(idHandle, count == null ? 1 : count + 1);
+			Message.copyAdded(idHandle);
+		}
 	}
 	
 	/**
@@ -370,7 +550,22 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int idHandle = Message.getIdHandle(id);
+		if (idHandle < 0) {
+			return null;
+		}
+		Message m = this.incomingMessages.remove(incomingKey(idHandle, from));
+		if (m != null) {
+			int count = this.incomingCounts.get(idHandle);
+			if (count > 1) {
+				this.incomingCounts.put(idHandle, count - 1);
+			}
+			else {
+				this.incomingCounts.remove(idHandle);
+			}
+			Message.copyRemoved(idHandle);
+		}
+		return m;
 	}
 	
 	/**
@@ -380,9 +575,22 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		int idHandle = Message.getIdHandle(id);
+		return idHandle >= 0 && this.incomingCounts.containsKey(idHandle);
 	}
 	
+	/**
+	 * Returns the key of an incoming message in the incoming messages 
+	 * buffer: the message's ID handle in the upper and the address of the
+	 * previous hop in the lower 32 bits
+	 * @param idHandle ID handle of the message
+	 * @param from The host the message is from (previous hop)
+	 * @return The key
+	 */
+	private static long incomingKey(int idHandle, DTNHost from) {
+		return ((long)idHandle << 32) | (from.getAddress() & 0xFFFFFFFFL);
+	}
+	
 	/**
 	 * Adds a message to the message buffer and informs message listeners
 	 * about new message (if requested).
@@ -391,7 +599,8 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
+		this.sendQueue = null;
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -406,7 +615,10 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		Message m = this.messages.remove(Message.getIdHandle(id));
+		if (m != null) {
+			this.sendQueue = null;
+		}
 		return m;
 	}
 	
@@ -471,36 +683,24 @@ public abstract class MessageRouter {
 	protected List sortByQueueMode(List list) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
+			/* same sequence as with a new Random(seed) */
+			queueRng.setSeed(SimClock.getIntTime());
+			Collections.shuffle(list, queueRng);
 			break;
 		case Q_MODE_FIFO:
-			Collections.sort(list, 
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-					
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " + 
-								"the list");
-					}
-					
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
+			if (list.size() < 2) {
+				break;
+			}
+			Object first = list.get(0);
+			if (first instanceof Tuple) {
+				Collections.sort(list, TUPLE_FIFO_COMPARATOR);
+			}
+			else if (first instanceof Message) {
+				Collections.sort(list, MESSAGE_FIFO_COMPARATOR);
+			}
+			else {
+				throw new SimError("Invalid type of objects in the list");
+			}
 			break;
 		/* add more queue modes here */
 		default:
@@ -509,6 +709,33 @@ public abstract class MessageRouter {
 		
 		return list;
 	}
+	
+	/**
+	 * Returns the messages this router is carrying in the order defined by
+	 * the sending queue mode (as ordered by {@link #sortByQueueMode(List)}).
+	 * In the FIFO mode, the buffer keeps the messages in the order they 
+	 * were received (messages received at the same time are in the order 
+	 * they were added to the buffer). In the random mode, the shuffled 
+	 * order is kept until the buffer changes or the simulation time moves 
+	 * to the next second. So calling this on every update does not sort 
+	 * the messages every time. The returned list is shared and must not be
+	 * modified.
+	 * @return The messages in the sending queue order
+	 */
+	@SuppressWarnings(value = "unchecked")
+	protected List<Message> getMessagesInQueueOrder() {
+		if (sendQueueMode == Q_MODE_FIFO) {
+			return this.messages.inReceiveOrder();
+		}
+		int time = SimClock.getIntTime();
+		if (this.sendQueue == null ||
+				(sendQueueMode == Q_MODE_RANDOM && time != sendQueueTime)) {
+			this.sendQueue = Collections.unmodifiableList(sortByQueueMode(
+					new ArrayList<Message>(getMessageCollection())));
+			this.sendQueueTime = time;
+		}
+		return this.sendQueue;
+	}
 
 	/**
 	 * Gives the order of the two given messages as defined by the current
@@ -524,16 +751,28 @@ public abstract class MessageRouter {
 			/* return randomly (enough) but consistently -1, 0 or 1 */
 			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
 		case Q_MODE_FIFO:
-			double diff = m1.getReceiveTime() - m2.getReceiveTime();
-			if (diff == 0) {
-				return 0;
-			}
-			return (diff < 0 ? -1 : 1);
+			return compareReceiveTimes(m1, m2);
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
 		}
 	}
+	
+	/**
+	 * Gives the order of two messages by their receiving time
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1 if the first message was received first, 1 if the second
+	 *          message was received first, or 0 if they were received at the
+	 *          same time
+	 */
+	private static int compareReceiveTimes(Message m1, Message m2) {
+		double diff = m1.getReceiveTime() - m2.getReceiveTime();
+		if (diff == 0) {
+			return 0;
+		}
+		return (diff < 0 ? -1 : 1);
+	}
 	
 	/**
 	 * Returns routing information about this router.
@@ -6,6 +6,7 @@ package routing;
 
 import core.Connection;
 import core.Settings;
+import core.SimClock;
 
 /**
  * Passive router that doesn't send anything unless commanded. This is useful
@@ -31,6 +32,14 @@ public class PassiveRouter extends MessageRouter {
 		super.update();
 	}
 
+	@Override
+	public double getIdleUntil() {
+		if (hasApplications()) {
+			return SimClock.getTime(); // applications are updated every time
+		}
+		return Double.MAX_VALUE;
+	}
+
 	@Override
 	public void changedConnection(Connection con) {
 		// -"-
@@ -5,13 +5,13 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import routing.prophet.PredictabilityTable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -69,7 +69,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private double ptavg;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private PredictabilityTable preds;
 
 	/** last meeting time with a node */
 	private Map<DTNHost, Double> meetings;
@@ -120,10 +120,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable();
 	}
 
 	/**
@@ -322,7 +322,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * pinit;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 
 	/**
@@ -333,12 +333,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -353,17 +348,20 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		PredictabilityTable othersPreds = 
 			((ProphetRouterWithEstimation)otherRouter).getDeliveryPreds();
 
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
+		othersPreds.ageAll();
+		for (int c = 0; c < othersPreds.getCapacity(); c++) {
+			DTNHost hostC = othersPreds.getHost(c);
+			if (hostC == null || hostC == getHost()) {
+				continue; // no entry or yourself (don't add yourself)
 			}
 
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
+			double pOld = preds.get(hostC); // P(a,c)_old
+			double pNew = pOld + ( 1 - pOld) * pForHost * othersPreds.get(c) *
+				beta;
+			preds.set(hostC, pNew);
 		}
 	}
 
@@ -371,6 +369,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * Ages all entries in the delivery predictions.
 	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
 	 * time units that have elapsed since the last time the metric was aged.
+	 * The entries are aged lazily by the {@link PredictabilityTable}.
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
@@ -381,18 +380,16 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		}
 
 		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
+		preds.age(mult);
 
 		this.lastAgeUpdate = SimClock.getTime();
 	}
 
 	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns this router's delivery predictions
+	 * @return this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private PredictabilityTable getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -421,8 +418,6 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		List<Tuple<Message, Connection>> messages = 
 			new ArrayList<Tuple<Message, Connection>>(); 
 
-		Collection<Message> msgCollection = getMessageCollection();
-
 		/* for all connected hosts collect all messages that have a higher
 		   probability of delivery by the other host */
 		for (Connection con : getConnections()) {
@@ -433,10 +428,8 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
+			/* skip messages that the other one has */
+			for (Message m : getMessagesNotIn(othRouter.getSummaryVector())) {
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
 					// the other node has higher probability of delivery
 					messages.add(new Tuple<Message, Connection>(m,con));
@@ -493,9 +486,12 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 		" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < preds.getCapacity(); i++) {
+			DTNHost host = preds.getHost(i);
+			if (host == null) {
+				continue;
+			}
+			Double value = preds.get(i);
 
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
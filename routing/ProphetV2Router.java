@@ -6,7 +6,6 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -16,6 +15,7 @@ import java.util.Map;
 import java.util.Random;
 
 
+import routing.prophet.PredictabilityTable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -58,7 +58,7 @@ public class ProphetV2Router extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private PredictabilityTable preds;
 
 	/** last encouter timestamp (sim)time */
 	private Map<DTNHost, Double> lastEncouterTime;
@@ -107,10 +107,10 @@ public class ProphetV2Router extends ActiveRouter {
 	}
 
 		/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable();
 	}
 	
 	@Override
@@ -146,7 +146,7 @@ public class ProphetV2Router extends ActiveRouter {
 
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * PEnc;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 		lastEncouterTime.put(host, simTime);
 	}
 	
@@ -173,12 +173,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 	
 	/**
@@ -193,19 +188,21 @@ public class ProphetV2Router extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		PredictabilityTable othersPreds = 
 			((ProphetV2Router)otherRouter).getDeliveryPreds();
 		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
+		othersPreds.ageAll();
+		for (int c = 0; c < othersPreds.getCapacity(); c++) {
+			DTNHost hostC = othersPreds.getHost(c);
+			if (hostC == null || hostC == getHost()) {
+				continue; // no entry or yourself (don't add yourself)
 			}
 
 //ProphetV2 max(old,new)
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pForHost * e.getValue() * beta;
+			double pOld = preds.get(hostC); // P(a,c)_old
+			double pNew = pForHost * othersPreds.get(c) * beta;
 			if(pNew>pOld)
-				preds.put(e.getKey(), pNew);
+				preds.set(hostC, pNew);
 		
 		}
 	}
@@ -214,6 +211,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 * Ages all entries in the delivery predictions.
 	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
 	 * time units that have elapsed since the last time the metric was aged.
+	 * The entries are aged lazily by the {@link PredictabilityTable}.
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
@@ -225,18 +223,16 @@ public class ProphetV2Router extends ActiveRouter {
 		}
 		
 		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
+		preds.age(mult);
 		
 		this.lastAgeUpdate = SimClock.getTime();
 	}
 	
 	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns this router's delivery predictions
+	 * @return this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private PredictabilityTable getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -265,8 +261,6 @@ public class ProphetV2Router extends ActiveRouter {
 		List<Tuple<Message, Connection>> messages = 
 			new ArrayList<Tuple<Message, Connection>>(); 
 	
-		Collection<Message> msgCollection = getMessageCollection();
-		
 		/* for all connected hosts collect all messages that have a higher
 		   probability of delivery by the other host */
 		for (Connection con : getConnections()) {
@@ -277,10 +271,8 @@ public class ProphetV2Router extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 			
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
+			/* skip messages that the other one has */
+			for (Message m : getMessagesNotIn(othRouter.getSummaryVector())) {
 				if((othRouter.getPredFor(m.getTo()) >= getPredFor(m.getTo())))
 				{
 				
@@ -338,9 +330,12 @@ public class ProphetV2Router extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < preds.getCapacity(); i++) {
+			DTNHost host = preds.getHost(i);
+			if (host == null) {
+				continue;
+			}
+			Double value = preds.get(i);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -190,8 +190,7 @@ public class RapidRouter extends ActiveRouter {
 		
 		for (Message m : getMessageCollection()) {
 			int to = m.getTo().getAddress();
-			MeetingEntry entry = otherRouter.getDelayTable().getMeetingEntry(from, to);
-			if (entry != null) {
+			if (otherRouter.getDelayTable().hasMet(from, to)) {
 				delayTable.getDelayEntryByMessageId(m.getId()).setChanged(true);
 			}
 		}
@@ -256,33 +255,9 @@ public class RapidRouter extends ActiveRouter {
 	private void synchronizeMeetingTimes(Connection con) {
 		DTNHost otherHost = con.getOtherNode(getHost());
 		RapidRouter otherRouter = (RapidRouter) otherHost.getRouter();
-		MeetingEntry meetingEntry = null;
-		MeetingEntry otherMeetingEntry = null;
 		
-		//synchronize all meeting time entries
-		for (int i = 0; i < delayTable.getMeetingMatrixDimension(); i++) {
-			for (int k = 0; k < delayTable.getMeetingMatrixDimension(); k++) {
-				meetingEntry = delayTable.getMeetingEntry(i, k);
-				
-				if (meetingEntry != null) {
-					otherMeetingEntry = otherRouter.delayTable.getMeetingEntry(i, k);
-					//create a new meeting entry if meeting entry at other host doesn't exist
-					if (otherMeetingEntry == null){
-						otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-					}
-					else {
-						//check last update time of other hosts entry and update it 
-						if (otherMeetingEntry.isOlderThan(meetingEntry.getLastUpdate())) {
-							otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-						}
-						
-						if ((otherMeetingEntry.isAsOldAs(meetingEntry.getLastUpdate())) && (meetingEntry.getAvgMeetingTime() > otherMeetingEntry.getAvgMeetingTime())) {							
-							otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-						}
-					}
-				}
-			}
-		}
+		//synchronize the meeting time entries changed since the last contact
+		delayTable.pushMeetingTimes(otherRouter.delayTable);
 	}
 	
 	private void synchronizeAckedMessageIDs(Connection con) {
@@ -642,7 +617,7 @@ public class RapidRouter extends ActiveRouter {
 
 			double mu=0.0;
 			for (Message m : msgCollection) {
-				if (otherRouter.hasMessage(m.getId())) {
+				if (otherRouter.hasMessage(m)) {
 					continue; // skip messages that the other one already has
 				}
 				
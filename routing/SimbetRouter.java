@@ -113,18 +113,18 @@ public class SimbetRouter extends ActiveRouter
 				
 				if(Contacmatric.IsNull())
 				{
-					Contacmatric.initialContactTable(getHost().toString());			
+					Contacmatric.initialContactTable(getHost());			
 				}
 				
 				if( otherRouter.Contacmatric.IsNull() )
 				{
-					otherRouter.Contacmatric.initialContactTable(otherNode.toString());
+					otherRouter.Contacmatric.initialContactTable(otherNode);
 				}
 				
 			}
 			
 			UpdateSimilar(myHost, otherNode);
-			Contacmatric.AddNode( otherNode );
+			Contacmatric.AddNode( otherNode, otherRouter.getContactTable() );
 			
 			/*
 			 * Once we have new information computed for the peer, we figure out if
@@ -256,7 +256,7 @@ public class SimbetRouter extends ActiveRouter
 		
 		if (isFirstDelivery)
 		{
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(aMessage.getIdHandle(), aMessage);
 		}
 		int rule = 0;//no use
 	    //	System.out.println(aMessage.getId()+"--"+from.toString()+"--"+ getHost().toString());
@@ -345,7 +345,7 @@ public class SimbetRouter extends ActiveRouter
 			
 	}
 	
-	protected boolean TablecontactedWith( String from )
+	protected boolean TablecontactedWith( DTNHost from )
 	{
 		return Contacmatric.Tablecontains( from ) ;
 	}
@@ -440,11 +440,11 @@ public class SimbetRouter extends ActiveRouter
 		ContactTable  myContactTable = (( SimbetRouter )Node.getRouter()).getContactTable();
 		
 		int simvalue = 0;
-		if( myContactTable.Tablecontains( m.getTo().toString() ) )
+		if( myContactTable.Tablecontains( m.getTo() ) )
 		{
 			simvalue = myContactTable.computeSimilar( m );
 			//System.out.println(simvalue);		
-		}else if( myContactTable.IndirectTablecontains( m.getTo().toString() ) )
+		}else if( myContactTable.IndirectTablecontains( m.getTo() ) )
 		{
 			simvalue = myContactTable.getindirectSim( m );
 		}
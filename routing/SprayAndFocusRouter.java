@@ -26,7 +26,6 @@ public class SprayAndFocusRouter extends ActiveRouter
 	
 	protected static final String SUMMARY_XCHG_IDPREFIX = "summary";
 	protected static final double defaultTransitivityThreshold = 60.0;
-	protected static int protocolMsgIdx = 0;
 	
 	protected int initialNrofCopies;
 	protected double transitivityTimerThreshold;
@@ -113,7 +112,8 @@ public class SprayAndFocusRouter extends ActiveRouter
 		 * Map and attach it to a message.
 		 */
 		int msgSize = recentEncounters.size() * 64 + getMessageCollection().size() * 8;
-		Message newMsg = new Message(thisHost, peer, SUMMARY_XCHG_IDPREFIX + protocolMsgIdx++, msgSize);
+		Message newMsg = new Message(thisHost, peer, SUMMARY_XCHG_IDPREFIX + ((State)SimContext.getCurrent().getState(
+				SprayAndFocusRouter.class)).protocolMsgIdx++, msgSize);
 		newMsg.addProperty(SUMMARY_XCHG_PROP, /*new HashMap<DTNHost, EncounterInfo>(*/recentEncounters);
 		
 		createNewMessage(newMsg);
@@ -320,6 +320,23 @@ public class SprayAndFocusRouter extends ActiveRouter
 			return 0.0;
 	}
 	
+	/**
+	 * Resets the summary message counter (of the current simulation run)
+	 */
+	public static void reset()
+	{
+		SimContext.getCurrent().setState(SprayAndFocusRouter.class, new State());
+	}
+	
+	/**
+	 * Per simulation run state of the Spray and Focus routers
+	 */
+	private static class State
+	{
+		/** index for the IDs of the summary exchange messages */
+		protected int protocolMsgIdx = 0;
+	}
+	
 	/**
 	 * Stores all necessary info about encounters made by this host to some other host.
 	 * At the moment, all that's needed is the timestamp of the last time these two hosts
@@ -1,39 +1,71 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The links and the shortest path trees are stored in arrays indexed
+ * by the node indexes (addresses). The link arrays are the ones of the
+ * probability sets, so a set whose arrays have not been replaced has not
+ * changed. Shortest path trees are cached per
+ * source node and, when the probability sets change, repaired only where
+ * the changed link costs affect them.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Value for "no node" in node index arrays */
+	private static final int NO_NODE = -1;
+	/** Heap index of invalidated nodes that are not in the heap yet */
+	private static final int NOT_QUEUED = -2;
+	/** Initial size of the node index arrays */
+	private static final int INIT_SIZE = 16;
+	private static final int[] NO_NEIGHBORS = new int[0];
+	private static final double[] NO_PROBS = new double[0];
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+	/** Length of the node index arrays */
+	private int size;
+	/** Neighbors of each node in ascending order (the nodes whose meeting
+	 * probability the node's set has) */
+	private int[][] neighbors;
+	/** Meeting probabilities of the links to the neighbors, in the same
+	 * order as the neighbors (the cost of a link is the complement of its
+	 * probability) */
+	private double[][] linkProbs;
+	/** Cached shortest path trees by their source node */
+	private PathTree[] trees;
+
+	/** Indexed binary heap of nodes whose distance is not final yet */
+	private int[] heap;
+	/** Positions of the nodes in the heap (or NO_NODE) */
+	private int[] heapIndex;
+	private int heapSize;
+
+	/** Nodes whose distance was invalidated in a repair */
+	private int[] invalid;
+	private int nrofInvalid;
+	/** Children lists of a tree (built for invalidating subtrees) */
+	private int[] firstChild;
+	private int[] nextSibling;
+	/** Nodes whose links changed in the latest update */
+	private int[] changed;
+	private int nrofChanged;
+	/** Previous neighbors and link probabilities of the changed nodes */
+	private int[][] changedNeighbors;
+	private double[][] changedProbs;
+	/** Marks of the nodes present in the latest probability mapping */
+	private int[] seenRound;
+	private int round;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,184 +73,444 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.size = 0;
+		this.round = 0;
+		grow(INIT_SIZE);
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
-	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
-	}
-	
-	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes. The probability sets are
+	 * re-read before the calculation.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-		
-		initWith(from);
-		Integer node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+
+		updateCosts();
+		for (Integer node : to) {
+			double cost = getCost(from, node);
+			if (cost != INFINITY) {
+				distMap.put(node, cost);
+			}
 		}
-			
+
 		return distMap;
 	}
-	
+
+	/**
+	 * Returns the total cost from a node to another node using the link
+	 * costs of the latest {@link #updateCosts()} call. The shortest path
+	 * tree of the start node is calculated if it is not cached.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost of the cheapest path or Double.MAX_VALUE if there is
+	 * no known path
+	 */
+	public double getCost(int from, int to) {
+		if (from >= size) {
+			grow(from + 1);
+		}
+
+		PathTree tree = trees[from];
+		if (tree == null) {
+			tree = new PathTree(from);
+			trees[from] = tree;
+		}
+		tree.used = true;
+
+		return to < size ? tree.dist[to] : INFINITY;
+	}
+
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Re-reads the probability sets and repairs the cached shortest path
+	 * trees whose paths are affected by changed link costs. Trees where
+	 * the links of more than one reachable node changed are calculated
+	 * again when they are needed next time, and trees that have not been
+	 * used since the previous update are dropped from the cache.
+	 * Must be called when the probability sets may have changed.
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+	public void updateCosts() {
+		for (int i = 0; i < size; i++) {
+			if (trees[i] != null) {
+				if (trees[i].used) {
+					trees[i].used = false;
+				}
+				else {
+					trees[i] = null;
+				}
 			}
 		}
+
+		nrofChanged = 0;
+		round++;
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			int node = e.getKey();
+			if (node >= size) {
+				grow(node + 1);
+			}
+			seenRound[node] = round;
+
+			MeetingProbabilitySet set = e.getValue();
+			if (!sameLinks(node, set)) {
+				setLinks(node, set);
+			}
+		}
+
+		/* nodes whose probability sets have been removed have no links */
+		for (int i = 0; i < size; i++) {
+			if (seenRound[i] != round && neighbors[i].length > 0) {
+				changeLinks(i, NO_NEIGHBORS, NO_PROBS);
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			PathTree tree = trees[i];
+			if (tree == null) {
+				continue;
+			}
+			int affecting = NO_NODE;
+			for (int k = 0; k < nrofChanged; k++) {
+				if (tree.dist[changed[k]] == INFINITY) {
+					continue; // links of unreachable nodes are not used
+				}
+				if (affecting != NO_NODE) {
+					affecting = NO_NODE;
+					trees[i] = null;
+					break;
+				}
+				affecting = k;
+			}
+			if (affecting != NO_NODE) {
+				tree.repair(changed[affecting], changedNeighbors[affecting],
+						changedProbs[affecting]);
+			}
+		}
+
+		Arrays.fill(changedNeighbors, 0, nrofChanged, null);
+		Arrays.fill(changedProbs, 0, nrofChanged, null);
 	}
-	
+
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Returns true if the stored links of a node are the ones of the given
+	 * probability set. The arrays of a set are replaced whenever its values
+	 * change, so comparing the references is enough.
+	 * @param node The node
+	 * @param set The meeting probability set of the node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private boolean sameLinks(int node, MeetingProbabilitySet set) {
+		int[] n = set.getNodes();
+		if (n.length == 0) {
+			return neighbors[node].length == 0;
+		}
+		return neighbors[node] == n && linkProbs[node] == set.getProbs();
 	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Stores the links of a node from its probability set
+	 * @param node The node
+	 * @param set The meeting probability set of the node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void setLinks(int node, MeetingProbabilitySet set) {
+		int[] n = set.getNodes();
+		if (n.length > 0 && n[n.length - 1] >= size) {
+			grow(n[n.length - 1] + 1);
+		}
+		changeLinks(node, n, set.getProbs());
 	}
-	
+
+	/**
+	 * Replaces the links of a node and stores the old ones for repairing
+	 * the cached trees
+	 * @param node The node
+	 * @param n The new neighbors of the node (in ascending order)
+	 * @param p The probabilities of the links to the new neighbors
+	 */
+	private void changeLinks(int node, int[] n, double[] p) {
+		changed[nrofChanged] = node;
+		changedNeighbors[nrofChanged] = neighbors[node];
+		changedProbs[nrofChanged] = linkProbs[node];
+		nrofChanged++;
+
+		neighbors[node] = n;
+		linkProbs[node] = p;
+	}
+
+	/**
+	 * Grows the node index arrays
+	 * @param minSize The minimum length of the arrays
+	 */
+	private void grow(int minSize) {
+		int newSize = Math.max(minSize, 2 * size);
+
+		neighbors = Arrays.copyOf(neighbors == null ? new int[0][] : neighbors,
+				newSize);
+		linkProbs = Arrays.copyOf(linkProbs == null ? new double[0][] :
+			linkProbs, newSize);
+		for (int i = size; i < newSize; i++) {
+			neighbors[i] = NO_NEIGHBORS;
+			linkProbs[i] = NO_PROBS;
+		}
+		trees = Arrays.copyOf(trees == null ? new PathTree[0] : trees,
+				newSize);
+		for (int i = 0; i < size; i++) {
+			if (trees[i] != null) {
+				trees[i].grow(newSize);
+			}
+		}
+
+		heap = new int[newSize];
+		heapIndex = new int[newSize];
+		Arrays.fill(heapIndex, NO_NODE);
+		invalid = new int[newSize];
+		firstChild = new int[newSize];
+		nextSibling = new int[newSize];
+		changed = Arrays.copyOf(changed == null ? new int[0] : changed,
+				newSize);
+		changedNeighbors = Arrays.copyOf(changedNeighbors == null ?
+				new int[0][] : changedNeighbors, newSize);
+		changedProbs = Arrays.copyOf(changedProbs == null ?
+				new double[0][] : changedProbs, newSize);
+		seenRound = seenRound == null ? new int[newSize] :
+			Arrays.copyOf(seenRound, newSize);
+
+		size = newSize;
+	}
+
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Shortest path tree from a source node
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
+	private class PathTree {
+		/** Distances of the nodes from the source node */
+		private double[] dist;
+		/** Previous nodes on the shortest paths */
+		private int[] parent;
+		/** Has the tree been used since the last update */
+		private boolean used;
+
+		/**
+		 * Calculates the shortest path tree of a source node
+		 * @param source The source node
+		 */
+		public PathTree(int source) {
+			this.dist = new double[size];
+			this.parent = new int[size];
+			Arrays.fill(dist, INFINITY);
+			Arrays.fill(parent, NO_NODE);
+
+			dist[source] = 0;
+			startSearch();
+			push(source);
+			search();
+		}
+
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Grows the arrays (new nodes are unreachable)
+		 * @param newSize The new length of the arrays
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+		public void grow(int newSize) {
+			int oldSize = dist.length;
+			dist = Arrays.copyOf(dist, newSize);
+			parent = Arrays.copyOf(parent, newSize);
+			Arrays.fill(dist, oldSize, newSize, INFINITY);
+			Arrays.fill(parent, oldSize, newSize, NO_NODE);
+		}
+
+		/**
+		 * Repairs the tree after the links of a node have changed. The node's
+		 * new links must already be stored.
+		 * @param node The node whose links changed
+		 * @param oldN The previous neighbors of the node
+		 * @param oldP The previous link probabilities of the node
+		 */
+		public void repair(int node, int[] oldN, double[] oldP) {
+			if (dist[node] == INFINITY) {
+				return; // the node is not on any path of this tree
 			}
-			else if (dist1 < dist2) {
-				return -1;
+
+			/* nodes whose path went over a link that was removed or got more
+			 * expensive must find a new path */
+			int[] n = neighbors[node];
+			double[] p = linkProbs[node];
+			nrofInvalid = 0;
+			for (int i = 0, j = 0; i < oldN.length; i++) {
+				while (j < n.length && n[j] < oldN[i]) {
+					j++;
+				}
+				boolean removed = j == n.length || n[j] != oldN[i];
+				if (parent[oldN[i]] == node &&
+						(removed || 1 - p[j] > 1 - oldP[i])) {
+					invalid[nrofInvalid++] = oldN[i];
+				}
+			}
+
+			startSearch();
+			if (nrofInvalid > 0) {
+				invalidateSubtrees();
+				reconnectInvalid();
 			}
-			else {
-				return node1.compareTo(node2);
+
+			/* nodes that got a cheaper link */
+			if (dist[node] != INFINITY) {
+				for (int i = 0; i < n.length; i++) {
+					relax(node, n[i], 1 - p[i]);
+				}
 			}
+
+			search();
 		}
-	}
-	
-	/**
-	 * Simple Map implementation for storing distances. 
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
+
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Marks the subtrees of the invalid nodes invalid too and sets their
+		 * distances to infinite
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
+		private void invalidateSubtrees() {
+			Arrays.fill(firstChild, NO_NODE);
+			for (int i = 0; i < size; i++) {
+				if (parent[i] != NO_NODE) {
+					nextSibling[i] = firstChild[parent[i]];
+					firstChild[parent[i]] = i;
+				}
+			}
+
+			for (int i = 0; i < nrofInvalid; i++) {
+				int v = invalid[i];
+				dist[v] = INFINITY;
+				parent[v] = NO_NODE;
+				for (int ch = firstChild[v]; ch != NO_NODE; ch = nextSibling[ch]) {
+					invalid[nrofInvalid++] = ch;
+				}
+			}
 		}
-		
+
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Gives the invalid nodes their cheapest distance over a link from
+		 * the nodes whose distance is still valid and puts them to the heap
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		private void reconnectInvalid() {
+			for (int i = 0; i < nrofInvalid; i++) {
+				heapIndex[invalid[i]] = NOT_QUEUED;
 			}
-			else {
-				return INFINITY;
+
+			for (int u = 0; u < size; u++) {
+				if (dist[u] == INFINITY) {
+					continue;
+				}
+				int[] n = neighbors[u];
+				double[] p = linkProbs[u];
+				for (int i = 0; i < n.length; i++) {
+					int v = n[i];
+					double d = dist[u] + (1 - p[i]);
+					if (heapIndex[v] == NOT_QUEUED && d < dist[v]) {
+						dist[v] = d;
+						parent[v] = u;
+					}
+				}
+			}
+
+			for (int i = 0; i < nrofInvalid; i++) {
+				int v = invalid[i];
+				heapIndex[v] = NO_NODE;
+				if (dist[v] != INFINITY) {
+					push(v);
+				}
 			}
 		}
-		
+
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Empties the heap for a new search
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		private void startSearch() {
+			heapSize = 0;
 		}
-		
+
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Takes the nodes from the heap in the order of their distance and
+		 * relaxes their links until the heap is empty
 		 */
-		public String toString() {
-			return map.toString();
+		private void search() {
+			while (heapSize > 0) {
+				int u = pop();
+				int[] n = neighbors[u];
+				double[] p = linkProbs[u];
+				for (int i = 0; i < n.length; i++) {
+					relax(u, n[i], 1 - p[i]);
+				}
+			}
+		}
+
+		/**
+		 * Updates the distance of a node if the path over the given link is
+		 * shorter than the current one
+		 * @param u The node where the link starts from
+		 * @param v The node where the link goes to
+		 * @param cost Cost of the link
+		 */
+		private void relax(int u, int v, double cost) {
+			double d = dist[u] + cost;
+			if (dist[v] > d) {
+				dist[v] = d;
+				parent[v] = u;
+				push(v);
+			}
+		}
+
+		/**
+		 * Compares the distances of two nodes (node index breaks ties)
+		 * @return true if node1 is closer to the source than node2
+		 */
+		private boolean closer(int node1, int node2) {
+			return dist[node1] < dist[node2] ||
+				(dist[node1] == dist[node2] && node1 < node2);
+		}
+
+		/**
+		 * Adds a node to the heap or moves it to its new place after its
+		 * distance got smaller
+		 */
+		private void push(int v) {
+			int i = heapIndex[v];
+			if (i == NO_NODE) {
+				i = heapSize++;
+			}
+			while (i > 0 && closer(v, heap[(i - 1) / 2])) {
+				heap[i] = heap[(i - 1) / 2];
+				heapIndex[heap[i]] = i;
+				i = (i - 1) / 2;
+			}
+			heap[i] = v;
+			heapIndex[v] = i;
+		}
+
+		/**
+		 * Removes and returns the node with the smallest distance from the
+		 * heap
+		 */
+		private int pop() {
+			int min = heap[0];
+			heapIndex[min] = NO_NODE;
+			int last = heap[--heapSize];
+			if (heapSize > 0) {
+				int i = 0;
+				while (2 * i + 1 < heapSize) {
+					int child = 2 * i + 1;
+					if (child + 1 < heapSize && closer(heap[child + 1], heap[child])) {
+						child++;
+					}
+					if (!closer(heap[child], last)) {
+						break;
+					}
+					heap[i] = heap[child];
+					heapIndex[heap[i]] = i;
+					i = child;
+				}
+				heap[i] = last;
+				heapIndex[last] = i;
+			}
+			return min;
 		}
 	}
-}
\ No newline at end of file
+}
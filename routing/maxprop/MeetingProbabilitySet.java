@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,17 +14,37 @@ import core.SimClock;
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * The probabilities are stored in primitive arrays that are never modified
+ * after they have been created: an update creates new arrays
+ * (copy-on-write). Replicas can thus share the arrays of the set they were
+ * replicated from, and the arrays of a set are replaced every time its
+ * values change.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** Initial capacity of the hash map the insertion order emulates */
+	private static final int DEFAULT_MAP_CAPACITY = 16;
+	private static final int[] NO_NODES = new int[0];
+	private static final double[] NO_PROBS = new double[0];
+
+	/** indexes of the nodes that have a meeting probability, in ascending
+	 * order */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * of the nodes, in the same order as the nodes */
+	private double[] probs;
+	/** insertion order numbers of the nodes. Together with the map capacity
+	 * these order equal probabilities like a hash map of the probabilities
+	 * would iterate them (when choosing the value to drop). */
+	private int[] insertions;
+	private int nextInsertion;
+	private int mapCapacity;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
-    private int maxSetSize;
-	
+	private int maxSetSize;
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
@@ -32,17 +53,24 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
-        if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
-        	this.maxSetSize = INFINITE_SET_SIZE;
-        } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
-            this.maxSetSize = maxSetSize;
-        }
+		this.nodes = NO_NODES;
+		this.probs = NO_PROBS;
+		this.insertions = NO_NODES;
+		this.nextInsertion = 0;
+		if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
+			this.maxSetSize = INFINITE_SET_SIZE;
+			this.mapCapacity = DEFAULT_MAP_CAPACITY;
+		} else {
+			this.maxSetSize = maxSetSize;
+			this.mapCapacity = 1;
+			while (this.mapCapacity < maxSetSize &&
+					this.mapCapacity < (1 << 30)) {
+				this.mapCapacity *= 2;
+			}
+		}
 		this.lastUpdateTime = 0;
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -50,86 +78,111 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet() {
 		this(INFINITE_SET_SIZE, 1);
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with equal probability for
 	 * all the given node indexes.
 	 */
-	public MeetingProbabilitySet(double alpha, 
+	public MeetingProbabilitySet(double alpha,
 				List<Integer> initiallyKnownNodes) {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
-	
+
 	/**
 	 * Updates meeting probability for the given node index.
 	 * <PRE> P(b) = P(b)_old + alpha
-	 * Normalize{P}</PRE> 
+	 * Normalize{P}</PRE>
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
+		int smallest = -1;
 
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+
+		if (nodes.length == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
-		
+
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue); // the probability array is a new copy now
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		 * normalize to one by dividing all the entries by 1+alpha */
+		for (int i = 0; i < probs.length; i++) {
+			probs[i] = probs[i] / (1+alpha);
+			if (smallest == -1 || probs[i] < probs[smallest] ||
+					(probs[i] == probs[smallest] &&
+							iteratedBefore(i, smallest))) {
+				smallest = i;
+			}
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
-        }
+		if (nodes.length >= maxSetSize) {
+			core.Debug.p("Probsize: " + nodes.length + " dropping " +
+					probs[smallest]);
+			remove(smallest);
+		}
 	}
-	
+
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
 	}
-	
+
 	/**
-	 * Returns the current delivery probability value for the given node index 
+	 * Returns the current delivery probability value for the given node index
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int i = Arrays.binarySearch(nodes, index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
 			return 0.0;
 		}
 	}
-	
+
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns a copy of the probability map of this probability set
+	 * @return a copy of the probability map of this probability set
 	 */
 	public Map<Integer, Double> getAllProbs() {
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i = 0; i < nodes.length; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the indexes of the nodes that have a meeting probability in
+	 * ascending order. The returned array is shared and must not be modified;
+	 * it is replaced by a new one when the set of nodes changes.
+	 * @return the indexes of the nodes
+	 */
+	public int[] getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Returns the meeting probabilities in the order of
+	 * {@link #getNodes()}. The returned array is shared and must not be
+	 * modified; it is replaced by a new one when any probability changes.
+	 * @return the meeting probabilities
+	 */
+	public double[] getProbs() {
 		return this.probs;
 	}
-	
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -137,37 +190,115 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
-	
+
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
 		this.alpha = alpha;
 	}
-	
+
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the (immutable)
+	 * probability arrays with this set, so replicating is cheap.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
-		
+
+		replica.nodes = this.nodes;
+		replica.probs = this.probs;
+		replica.insertions = this.insertions;
+		replica.nextInsertion = this.nextInsertion;
+		replica.mapCapacity = this.mapCapacity;
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
-	
+
+	/**
+	 * Sets the probability of a node. New arrays are created for the
+	 * changed values.
+	 * @param node Index of the node
+	 * @param value The new probability
+	 */
+	private void put(int node, double value) {
+		int i = Arrays.binarySearch(nodes, node);
+		if (i >= 0) {
+			probs = probs.clone();
+			probs[i] = value;
+			return;
+		}
+
+		i = -(i + 1);
+		int size = nodes.length + 1;
+		int[] newNodes = new int[size];
+		double[] newProbs = new double[size];
+		int[] newInsertions = new int[size];
+		System.arraycopy(nodes, 0, newNodes, 0, i);
+		System.arraycopy(probs, 0, newProbs, 0, i);
+		System.arraycopy(insertions, 0, newInsertions, 0, i);
+		System.arraycopy(nodes, i, newNodes, i + 1, size - i - 1);
+		System.arraycopy(probs, i, newProbs, i + 1, size - i - 1);
+		System.arraycopy(insertions, i, newInsertions, i + 1, size - i - 1);
+		newNodes[i] = node;
+		newProbs[i] = value;
+		newInsertions[i] = nextInsertion++;
+
+		nodes = newNodes;
+		probs = newProbs;
+		insertions = newInsertions;
+		if (size > (int)(mapCapacity * 0.75)) {
+			mapCapacity *= 2; // like a hash map with the default load factor
+		}
+	}
+
+	/**
+	 * Removes a node and its probability. New arrays are created for the
+	 * remaining values.
+	 * @param i Position of the node in the arrays
+	 */
+	private void remove(int i) {
+		int size = nodes.length - 1;
+		int[] newNodes = new int[size];
+		double[] newProbs = new double[size];
+		int[] newInsertions = new int[size];
+		System.arraycopy(nodes, 0, newNodes, 0, i);
+		System.arraycopy(probs, 0, newProbs, 0, i);
+		System.arraycopy(insertions, 0, newInsertions, 0, i);
+		System.arraycopy(nodes, i + 1, newNodes, i, size - i);
+		System.arraycopy(probs, i + 1, newProbs, i, size - i);
+		System.arraycopy(insertions, i + 1, newInsertions, i, size - i);
+
+		nodes = newNodes;
+		probs = newProbs;
+		insertions = newInsertions;
+	}
+
+	/**
+	 * Returns true if a hash map of the probabilities would iterate the node
+	 * at position i before the node at position j
+	 */
+	private boolean iteratedBefore(int i, int j) {
+		int bucketI = bucket(nodes[i]);
+		int bucketJ = bucket(nodes[j]);
+		return bucketI < bucketJ ||
+			(bucketI == bucketJ && insertions[i] < insertions[j]);
+	}
+
+	/**
+	 * Returns the hash map bucket of a node index
+	 */
+	private int bucket(int node) {
+		return (node ^ (node >>> 16)) & (mapCapacity - 1);
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
-    @Override
+	@Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.prophet;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+
+/**
+ * Delivery predictability table for the PRoPHET family of routers. The
+ * predictabilities are stored in arrays indexed by the host addresses.
+ * <P>
+ * Aging is applied lazily: {@link #age(double)} only logs the multiplier and
+ * every entry is multiplied by the multipliers it has missed when it is
+ * read. The multipliers are applied one by one in the order they were
+ * logged, so the values are exactly the same as if every aging step had
+ * been applied to all the entries right away.</P>
+ */
+public class PredictabilityTable {
+	/** Minimum length of the aging log */
+	private static final int MIN_LOG_SIZE = 64;
+
+	/** The hosts that have an entry (or null), indexed by address */
+	private DTNHost[] hosts;
+	/** Predictabilities of the hosts, aged up to their log position */
+	private double[] preds;
+	/** Positions in the aging log up to which the entries are aged */
+	private int[] logPositions;
+	/** Number of hosts that have an entry */
+	private int size;
+
+	/** Multipliers of the aging steps not yet applied to all entries */
+	private double[] agingLog;
+	private int logSize;
+
+	/**
+	 * Constructor. Creates an empty table.
+	 */
+	public PredictabilityTable() {
+		this.hosts = new DTNHost[0];
+		this.preds = new double[0];
+		this.logPositions = new int[0];
+		this.size = 0;
+		this.agingLog = new double[MIN_LOG_SIZE];
+		this.logSize = 0;
+	}
+
+	/**
+	 * Ages all the entries by multiplying them with the given multiplier.
+	 * @param mult The multiplier
+	 */
+	public void age(double mult) {
+		if (logSize == agingLog.length) {
+			ageAll();
+			if (agingLog.length < hosts.length) {
+				agingLog = new double[hosts.length];
+			}
+		}
+		agingLog[logSize++] = mult;
+	}
+
+	/**
+	 * Applies all the logged aging steps to all the entries and empties
+	 * the aging log
+	 */
+	public void ageAll() {
+		for (int i = 0; i < hosts.length; i++) {
+			if (hosts[i] != null) {
+				get(i);
+			}
+			logPositions[i] = 0;
+		}
+		logSize = 0;
+	}
+
+	/**
+	 * Returns the predictability for a host
+	 * @param host The host
+	 * @return The predictability or 0 if the host has no entry
+	 */
+	public double get(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= hosts.length || hosts[address] == null) {
+			return 0;
+		}
+		return get(address);
+	}
+
+	/**
+	 * Returns the predictability for a host address. The address must have
+	 * an entry.
+	 * @param address Address of the host
+	 * @return The predictability
+	 */
+	public double get(int address) {
+		double value = preds[address];
+		for (int i = logPositions[address]; i < logSize; i++) {
+			value *= agingLog[i];
+		}
+		preds[address] = value;
+		logPositions[address] = logSize;
+		return value;
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param host The host
+	 * @param value The (already aged) predictability
+	 */
+	public void set(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= hosts.length) {
+			grow(address + 1);
+		}
+		if (hosts[address] == null) {
+			hosts[address] = host;
+			size++;
+		}
+		preds[address] = value;
+		logPositions[address] = logSize;
+	}
+
+	/**
+	 * Returns the host of an address if it has an entry
+	 * @param address The address
+	 * @return The host or null if the address has no entry
+	 */
+	public DTNHost getHost(int address) {
+		return address < hosts.length ? hosts[address] : null;
+	}
+
+	/**
+	 * Returns the upper bound (exclusive) of the addresses that have an entry
+	 * @return The upper bound of the addresses
+	 */
+	public int getCapacity() {
+		return hosts.length;
+	}
+
+	/**
+	 * Returns the number of hosts that have an entry
+	 * @return The number of hosts that have an entry
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Grows the address indexed arrays
+	 * @param minSize The minimum length of the arrays
+	 */
+	private void grow(int minSize) {
+		int newSize = Math.max(minSize, 2 * hosts.length);
+		hosts = Arrays.copyOf(hosts, newSize);
+		preds = Arrays.copyOf(preds, newSize);
+		logPositions = Arrays.copyOf(logPositions, newSize);
+	}
+}
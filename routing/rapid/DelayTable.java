@@ -9,6 +9,7 @@
  */
 package routing.rapid;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,11 +37,42 @@ public class DelayTable {
 	private DTNHost host;
 	//Delay entries for a specified message id
 	private HashMap<String, DelayEntry> delayTable;
-	//Meeting entry for meeting of two hosts (DTNHosts)
-	private MeetingEntry[][] meetingEntry;
+	/* Meeting entries for meetings of two hosts (DTNHosts) as parallel
+	 * arrays, numbered in the order the entries are created */
+	private int nrofEntries;
+	private int[] entryFrom;
+	private int[] entryTo;
+	private double[] meetingTimes;
+	private double[] meetingUpdates;
+	private int[] meetingWeights;
+	private byte[] meetingFlags;
+	/** Version of this table when the meeting entry was last changed */
+	private long[] meetingVersions;
+	/* existing meeting entries as a list ordered by version (newest first) */
+	private int[] olderEntry;
+	private int[] newerEntry;
+	private int newestEntry;
+	/** Numbers of the meeting entries by [from][to] (NO_ENTRY if the hosts 
+	 * haven't met). A row is created when it gets its first entry. */
+	private int[][] entryNumbers;
+	/** Buffer for a column of the entry numbers */
+	private int[] column;
+	/** Current version of the meeting entries */
+	private long meetingVersion;
+	/** Version of the meeting entries last pushed to each peer (by address) */
+	private long[] pushedVersions;
 	/** IDs of the messages that are known to have reached the final destination */
 	private Set<String> ackedMessageIds;
 	
+	/** Meeting entry flag: entry exists */
+	private static final byte ENTRY_EXISTS = 1;
+	/** Meeting entry flag: entry is a dummy entry of an ongoing first meeting */
+	private static final byte ENTRY_DUMMY = 2;
+	/** Initial capacity of the entry arrays */
+	private static final int INITIAL_CAPACITY = 16;
+	/** Value of the list links and entry numbers that don't point to any entry */
+	private static final int NO_ENTRY = -1;
+	
 	/**
 	 * Constructor. Creates a delay table with a specified matrix dimension
 	 * for the meeting time matrix
@@ -65,7 +97,21 @@ public class DelayTable {
 		
 		this.MATRIX_DIMENSION = 0;
 		delayTable = new HashMap<String, DelayEntry>();
-		meetingEntry = new MeetingEntry[MATRIX_DIMENSION][MATRIX_DIMENSION];
+		nrofEntries = 0;
+		entryFrom = new int[INITIAL_CAPACITY];
+		entryTo = new int[INITIAL_CAPACITY];
+		meetingTimes = new double[INITIAL_CAPACITY];
+		meetingUpdates = new double[INITIAL_CAPACITY];
+		meetingWeights = new int[INITIAL_CAPACITY];
+		meetingFlags = new byte[INITIAL_CAPACITY];
+		meetingVersions = new long[INITIAL_CAPACITY];
+		olderEntry = new int[INITIAL_CAPACITY];
+		newerEntry = new int[INITIAL_CAPACITY];
+		entryNumbers = new int[0][];
+		column = new int[0];
+		newestEntry = NO_ENTRY;
+		meetingVersion = 0;
+		pushedVersions = new long[0];
 		recomputeMatrix(matrixDim);
 		
 		// initialize variables with default values 
@@ -165,12 +211,10 @@ public class DelayTable {
 		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) recomputeMatrix(Math.max(from, to)+1);
 		
 		//create or update entry [from][to]
-		if (meetingEntry[from][to] == null) meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp);
-		else meetingEntry[from][to].set(meetingTime, timestamp, weight);
+		setEntry(entryFor(from, to), meetingTime, timestamp, weight);
 		
 		//create or update entry [to][from]
-		if (meetingEntry[to][from] == null) meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp);
-		else meetingEntry[to][from].set(meetingTime, timestamp, weight);
+		setEntry(entryFor(to, from), meetingTime, timestamp, weight);
 	}
 	
 	public void updateAvgMeetingTime(int from, int to, double meetingTime, double timestamp) {
@@ -191,23 +235,68 @@ public class DelayTable {
 		
 		if (dummy) {
 			//only create the dummy entry if no entry exists for this meeting
-			if (meetingEntry[from][to] != null) return;
-			assert (meetingEntry[to][from] == null); 
+			if (hasMet(from, to)) return;
+			assert (!hasMet(to, from)); 
 			
 			//create dummy entry [from][to] 
-			meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp, 0, true);
+			storeEntry(entryFor(from, to), meetingTime, timestamp, 0, ENTRY_EXISTS | ENTRY_DUMMY);
 			
 			//create dummy entry [to][from]
-			meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp, 0, true);
+			storeEntry(entryFor(to, from), meetingTime, timestamp, 0, ENTRY_EXISTS | ENTRY_DUMMY);
 		}
 		else {
 			//create or update entry [from][to]
-			if ((meetingEntry[from][to] == null) || (meetingEntry[from][to].isDummy())) meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp);
-			else meetingEntry[from][to].update(meetingTime, timestamp);
+			updateEntry(entryFor(from, to), meetingTime, timestamp);
 			
 			//create or update entry [to][from]
-			if ((meetingEntry[to][from] == null) || (meetingEntry[to][from].isDummy())) meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp);
-			else meetingEntry[to][from].update(meetingTime, timestamp);
+			updateEntry(entryFor(to, from), meetingTime, timestamp);
+		}
+	}
+	
+	/**
+	 * Pushes the meeting entries of this table to the delay table of a peer.
+	 * Only the entries that have changed since the previous push to the same
+	 * peer are offered; the peer takes the ones that are newer than its own.
+	 * @param other The delay table of the peer
+	 */
+	public void pushMeetingTimes(DelayTable other) {
+		int peer = other.host.getAddress();
+		if (peer >= pushedVersions.length) {
+			long[] versions = new long[Math.max(peer + 1, 2 * pushedVersions.length)];
+			System.arraycopy(pushedVersions, 0, versions, 0, pushedVersions.length);
+			pushedVersions = versions;
+		}
+		
+		long since = pushedVersions[peer];
+		for (int e = newestEntry; e != NO_ENTRY && meetingVersions[e] > since; e = olderEntry[e]) {
+			other.offerMeetingEntry(entryFrom[e], entryTo[e], meetingTimes[e], meetingUpdates[e], meetingWeights[e]);
+		}
+		pushedVersions[peer] = meetingVersion;
+	}
+	
+	/**
+	 * Takes a meeting entry of a peer if this table has no entry for the 
+	 * meeting or if the peer's entry is newer (or as new but with a longer
+	 * average meeting time)
+	 */
+	private void offerMeetingEntry(int from, int to, double meetingTime, double timestamp, int weight) {
+		//create a new meeting entry if meeting entry doesn't exist
+		if (!hasMet(from, to)) {
+			setAvgMeetingTime(from, to, meetingTime, timestamp, weight);
+			return;
+		}
+		
+		int e = indexOf(from, to);
+		double myTime = meetingTimes[e];
+		double myUpdate = meetingUpdates[e];
+		
+		//check last update time of the entry and update it 
+		if (myUpdate < timestamp) {
+			setAvgMeetingTime(from, to, meetingTime, timestamp, weight);
+		}
+		
+		if ((myUpdate == timestamp) && (meetingTime > myTime)) {
+			setAvgMeetingTime(from, to, meetingTime, timestamp, weight);
 		}
 	}
 	
@@ -235,16 +324,23 @@ public class DelayTable {
 		int count = 0;
 		
 		for (int i = 0; i < MATRIX_DIMENSION; i++) {
-			MeetingEntry entry = getMeetingEntry(from, i);
-			if (entry != null) count = count + entry.getWeight(); 
+			if (hasMet(from, i)) count = count + meetingWeights[indexOf(from, i)]; 
 		}
 		
 		return count;
 	}
 	
+	/**
+	 * Returns a copy of the meeting entry of two hosts or null if the hosts 
+	 * are not known to have met
+	 * @param from The index of the first DTNHost
+	 * @param to The index of the second DTNHost
+	 * @return The meeting entry or null
+	 */
 	public MeetingEntry getMeetingEntry(int from, int to) {
-		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) return null;
-		return meetingEntry[from][to];
+		if (!hasMet(from, to)) return null;
+		int e = indexOf(from, to);
+		return new MeetingEntry(meetingTimes[e], meetingUpdates[e], meetingWeights[e], (meetingFlags[e] & ENTRY_DUMMY) != 0);
 	}
 		
 	public MeetingEntry getIndirectMeetingEntry(int from, int to) {
@@ -253,32 +349,42 @@ public class DelayTable {
 		if (entry != null) return entry;
 		//find an indirect meeting entry (3 hops) if one exists
 		else {
-			MeetingEntry maxEntry = new MeetingEntry(-1, 0);
-			MeetingEntry entry0;
-			MeetingEntry entry1;
-			MeetingEntry entry2;
-			for (int i=0; i<MATRIX_DIMENSION; i++) {
-				if (hasMet(from, i) /*|| hasMeeting(from, i)*/) {
+			//the combined entry of a path has the minimum values of its hops
+			double maxTime = -1;
+			double maxUpdate = 0;
+			int maxWeight = 1;
+			//go through the existing entries of the rows in column order
+			int[] fromRow = (from < MATRIX_DIMENSION) ? entryNumbers[from] : null;
+			int fromLength = (fromRow == null) ? 0 : Math.min(fromRow.length, MATRIX_DIMENSION);
+			int[] toColumn = getColumn(to);
+			for (int i=0; i<fromLength; i++) {
+				int e0 = fromRow[i];
+				if (e0 != NO_ENTRY /*|| hasMeeting(from, i)*/) {
+					int[] row = entryNumbers[i];
+					int e1 = toColumn[i];
 					//find 2 hop neighbor
-					if (hasMet(i, to) /*|| hasMeeting(i, to)*/) {
-						entry0 = getMeetingEntry(from, i);
-						entry1 = getMeetingEntry(i, to);
-						entry = createMeetingEntry(entry0, entry1);
-						if ((entry.getAvgMeetingTime()*entry.getWeight()) > (maxEntry.getAvgMeetingTime()*maxEntry.getWeight())) {
-							maxEntry = new MeetingEntry(entry);
+					if (e1 != NO_ENTRY /*|| hasMeeting(i, to)*/) {
+						double time = Math.min(meetingTimes[e0], meetingTimes[e1]);
+						int weight = Math.min(meetingWeights[e0], meetingWeights[e1]);
+						if ((time*weight) > (maxTime*maxWeight)) {
+							maxTime = time;
+							maxWeight = weight;
+							maxUpdate = Math.min(meetingUpdates[e0], meetingUpdates[e1]);
 						}						
 					}
 					//find 3 hop neighbor
-					else {
-						for (int k=0; k<MATRIX_DIMENSION; k++) {
-							if (hasMet(i, k) /*|| hasMeeting(i, k)*/) {
-								if (hasMet(k, to) /*|| hasMeeting(k, to)*/) {
-									entry0 = getMeetingEntry(from, i);
-									entry1 = getMeetingEntry(i, k);
-									entry2 = getMeetingEntry(k, to);
-									entry = createMeetingEntry(entry0, entry1, entry2);
-									if ((entry.getAvgMeetingTime()*entry.getWeight()) > (maxEntry.getAvgMeetingTime()*maxEntry.getWeight())) {
-										maxEntry = new MeetingEntry(entry);
+					else if (row != null) {
+						for (int k=0, n=Math.min(row.length, MATRIX_DIMENSION); k<n; k++) {
+							e1 = row[k];
+							if (e1 != NO_ENTRY /*|| hasMeeting(i, k)*/) {
+								int e2 = toColumn[k];
+								if (e2 != NO_ENTRY /*|| hasMeeting(k, to)*/) {
+									double time = Math.min(Math.min(meetingTimes[e0], meetingTimes[e1]), meetingTimes[e2]);
+									int weight = Math.min(Math.min(meetingWeights[e0], meetingWeights[e1]), meetingWeights[e2]);
+									if ((time*weight) > (maxTime*maxWeight)) {
+										maxTime = time;
+										maxWeight = weight;
+										maxUpdate = Math.min(Math.min(meetingUpdates[e0], meetingUpdates[e1]), meetingUpdates[e2]);
 									}	
 								}
 							}
@@ -286,7 +392,7 @@ public class DelayTable {
 					}
 				}
 			}
-			if ((maxEntry.getAvgMeetingTime()*maxEntry.getWeight()) > -1) return maxEntry;
+			if ((maxTime*maxWeight) > -1) return new MeetingEntry(maxTime, maxUpdate, maxWeight, false);
 		}
 		
 		return null; 
@@ -307,9 +413,40 @@ public class DelayTable {
 //		return (new MeetingEntry(DUMMY_AVG_MEETING_TIME));
 //	}
 	
-	private boolean hasMet(int from, int to) {
+	/**
+	 * Returns true if the table has a meeting entry for the two hosts
+	 * @param from The index of the first DTNHost
+	 * @param to The index of the second DTNHost
+	 * @return true if the hosts are known to have met
+	 */
+	public boolean hasMet(int from, int to) {
 		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) return false;
-		return (meetingEntry[from][to]!=null);
+		return entryAt(entryNumbers[from], to) != NO_ENTRY;
+	}
+	
+	/**
+	 * Returns the entry numbers of a column of the matrix (NO_ENTRY for the
+	 * rows without an entry in the column). The returned array is reused by
+	 * the next call.
+	 * @param to The column
+	 * @return The entry numbers, indexed by the row
+	 */
+	private int[] getColumn(int to) {
+		if (column.length < MATRIX_DIMENSION) column = new int[entryNumbers.length];
+		for (int i = 0; i < MATRIX_DIMENSION; i++) {
+			column[i] = entryAt(entryNumbers[i], to);
+		}
+		return column;
+	}
+	
+	/**
+	 * Returns the number of the entry in a column of a row of the matrix or
+	 * NO_ENTRY if the row doesn't have an entry there
+	 * @param row The row or null if the row has no entries
+	 * @param to The column
+	 */
+	private static int entryAt(int[] row, int to) {
+		return ((row == null) || (to >= row.length)) ? NO_ENTRY : row[to];
 	}
 	
 //	private boolean hasMeeting(int from, int to) {
@@ -322,70 +459,111 @@ public class DelayTable {
 //		return false;
 //	}
 	
-	private double getMinimum(double[] values) {
-		if ((values == null) || (values.length == 0)) return -1;
-		double min = values[0];
-		
-		for (int i = 1; i < values.length; i++) {
-			min = Math.min(min, values[i]);
+	/**
+	 * Recompute the new dimension of the matrix (the new dimension has to 
+	 * be lager than the old one). The rows of the matrix are created and
+	 * grown only when entries are added to them, so the memory used follows
+	 * the number of entries and the number of hosts that have them.
+	 * @param dimension The new size of the matrix
+	 */
+	private void recomputeMatrix(int dimension) {
+		assert (dimension >= MATRIX_DIMENSION);
+		MATRIX_DIMENSION = dimension;
+		if (dimension > entryNumbers.length) {
+			entryNumbers = Arrays.copyOf(entryNumbers, Math.max(dimension, 2 * entryNumbers.length));
 		}
-		
-		return min;
 	}
 	
-	private int getMinimum(int[] values) {
-		if ((values == null) || (values.length == 0)) return -1;
-		int min = values[0];
-		
-		for (int i = 1; i < values.length; i++) {
-			min = Math.min(min, values[i]);
+	/**
+	 * Returns the number of the existing meeting entry [from][to]
+	 */
+	private int indexOf(int from, int to) {
+		return entryNumbers[from][to];
+	}
+	
+	/**
+	 * Returns the number of the meeting entry [from][to]. If the entry 
+	 * doesn't exist, a new empty entry is created for it.
+	 */
+	private int entryFor(int from, int to) {
+		int[] row = entryNumbers[from];
+		if ((row == null) || (to >= row.length)) {
+			int oldLength = (row == null) ? 0 : row.length;
+			int[] newRow = (row == null) ? new int[to + 1] : Arrays.copyOf(row, Math.max(to + 1, 2 * oldLength));
+			Arrays.fill(newRow, oldLength, newRow.length, NO_ENTRY);
+			entryNumbers[from] = row = newRow;
 		}
+		if (row[to] != NO_ENTRY) return row[to];
 		
-		return min;
+		if (nrofEntries == meetingTimes.length) {
+			//grow the arrays geometrically so that entries are moved only seldom
+			int newCapacity = 2 * nrofEntries;
+			entryFrom = Arrays.copyOf(entryFrom, newCapacity);
+			entryTo = Arrays.copyOf(entryTo, newCapacity);
+			meetingTimes = Arrays.copyOf(meetingTimes, newCapacity);
+			meetingUpdates = Arrays.copyOf(meetingUpdates, newCapacity);
+			meetingWeights = Arrays.copyOf(meetingWeights, newCapacity);
+			meetingFlags = Arrays.copyOf(meetingFlags, newCapacity);
+			meetingVersions = Arrays.copyOf(meetingVersions, newCapacity);
+			olderEntry = Arrays.copyOf(olderEntry, newCapacity);
+			newerEntry = Arrays.copyOf(newerEntry, newCapacity);
+		}
+		int e = nrofEntries++;
+		entryFrom[e] = from;
+		entryTo[e] = to;
+		row[to] = e;
+		return e;
 	}
 	
-	private MeetingEntry createMeetingEntry(MeetingEntry ... entries) {
-		if ((entries == null) || (entries.length == 0)) return null;
-		double[] meetingTimes = new double[entries.length];
-		double[] meetingUpdates = new double[entries.length];;
-		int[] meetingWeights = new int[entries.length];;
-		
-		for (int i = 0; i < entries.length; i++) {
-			meetingTimes[i] = entries[i].getAvgMeetingTime();
-			meetingUpdates[i] = entries[i].getLastUpdate();
-			meetingWeights[i] = entries[i].getWeight();
+	/**
+	 * Sets the values of an entry like {@link MeetingEntry#set} (or creates
+	 * it like {@link MeetingEntry#MeetingEntry(double, double)})
+	 */
+	private void setEntry(int e, double meetingTime, double timestamp, int weight) {
+		if (meetingFlags[e] == 0) {
+			storeEntry(e, meetingTime, timestamp, 1, ENTRY_EXISTS);
+		}
+		else {
+			storeEntry(e, meetingTime, timestamp, weight, meetingFlags[e]);
 		}
-		
-		return (new MeetingEntry(getMinimum(meetingTimes), getMinimum(meetingUpdates), getMinimum(meetingWeights), false));
 	}
 	
 	/**
-	 * Recompute the new dimension of the matrix (the new dimension has to 
-	 * be lager than the old one) and copies old entries. All new entries 
-	 * were initialized with 'null'. 
-	 * @param dimension The new size of the matrix
+	 * Updates an entry like {@link MeetingEntry#update} (or creates it if it 
+	 * doesn't exist or is a dummy)
 	 */
-	private void recomputeMatrix(int dimension) {
-		assert (dimension >= MATRIX_DIMENSION);
-		//create matrix of new dimension 
-		MeetingEntry[][] entry = new MeetingEntry[dimension][dimension];
-		
-		//copy old entries into new matrix
-		for (int i = 0; i < MATRIX_DIMENSION; i++) {
-			for (int k = 0; k < MATRIX_DIMENSION; k++) { 
-				entry[i][k] = meetingEntry[i][k];
-			}
+	private void updateEntry(int e, double meetingTime, double timestamp) {
+		if (meetingFlags[e] != ENTRY_EXISTS) {
+			storeEntry(e, meetingTime, timestamp, 1, ENTRY_EXISTS);
 		}
-		
-		//initialize new entries with 'null'
-		for (int i = MATRIX_DIMENSION; i < dimension; i++) {
-			for (int k = MATRIX_DIMENSION; k < dimension; k++) {
-				entry[i][k] = null;
-			}
+		else {
+			int weight = meetingWeights[e];
+			double avgMeetingTime = (((weight * meetingTimes[e]) + meetingTime) / (weight + 1));
+			storeEntry(e, avgMeetingTime, timestamp, weight + 1, ENTRY_EXISTS);
+		}
+	}
+	
+	/**
+	 * Stores the values of an entry and makes it the newest entry of the table
+	 */
+	private void storeEntry(int e, double meetingTime, double timestamp, int weight, int flags) {
+		if (meetingFlags[e] != 0) {
+			//unlink from the version list
+			if (newestEntry == e) newestEntry = olderEntry[e];
+			else olderEntry[newerEntry[e]] = olderEntry[e];
+			if (olderEntry[e] != NO_ENTRY) newerEntry[olderEntry[e]] = newerEntry[e];
 		}
 		
-		MATRIX_DIMENSION = dimension;
-		meetingEntry = entry;
+		meetingTimes[e] = meetingTime;
+		meetingUpdates[e] = timestamp;
+		meetingWeights[e] = weight;
+		meetingFlags[e] = (byte)flags;
+		meetingVersions[e] = ++meetingVersion;
+		
+		olderEntry[e] = newestEntry;
+		newerEntry[e] = NO_ENTRY;
+		if (newestEntry != NO_ENTRY) newerEntry[newestEntry] = e;
+		newestEntry = e;
 	}
 	
 	/**
@@ -49,6 +49,21 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(LongHashSetTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
+		suite.addTestSuite(IdHandleSetTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(ContactTableTest.class);
+		suite.addTestSuite(ParallelSimulationTest.class);
+		suite.addTestSuite(ContactPredictorTest.class);
+		suite.addTestSuite(DelayTableTest.class);
+		suite.addTestSuite(EventQueueHeapTest.class);
+		suite.addTestSuite(ConnectivityTraceReportTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
+		suite.addTestSuite(MeetingProbabilitySetTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(TransferCompletionQueueTest.class);
+		suite.addTestSuite(MessageExpiryQueueTest.class);
 		//$JUnit-END$
 		return suite;
 	}
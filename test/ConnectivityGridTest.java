@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.NearInterfaceVisitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimContext;
+
+/**
+ * Tests finding the near interfaces with the {@link ConnectivityGrid}
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double RANGE = 10;
+
+	private List<NetworkInterface> interfaces;
+	private ConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		this.interfaces = new ArrayList<NetworkInterface>();
+
+		/* hosts on the cell borders and corners (the cell size is the
+		 * range) and just before them */
+		for (int x = 0; x <= 40; x += 10) {
+			for (int y = 0; y <= 40; y += 10) {
+				addHost(utils, x, y);
+				addHost(utils, x + 5, y);
+				addHost(utils, x, y + 5);
+			}
+			addHost(utils, x + 9.999, x);
+			addHost(utils, x, x + 9.999);
+		}
+		Random rng = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			addHost(utils, rng.nextDouble() * 50, rng.nextDouble() * 50);
+		}
+
+		assertEquals(1, ConnectivityGrid.getGrids().size());
+		this.grid = ConnectivityGrid.getGrids().iterator().next();
+		/* the interfaces were added to the grid before the hosts got their
+		 * initial locations */
+		for (NetworkInterface ni : interfaces) {
+			grid.updateLocation(ni);
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testVisitNearInterfaces() {
+		for (NetworkInterface ni : interfaces) {
+			List<NetworkInterface> visited = visitNear(ni);
+			assertEquals(new ArrayList<NetworkInterface>(
+					grid.getNearInterfaces(ni)), visited);
+
+			for (NetworkInterface other : interfaces) {
+				if (distance(ni, other) <= RANGE) {
+					assertTrue(other + " not near " + ni,
+							visited.contains(other));
+				}
+			}
+		}
+	}
+
+	public void testNearInterfacesInRange() {
+		grid.takeInRangeSnapshots(new ForkJoinPool(2));
+		int nrofInRange = 0;
+
+		for (NetworkInterface ni : interfaces) {
+			assertTrue(ni.hasInRangeSnapshot());
+			List<NetworkInterface> expected = new ArrayList<NetworkInterface>();
+			expected.add(ni);
+			for (NetworkInterface other : visitNear(ni)) {
+				if (other != ni && distance(ni, other) <= RANGE) {
+					expected.add(other);
+				}
+			}
+			nrofInRange += expected.size() - 1;
+
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni);
+			assertEquals(expected, new ArrayList<NetworkInterface>(near));
+		}
+		assertTrue(nrofInRange > interfaces.size());
+
+		grid.clearInRangeSnapshots();
+		for (NetworkInterface ni : interfaces) {
+			assertEquals(visitNear(ni), new ArrayList<NetworkInterface>(
+					grid.getNearInterfaces(ni)));
+		}
+	}
+
+	private void addHost(TestUtils utils, double x, double y) {
+		DTNHost host = utils.createHost(new Coord(x, y));
+		this.interfaces.add(host.getInterfaces().get(0));
+	}
+
+	private List<NetworkInterface> visitNear(NetworkInterface ni) {
+		final List<NetworkInterface> visited =
+			new ArrayList<NetworkInterface>();
+		grid.visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				visited.add(near);
+			}
+		});
+		return visited;
+	}
+
+	private double distance(NetworkInterface ni1, NetworkInterface ni2) {
+		return ni1.getLocation().distance(ni2.getLocation());
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ColumnarEventsReader;
+import input.EventQueueHandler;
+import input.ExternalEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import report.ConnectivityTraceReport;
+import report.Report;
+import core.DTNHost;
+import core.SimClock;
+import core.SimScenario;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests recording a connectivity trace with {@link ConnectivityTraceReport}
+ * and replaying it with the {@link SimScenario#CONNECTION_TRACE_S} setting
+ */
+public class ConnectivityTraceReportTest extends TestCase {
+	private static final String OUTPUT_S = "ConnectivityTraceReport." +
+		Report.OUTPUT_SETTING;
+
+	private TestSettings ts;
+	private File outFile;
+	private File traceFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.ts = TestSimulation.createSettings();
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"300");
+
+		this.outFile = File.createTempFile("cttest", Report.OUT_SUFFIX);
+		String name = outFile.getAbsolutePath();
+		this.traceFile = new File(name.substring(0,
+				name.length() - Report.OUT_SUFFIX.length()) +
+				ColumnarEventsReader.COLUMNAR_EXT);
+		outFile.deleteOnExit();
+		traceFile.deleteOnExit();
+		ts.putSetting(OUTPUT_S, name);
+	}
+
+	public void testTraceRoundTrip() throws IOException {
+		List<String> recorded = connectionEvents(record());
+		assertTrue(recorded.size() > 100);
+
+		List<String> read = new ArrayList<String>();
+		ColumnarEventsReader reader = new ColumnarEventsReader(traceFile);
+		for (ExternalEvent e : reader.readEvents(Integer.MAX_VALUE)) {
+			read.add(e.toString());
+		}
+		reader.close();
+
+		assertEquals(recorded.size(), read.size());
+		for (int i = 0; i < recorded.size(); i++) {
+			assertEquals(toTraceFormat(recorded.get(i)), read.get(i));
+		}
+	}
+
+	public void testReplay() throws IOException {
+		List<String> recorded = connectionEvents(record());
+
+		ts.putSetting(SimScenario.SCENARIO_NS + "." +
+				SimScenario.CONNECTION_TRACE_S, traceFile.getAbsolutePath());
+		ts.putSetting(World.SETTINGS_NS + "." + World.SKIP_IDLE_UPDATES_S,
+				"true");
+		/* no messages, so the hosts without connections are idle */
+		ts.putSetting(EventQueueHandler.SETTINGS_NAMESPACE + "." +
+				EventQueueHandler.NROF_SETTING, "0");
+		IdleHosts idle = new IdleHosts();
+		TestSimulation replay = new TestSimulation();
+		replay.addUpdateListener(idle);
+		List<String> replayed = connectionEvents(replay.run());
+
+		assertEquals(recorded.size(), replayed.size());
+		for (int i = 0; i < recorded.size(); i++) {
+			assertEquals(recorded.get(i), replayed.get(i));
+		}
+		assertTrue(idle.nrofChecked > 0);
+	}
+
+	/**
+	 * Runs the test simulation with the trace report
+	 * @return The log of the run
+	 */
+	private List<String> record() {
+		ConnectivityTraceReport report = new ConnectivityTraceReport();
+		TestSimulation sim = new TestSimulation();
+		sim.addConnectionListener(report);
+		List<String> log = sim.run();
+		report.done();
+		return log;
+	}
+
+	private List<String> connectionEvents(List<String> log) {
+		List<String> events = new ArrayList<String>();
+		for (String event : log) {
+			if (event.contains(" up ") || event.contains(" down ")) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Converts a connection event of the test simulation log (e.g.,
+	 * "1.5 up n1 n2") to the string format of the trace events (the hosts
+	 * are in the only group "n", so their addresses follow the "n")
+	 */
+	private String toTraceFormat(String event) {
+		String[] parts = event.split(" ");
+		return "CONN " + parts[1] + " @" + parts[0] + " " +
+			parts[2].substring(1) + "<->" + parts[3].substring(1);
+	}
+
+	/**
+	 * Checks after every update that the hosts without connections are
+	 * idle, i.e., that their (disabled) movement doesn't keep them busy
+	 */
+	private class IdleHosts implements UpdateListener {
+		private int nrofChecked = 0;
+
+		public void updated(List<DTNHost> hosts) {
+			for (DTNHost h : hosts) {
+				if (h.getConnections().isEmpty()) {
+					assertTrue(h + " is not idle",
+							h.getIdleUntil() > SimClock.getTime());
+					nrofChecked++;
+				}
+			}
+		}
+	}
+}
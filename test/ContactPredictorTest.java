@@ -0,0 +1,258 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import routing.PassiveRouter;
+import core.Connection;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.MovementListener;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.SimContext;
+import core.SimError;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the kinetic contact prediction (see
+ * {@link World#KINETIC_CONTACTS_S})
+ */
+public class ContactPredictorTest extends TestCase
+	implements ConnectionListener {
+	private static final double RANGE = 10;
+	private static final double UP_INT = 0.1;
+	/* for rounding errors with SimClock */
+	private static final double TIME_DELTA = 0.00001;
+
+	private TestSettings ts;
+	private List<DTNHost> hosts;
+	private List<MovementListener> movListeners;
+	private List<ConnectionListener> conListeners;
+	/** times of the connection events and whether they were up events */
+	private List<Double> eventTimes;
+	private List<Boolean> eventUps;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+		this.ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.KINETIC_CONTACTS_S,
+				"true");
+		ts.putSetting("kinIf." + NetworkInterface.TRANSMIT_RANGE_S,
+				"" + RANGE);
+		ts.putSetting("kinIf." + NetworkInterface.TRANSMIT_SPEED_S, "1000");
+
+		this.hosts = new ArrayList<DTNHost>();
+		this.movListeners = new ArrayList<MovementListener>();
+		this.conListeners = new ArrayList<ConnectionListener>();
+		this.conListeners.add(this);
+		this.eventTimes = new ArrayList<Double>();
+		this.eventUps = new ArrayList<Boolean>();
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testCrossingPaths() {
+		createHost(new Coord(0, 50), new Coord(100, 50), 0);
+		createHost(new Coord(50, 0), new Coord(50, 100), 0);
+		run(createWorld(), 100);
+
+		/* distance is sqrt(2)*|t-50| when the hosts have moved for t secs */
+		double half = RANGE / Math.sqrt(2);
+		assertEquals(2, eventTimes.size());
+		assertTrue(eventUps.get(0));
+		assertEquals(50 - half, eventTimes.get(0), TIME_DELTA);
+		assertFalse(eventUps.get(1));
+		assertEquals(50 + half, eventTimes.get(1), TIME_DELTA);
+	}
+
+	public void testInactiveHostRetries() {
+		createHost(new Coord(0, 0), new Coord(0, 0), 0);
+		createHost(new Coord(5, 0), new Coord(5, 0), 2.05);
+		World world = createWorld();
+
+		run(world, 2);
+		assertEquals(0, eventTimes.size());
+		run(world, 1);
+		assertEquals(1, eventTimes.size());
+		assertTrue(eventUps.get(0));
+		/* retried at the start of every interval until the host is active */
+		assertEquals(2.1, eventTimes.get(0), TIME_DELTA);
+	}
+
+	public void testScanIntervalRejected() {
+		ts.putSetting("kinIf." + NetworkInterface.SCAN_INTERVAL_S, "1");
+		createHost(new Coord(0, 0), new Coord(0, 0), 0);
+		try {
+			createWorld();
+			fail("Scan interval was accepted");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
+	public void testMatchesPolling() {
+		TestSettings simSettings = TestSimulation.createSettings();
+		ConnectionStates polled = new ConnectionStates();
+		TestSimulation polling = new TestSimulation();
+		polling.addUpdateListener(polled);
+		int nrofPolled = countUps(polling.run());
+
+		simSettings.putSetting(World.SETTINGS_NS + "." +
+				World.KINETIC_CONTACTS_S, "true");
+		ConnectionStates predicted = new ConnectionStates();
+		TestSimulation kinetic = new TestSimulation();
+		kinetic.addUpdateListener(predicted);
+		int nrofPredicted = countUps(kinetic.run());
+
+		assertTrue(nrofPolled > 100);
+		/* same connections at every update, and the ones too short for
+		 * the polling in between */
+		assertEquals(polled.states.size(), predicted.states.size());
+		for (int i=0; i<polled.states.size(); i++) {
+			assertEquals(polled.states.get(i), predicted.states.get(i));
+		}
+		assertTrue(nrofPredicted >= nrofPolled);
+	}
+
+	private int countUps(List<String> log) {
+		int count = 0;
+		for (String event : log) {
+			if (event.contains(" up ")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private World createWorld() {
+		World world = new World(hosts, 200, 200, UP_INT,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		movListeners.add(world.getContactPredictor());
+		return world;
+	}
+
+	private void run(World world, double duration) {
+		double end = SimClock.getTime() + duration - UP_INT / 2;
+		while (SimClock.getTime() < end) {
+			world.update();
+		}
+	}
+
+	private DTNHost createHost(Coord from, Coord to, double activeFrom) {
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		NetworkInterface ni = new SimpleBroadcastInterface(
+				new Settings("kinIf"));
+		ni.setClisteners(conListeners);
+		li.add(ni);
+		DTNHost host = new DTNHost(null, movListeners, "h", li,
+				new ModuleCommunicationBus(),
+				new LinearMovement(from, to, activeFrom),
+				new PassiveRouter(ts));
+		hosts.add(host);
+		return host;
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		eventTimes.add(SimClock.getTime());
+		eventUps.add(true);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		eventTimes.add(SimClock.getTime());
+		eventUps.add(false);
+	}
+
+	/**
+	 * Movement along one straight line with the speed of 1 m/s
+	 */
+	private static class LinearMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private double activeFrom;
+		private boolean pathGiven;
+
+		private LinearMovement(Coord from, Coord to, double activeFrom) {
+			this.from = from;
+			this.to = to;
+			this.activeFrom = activeFrom;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public Path getPath() {
+			if (pathGiven) {
+				return null;
+			}
+			pathGiven = true;
+			Path p = new Path(1);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return pathGiven ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public boolean isActive() {
+			return SimClock.getTime() >= activeFrom;
+		}
+
+		@Override
+		public double getNextActivenessChange() {
+			return isActive() ? Double.MAX_VALUE : activeFrom;
+		}
+
+		@Override
+		public LinearMovement replicate() {
+			return new LinearMovement(from, to, activeFrom);
+		}
+	}
+
+	/**
+	 * Logs the connected host pairs after every update
+	 */
+	private static class ConnectionStates implements UpdateListener {
+		private List<String> states = new ArrayList<String>();
+
+		public void updated(List<DTNHost> hosts) {
+			Set<String> pairs = new TreeSet<String>();
+			for (DTNHost h : hosts) {
+				for (Connection c : h.getConnections()) {
+					if (c.getOtherNode(h).getAddress() > h.getAddress()) {
+						pairs.add(h + "-" + c.getOtherNode(h));
+					}
+				}
+			}
+			states.add(SimClock.getIntTime() + " " + pairs);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.ContactTable;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Checks the incrementally updated ego betweenness and similarity of
+ * {@link ContactTable} against values computed from scratch.
+ */
+public class ContactTableTest extends TestCase {
+	private static final int NROF_HOSTS = 90;
+	private static final double DELTA = 1e-9;
+
+	private List<DTNHost> hosts;
+	private ContactTable[] tables;
+	/** expected ego network adjacency of each host */
+	private boolean[][][] adjacency;
+	private boolean[][] members;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		hosts = new ArrayList<DTNHost>();
+		tables = new ContactTable[NROF_HOSTS];
+		adjacency = new boolean[NROF_HOSTS][NROF_HOSTS][NROF_HOSTS];
+		members = new boolean[NROF_HOSTS][NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts.add(utils.createHost());
+			tables[i] = new ContactTable();
+			tables[i].initialContactTable(hosts.get(i));
+			members[i][i] = true;
+		}
+	}
+
+	public void testInitialTable() {
+		ContactTable t = tables[0];
+		assertEquals(1, t.getsize());
+		assertEquals(0.0, t.computeBetweenness());
+		assertTrue(t.Tablecontains(hosts.get(0)));
+		assertFalse(t.Tablecontains(hosts.get(1)));
+		assertTrue(new ContactTable().IsNull());
+	}
+
+	public void testStar() {
+		/* ego 0 meets 1, 2 and 3 that have not met each other: all three
+		 * pairs go through the ego */
+		for (int i=1; i<=3; i++) {
+			meet(0, i);
+		}
+		assertEquals(4, tables[0].getsize());
+		assertEquals(3.0, tables[0].computeBetweenness(), DELTA);
+
+		/* 2 meets 3 and then 0 meets 4 that knows 2 and 3 */
+		meet(2, 3);
+		meet(4, 2);
+		meet(4, 3);
+		meet(0, 4);
+		checkAgainstScratch(0);
+		assertTrue(tables[0].computeSimilar(msgTo(0, 4)) == 2);
+	}
+
+	public void testRandomContacts() {
+		Random rng = new Random(42);
+		for (int i=0; i<3000; i++) {
+			int a = rng.nextInt(NROF_HOSTS);
+			int b = rng.nextInt(NROF_HOSTS);
+			if (a == b) {
+				continue;
+			}
+			if (rng.nextInt(20) == 0 && members[a][b]) {
+				tables[a].DeleteNode(hosts.get(b));
+				removeExpected(a, b);
+			}
+			else {
+				meet(a, b);
+			}
+			checkAgainstScratch(a);
+		}
+	}
+
+	public void testIndirectNodes() {
+		meet(1, 2);
+		meet(3, 2);
+		meet(0, 1);
+		meet(0, 3);
+		/* 2 is known only through 1 and 3 */
+		assertTrue(tables[0].IndirectTablecontains(hosts.get(2)));
+		assertFalse(tables[0].Tablecontains(hosts.get(2)));
+		assertEquals(2, tables[0].getindirectSim(msgTo(0, 2)));
+
+		meet(0, 2);
+		assertFalse(tables[0].IndirectTablecontains(hosts.get(2)));
+		assertTrue(tables[0].Tablecontains(hosts.get(2)));
+	}
+
+	/**
+	 * Host a meets host b (from a's point of view, like SimbetRouter)
+	 */
+	private void meet(int a, int b) {
+		tables[a].AddNode(hosts.get(b), tables[b]);
+		if (members[a][b]) {
+			return;
+		}
+		members[a][b] = true;
+		adjacency[a][a][b] = adjacency[a][b][a] = true;
+		for (int k=0; k<NROF_HOSTS; k++) {
+			if (k != a && k != b && members[a][k] && members[b][k]) {
+				adjacency[a][k][b] = adjacency[a][b][k] = true;
+			}
+		}
+	}
+
+	private void removeExpected(int a, int b) {
+		members[a][b] = false;
+		for (int k=0; k<NROF_HOSTS; k++) {
+			adjacency[a][k][b] = adjacency[a][b][k] = false;
+		}
+	}
+
+	private Message msgTo(int from, int to) {
+		return new Message(hosts.get(from), hosts.get(to), "M" + from + "_" +
+				to, 1);
+	}
+
+	private void checkAgainstScratch(int ego) {
+		boolean[][] adj = adjacency[ego];
+		double betweenness = 0;
+		int size = 0;
+		for (int i=0; i<NROF_HOSTS; i++) {
+			if (!members[ego][i]) {
+				continue;
+			}
+			size++;
+			for (int j=i+1; j<NROF_HOSTS; j++) {
+				if (!members[ego][j] || adj[i][j]) {
+					continue;
+				}
+				int common = 0;
+				for (int k=0; k<NROF_HOSTS; k++) {
+					if (adj[i][k] && adj[j][k]) {
+						common++;
+					}
+				}
+				if (common > 0) {
+					betweenness += 1.0 / common;
+				}
+			}
+		}
+		assertEquals(size, tables[ego].getsize());
+		assertEquals(betweenness, tables[ego].computeBetweenness(), DELTA);
+
+		for (int d=0; d<NROF_HOSTS; d++) {
+			int similar = 0;
+			if (members[ego][d]) {
+				for (int k=0; k<NROF_HOSTS; k++) {
+					if (adj[ego][k] && adj[d][k]) {
+						similar++;
+					}
+				}
+			}
+			assertEquals(members[ego][d],
+					tables[ego].Tablecontains(hosts.get(d)));
+			assertEquals(similar, tables[ego].computeSimilar(msgTo(ego, d)));
+		}
+	}
+}
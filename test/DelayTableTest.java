@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.rapid.DelayTable;
+import routing.rapid.MeetingEntry;
+import core.DTNHost;
+import core.SimContext;
+
+/**
+ * Tests the meeting time synchronization of RAPID's {@link DelayTable}
+ */
+public class DelayTableTest extends TestCase {
+	private static final int NROF_HOSTS = 8;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	/**
+	 * Pushes only the changed meeting entries to one set of tables and all
+	 * the entries to another (as RapidRouter used to do) and checks that
+	 * the tables stay the same
+	 */
+	public void testDeltaSyncMatchesFullSync() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] hosts = new DTNHost[NROF_HOSTS];
+		DelayTable[] delta = new DelayTable[NROF_HOSTS];
+		DelayTable[] full = new DelayTable[NROF_HOSTS];
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts[i] = utils.createHost();
+			delta[i] = new DelayTable(hosts[i]);
+			full[i] = new DelayTable(hosts[i]);
+		}
+		Random rng = new Random(1);
+
+		for (int step = 0; step < 3000; step++) {
+			int i = rng.nextInt(NROF_HOSTS);
+			int j = (i + 1 + rng.nextInt(NROF_HOSTS - 1)) % NROF_HOSTS;
+			/* coarse time stamps so that the entries' update times tie */
+			double time = step / 10;
+
+			if (rng.nextInt(3) == 0) {
+				int from = hosts[i].getAddress();
+				int to = hosts[j].getAddress();
+				double meetingTime = rng.nextInt(20);
+				boolean dummy = rng.nextBoolean();
+				delta[i].updateAvgMeetingTime(from, to, meetingTime, time,
+						dummy);
+				full[i].updateAvgMeetingTime(from, to, meetingTime, time,
+						dummy);
+			}
+			else {
+				delta[i].pushMeetingTimes(delta[j]);
+				fullSync(full[i], full[j]);
+			}
+
+			for (int k = 0; k < NROF_HOSTS; k++) {
+				assertSameEntries(full[k], delta[k]);
+			}
+		}
+	}
+
+	public void testIndirectMeetingEntries() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost host = utils.createHost();
+		DelayTable table = new DelayTable(host);
+		Random rng = new Random(2);
+		int dim = 12;
+		for (int n = 0; n < 30; n++) {
+			int from = rng.nextInt(dim);
+			int to = (from + 1 + rng.nextInt(dim - 1)) % dim;
+			table.updateAvgMeetingTime(from, to, rng.nextInt(20), n);
+		}
+
+		for (int from = 0; from < dim; from++) {
+			for (int to = 0; to < dim; to++) {
+				MeetingEntry expected = table.getMeetingEntry(from, to);
+				if (expected == null) {
+					expected = bestPath(table, from, to, dim);
+				}
+				MeetingEntry actual = table.getIndirectMeetingEntry(from, to);
+				if (expected == null) {
+					assertNull(actual);
+					continue;
+				}
+				assertNotNull(actual);
+				assertEquals(expected.getAvgMeetingTime(),
+						actual.getAvgMeetingTime());
+				assertEquals(expected.getLastUpdate(), actual.getLastUpdate());
+				assertEquals(expected.getWeight(), actual.getWeight());
+			}
+		}
+	}
+
+	/**
+	 * Returns the combined entry of the best two or three hop path between
+	 * two hosts (the three hop paths are used only via hosts that have no
+	 * entry for the destination), or null if there are no paths
+	 */
+	private MeetingEntry bestPath(DelayTable table, int from, int to,
+			int dim) {
+		MeetingEntry best = null;
+		for (int i = 0; i < dim; i++) {
+			MeetingEntry e0 = table.getMeetingEntry(from, i);
+			if (e0 == null) {
+				continue;
+			}
+			MeetingEntry e1 = table.getMeetingEntry(i, to);
+			if (e1 != null) {
+				best = better(best, combine(e0, e1));
+				continue;
+			}
+			for (int k = 0; k < dim; k++) {
+				e1 = table.getMeetingEntry(i, k);
+				MeetingEntry e2 = table.getMeetingEntry(k, to);
+				if (e1 != null && e2 != null) {
+					best = better(best, combine(combine(e0, e1), e2));
+				}
+			}
+		}
+		return best;
+	}
+
+	private MeetingEntry combine(MeetingEntry e1, MeetingEntry e2) {
+		return new MeetingEntry(
+				Math.min(e1.getAvgMeetingTime(), e2.getAvgMeetingTime()),
+				Math.min(e1.getLastUpdate(), e2.getLastUpdate()),
+				Math.min(e1.getWeight(), e2.getWeight()), false);
+	}
+
+	private MeetingEntry better(MeetingEntry best, MeetingEntry e) {
+		if (best == null || e.getAvgMeetingTime() * e.getWeight() >
+				best.getAvgMeetingTime() * best.getWeight()) {
+			return e;
+		}
+		return best;
+	}
+
+	/**
+	 * Offers all meeting entries of a table to another one
+	 */
+	private void fullSync(DelayTable from, DelayTable to) {
+		int dim = from.getMeetingMatrixDimension();
+		for (int i = 0; i < dim; i++) {
+			for (int k = 0; k < dim; k++) {
+				MeetingEntry entry = from.getMeetingEntry(i, k);
+				if (entry == null) {
+					continue;
+				}
+				MeetingEntry other = to.getMeetingEntry(i, k);
+				if (other == null ||
+						other.isOlderThan(entry.getLastUpdate()) ||
+						(other.isAsOldAs(entry.getLastUpdate()) &&
+						entry.getAvgMeetingTime() >
+						other.getAvgMeetingTime())) {
+					to.setAvgMeetingTime(i, k, entry.getAvgMeetingTime(),
+							entry.getLastUpdate(), entry.getWeight());
+				}
+			}
+		}
+	}
+
+	private void assertSameEntries(DelayTable expected, DelayTable actual) {
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			for (int k = 0; k < NROF_HOSTS; k++) {
+				MeetingEntry e = expected.getMeetingEntry(i, k);
+				MeetingEntry a = actual.getMeetingEntry(i, k);
+				if (e == null) {
+					assertNull(a);
+					continue;
+				}
+				assertNotNull(a);
+				assertEquals(e.getAvgMeetingTime(), a.getAvgMeetingTime());
+				assertEquals(e.getLastUpdate(), a.getLastUpdate());
+				assertEquals(e.getWeight(), a.getWeight());
+				assertEquals(e.isDummy(), a.isDummy());
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.EventQueueHeap;
+
+/**
+ * Tests for the EventQueueHeap
+ */
+public class EventQueueHeapTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private List<EventQueue> queues;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		queues = new ArrayList<EventQueue>();
+	}
+
+	public void testEmpty() {
+		EventQueueHeap heap = new EventQueueHeap(queues);
+		assertTrue(heap.isEmpty());
+	}
+
+	public void testOrder() {
+		addQueues(5, 1.5, 20, 3, 0, MAX);
+		EventQueueHeap heap = new EventQueueHeap(queues);
+		assertFalse(heap.isEmpty());
+
+		assertFirst(heap, 4, 0.0);
+		setTime(heap, 4, MAX);
+		assertFirst(heap, 1, 1.5);
+		setTime(heap, 1, MAX);
+		assertFirst(heap, 3, 3.0);
+		setTime(heap, 3, MAX);
+		assertFirst(heap, 0, 5.0);
+		setTime(heap, 0, MAX);
+		assertFirst(heap, 2, 20.0);
+		setTime(heap, 2, MAX);
+		assertFirst(heap, 0, MAX); // all empty -> the first queue
+	}
+
+	public void testTieBreakByIndex() {
+		addQueues(3, 1, 3, 1, 3, 1);
+		EventQueueHeap heap = new EventQueueHeap(queues);
+
+		assertFirst(heap, 1, 1.0);
+		setTime(heap, 1, 3);
+		assertFirst(heap, 3, 1.0);
+		setTime(heap, 3, 3);
+		assertFirst(heap, 5, 1.0);
+		setTime(heap, 5, 3);
+
+		/* all at the same time now */
+		for (int i = 0; i < queues.size(); i++) {
+			assertFirst(heap, i, 3.0);
+			setTime(heap, i, 4);
+		}
+
+		/* a queue with a smaller index wins a tie it joins later */
+		setTime(heap, 4, 2);
+		assertFirst(heap, 4, 2.0);
+		setTime(heap, 2, 2);
+		assertFirst(heap, 2, 2.0);
+	}
+
+	public void testUpdates() {
+		addQueues(10, 20, 30, 40);
+		EventQueueHeap heap = new EventQueueHeap(queues);
+		assertFirst(heap, 0, 10.0);
+
+		setTime(heap, 3, 5); // to the top
+		assertFirst(heap, 3, 5.0);
+		setTime(heap, 3, 35); // back down
+		assertFirst(heap, 0, 10.0);
+		assertEquals(35.0, heap.getTime(3));
+
+		setTime(heap, 0, 25); // down between the others
+		assertFirst(heap, 1, 20.0);
+		setTime(heap, 1, 50);
+		assertFirst(heap, 0, 25.0);
+		setTime(heap, 0, 50);
+		assertFirst(heap, 2, 30.0);
+		setTime(heap, 2, 50);
+		assertFirst(heap, 3, 35.0);
+		setTime(heap, 3, 50);
+		assertFirst(heap, 0, 50.0);
+	}
+
+	public void testTimeReadOnlyOnUpdate() {
+		addQueues(10, 20);
+		EventQueueHeap heap = new EventQueueHeap(queues);
+
+		((TimedQueue)queues.get(1)).time = 5;
+		assertFirst(heap, 0, 10.0); // not updated yet
+		assertEquals(20.0, heap.getTime(1));
+		heap.update(1);
+		assertFirst(heap, 1, 5.0);
+		assertSame(queues.get(1), heap.getQueue(1));
+	}
+
+	private void addQueues(double... times) {
+		for (double t : times) {
+			queues.add(new TimedQueue(t));
+		}
+	}
+
+	private void setTime(EventQueueHeap heap, int index, double time) {
+		((TimedQueue)queues.get(index)).time = time;
+		heap.update(index);
+	}
+
+	private void assertFirst(EventQueueHeap heap, int index, double time) {
+		assertEquals(index, heap.first());
+		assertEquals(time, heap.getTime(heap.first()));
+	}
+
+	/**
+	 * Event queue whose next event time is set by the test
+	 */
+	private static class TimedQueue implements EventQueue {
+		private double time;
+
+		private TimedQueue(double time) {
+			this.time = time;
+		}
+
+		public ExternalEvent nextEvent() {
+			return new ExternalEvent(time);
+		}
+
+		public double nextEventsTime() {
+			return time;
+		}
+	}
+}
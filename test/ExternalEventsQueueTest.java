@@ -5,6 +5,7 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.ColumnarEventsReader;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -81,6 +82,74 @@ public class ExternalEventsQueueTest extends TestCase {
 		assertTrue(tmpBinFile.delete()); // make sure all locks are gone
 	}
 	
+	public void testPrefetchingEEQ() {
+		int preload = 3;
+		TestSettings ts = new TestSettings("ExternalEvents");
+		ts.putSetting("ExternalEvents." + ExternalEventsQueue.PATH_SETTING,
+				tempFile.getAbsolutePath());
+		ts.putSetting("ExternalEvents." + ExternalEventsQueue.PRELOAD_SETTING,
+				"" + preload);
+		ts.putSetting("ExternalEvents." + 
+				ExternalEventsQueue.PREFETCH_SETTING, "true");
+		
+		eeq = new ExternalEventsQueue(ts);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+	}
+	
+	public void testCloseBeforeEnd() throws Exception {
+		TestSettings ts = new TestSettings("ExternalEvents");
+		ts.putSetting("ExternalEvents." + ExternalEventsQueue.PATH_SETTING,
+				tempFile.getAbsolutePath());
+		ts.putSetting("ExternalEvents." + ExternalEventsQueue.PRELOAD_SETTING,
+				"2");
+		ts.putSetting("ExternalEvents." + 
+				ExternalEventsQueue.PREFETCH_SETTING, "true");
+		
+		eeq = new ExternalEventsQueue(ts);
+		for (int i=0; i<3; i++) {
+			assertEquals(msgTimes[i], eeq.nextEvent().getTime());
+		}
+		eeq.close();
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertEquals(Double.MAX_VALUE, eeq.nextEvent().getTime());
+		eeq.close(); // closing again does nothing
+		
+		/* the background thread stops after closing the reader */
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("ExternalEventsPrefetch")) {
+				assertTrue(t.isDaemon());
+				t.join(5000);
+				assertFalse(t.isAlive());
+			}
+		}
+	}
+	
+	public void testColumnarEEQ() throws Exception {
+		int preload = 7;
+		File tmpColFile = File.createTempFile("TempColTest", 
+				ColumnarEventsReader.COLUMNAR_EXT);
+		String colFileName = tmpColFile.getAbsolutePath();
+		ExternalEventsReader r = new StandardEventsReader(tempFile);
+		assertEquals(msgTimes.length, 
+				ColumnarEventsReader.storeToColumnarFile(colFileName, r));
+		r.close();
+		
+		eeq = new ExternalEventsQueue(colFileName, preload);
+		checkEeq(eeq, preload);
+		
+		/* all the event fields must survive the conversion */
+		List<ExternalEvent> orig = 
+			new StandardEventsReader(tempFile).readEvents(100);
+		ColumnarEventsReader cr = new ColumnarEventsReader(tmpColFile);
+		List<ExternalEvent> read = cr.readEvents(100);
+		cr.close();
+		assertEquals(orig.size(), read.size());
+		for (int i=0; i < orig.size(); i++) {
+			assertEquals(orig.get(i).toString(), read.get(i).toString());
+		}
+	}
+	
 	
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import core.IdHandleSet;
+
+public class IdHandleSetTest extends TestCase {
+	private static final int MAX_HANDLE = 700;
+
+	public void testAddContainsRemove() {
+		IdHandleSet set = new IdHandleSet();
+		assertTrue(set.add(5));
+		assertFalse(set.add(5));
+		assertTrue(set.add(0));
+		assertTrue(set.add(200));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(200));
+		assertFalse(set.contains(64 + 5));
+
+		assertTrue(set.remove(0));
+		assertFalse(set.remove(0));
+		assertEquals(5, set.nextHandle(0));
+		assertEquals(200, set.nextHandle(6));
+		assertEquals(-1, set.nextHandle(201));
+
+		set.removeBelow(100);
+		assertEquals(1, set.size());
+		assertFalse(set.add(99)); // below the bound
+		assertEquals(200, set.nextHandle(0));
+	}
+
+	public void testAgainstTreeSet() {
+		Random rng = new Random(7);
+		IdHandleSet[] sets = {new IdHandleSet(), new IdHandleSet()};
+		List<TreeSet<Integer>> refs = createRefs();
+		int[] bounds = {0, 0};
+
+		for (int i=0; i<5000; i++) {
+			int s = rng.nextInt(2);
+			int handle = rng.nextInt(MAX_HANDLE);
+			switch (rng.nextInt(20)) {
+			case 0:
+				assertEquals(addAll(refs.get(s), refs.get(1 - s), bounds[s]),
+						sets[s].addAll(sets[1 - s]));
+				break;
+			case 1:
+				if (rng.nextInt(10) == 0) {
+					bounds[s] = Math.max(bounds[s], handle / 2);
+					sets[s].removeBelow(bounds[s]);
+					refs.get(s).headSet(bounds[s]).clear();
+				}
+				break;
+			default:
+				if (rng.nextBoolean()) {
+					assertEquals(handle >= bounds[s] && refs.get(s).add(handle),
+							sets[s].add(handle));
+				}
+				else {
+					assertEquals(refs.get(s).remove(handle),
+							sets[s].remove(handle));
+				}
+			}
+
+			assertEquals(refs.get(s).size(), sets[s].size());
+			int from = rng.nextInt(MAX_HANDLE);
+			assertEquals(next(refs.get(s), null, true, from),
+					sets[s].nextHandle(from));
+			assertEquals(next(refs.get(s), refs.get(1 - s), true, from),
+					sets[s].nextHandleIn(sets[1 - s], from));
+			assertEquals(next(refs.get(s), refs.get(1 - s), false, from),
+					sets[s].nextHandleNotIn(sets[1 - s], from));
+		}
+	}
+
+	private List<TreeSet<Integer>> createRefs() {
+		List<TreeSet<Integer>> refs = new ArrayList<TreeSet<Integer>>();
+		refs.add(new TreeSet<Integer>());
+		refs.add(new TreeSet<Integer>());
+		return refs;
+	}
+
+	private boolean addAll(TreeSet<Integer> to, TreeSet<Integer> from,
+			int bound) {
+		return to.addAll(from.tailSet(bound));
+	}
+
+	private int next(TreeSet<Integer> set, TreeSet<Integer> other,
+			boolean in, int from) {
+		for (int handle : set.tailSet(from)) {
+			if (other == null || other.contains(handle) == in) {
+				return handle;
+			}
+		}
+		return -1;
+	}
+}
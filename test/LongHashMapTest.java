@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.LongHashMap;
+
+public class LongHashMapTest extends TestCase {
+
+	public void testPutGetRemove() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertNull(map.put(5, "five"));
+		assertEquals("five", map.put(5, "FIVE"));
+		assertNull(map.put(0, "zero"));
+		assertNull(map.put(-1, "minus one"));
+		assertEquals(3, map.size());
+		assertEquals("FIVE", map.get(5));
+		assertEquals("zero", map.get(0));
+		assertNull(map.get(6));
+		assertTrue(map.containsKey(-1));
+
+		assertEquals("zero", map.remove(0));
+		assertNull(map.remove(0));
+		assertFalse(map.containsKey(0));
+		assertEquals(2, map.size());
+		assertEquals(2, map.values().size());
+		assertTrue(map.values().contains("minus one"));
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(5));
+		assertFalse(map.values().iterator().hasNext());
+	}
+
+	public void testAgainstHashMap() {
+		LongHashMap<Long> map = new LongHashMap<Long>(4);
+		HashMap<Long, Long> ref = new HashMap<Long, Long>();
+		Random rng = new Random(1);
+
+		for (int i=0; i<20000; i++) {
+			long key = rng.nextInt(500) - 10; // many collisions and removals
+			if (rng.nextBoolean()) {
+				assertEquals(ref.put(key, (long)i), map.put(key, (long)i));
+			}
+			else {
+				assertEquals(ref.remove(key), map.remove(key));
+			}
+		}
+		assertEquals(ref.size(), map.size());
+		for (long key = -10; key < 490; key++) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+		assertEquals(new HashSet<Long>(ref.values()),
+				new HashSet<Long>(map.values()));
+	}
+}
@@ -0,0 +1,56 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.LongHashSet;
+
+public class LongHashSetTest extends TestCase {
+
+	public void testAddContainsRemove() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.add(5));
+		assertFalse(set.add(5));
+		assertTrue(set.add(0));
+		assertTrue(set.add(-1));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(-1));
+		assertFalse(set.contains(6));
+
+		assertTrue(set.remove(0));
+		assertFalse(set.remove(0));
+		assertFalse(set.contains(0));
+		assertTrue(set.contains(5));
+		assertEquals(2, set.size());
+
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(5));
+	}
+
+	public void testAgainstHashSet() {
+		LongHashSet set = new LongHashSet(4);
+		HashSet<Long> ref = new HashSet<Long>();
+		Random rng = new Random(1);
+
+		for (int i=0; i<20000; i++) {
+			long value = rng.nextInt(500); // many collisions and removals
+			if (rng.nextBoolean()) {
+				assertEquals(ref.add(value), set.add(value));
+			}
+			else {
+				assertEquals(ref.remove(value), set.remove(value));
+			}
+		}
+		assertEquals(ref.size(), set.size());
+		for (long value = 0; value < 500; value++) {
+			assertEquals(ref.contains(value), set.contains(value));
+		}
+	}
+}
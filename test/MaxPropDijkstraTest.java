@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -154,4 +155,42 @@ public class MaxPropDijkstraTest extends TestCase {
 		
 	}
 	
+	/**
+	 * Tests that the costs from the cached (and repaired) shortest path
+	 * trees are equal to the costs calculated from scratch
+	 */
+	public void testCachedCosts() {
+		final int nrofNodes = 30;
+		Random rng = new Random(3);
+		Map<Integer, MeetingProbabilitySet> sets =
+			new HashMap<Integer, MeetingProbabilitySet>();
+		for (int i=0; i<nrofNodes; i++) {
+			sets.put(i, new MeetingProbabilitySet(
+					MeetingProbabilitySet.INFINITE_SET_SIZE, 1.0));
+		}
+		MaxPropDijkstra cached = new MaxPropDijkstra(sets);
+		
+		for (int round=0; round<400; round++) {
+			int a = rng.nextInt(nrofNodes);
+			int b = rng.nextInt(nrofNodes);
+			if (a == b) {
+				continue;
+			}
+			sets.get(a).updateMeetingProbFor(b);
+			if (rng.nextInt(4) == 0) {
+				sets.put(b, sets.get(a).replicate()); // like an exchange
+			}
+			
+			cached.updateCosts();
+			MaxPropDijkstra fresh = new MaxPropDijkstra(sets);
+			fresh.updateCosts();
+			for (int from=0; from<3; from++) {
+				for (int to=0; to<nrofNodes; to++) {
+					assertEquals(fresh.getCost(from, to), 
+							cached.getCost(from, to));
+				}
+			}
+		}
+	}
+	
 }
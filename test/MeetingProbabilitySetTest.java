@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import routing.maxprop.MeetingProbabilitySet;
+import core.SimContext;
+
+/**
+ * Tests the copy-on-write arrays of the {@link MeetingProbabilitySet}
+ */
+public class MeetingProbabilitySetTest extends TestCase {
+	private static final double ALPHA = 1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testReplicateSharesArrays() {
+		MeetingProbabilitySet set = createSet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE);
+		MeetingProbabilitySet replica = set.replicate();
+
+		assertSame(set.getNodes(), replica.getNodes());
+		assertSame(set.getProbs(), replica.getProbs());
+		assertEquals(set.getAllProbs(), replica.getAllProbs());
+		assertEquals(set.getLastUpdateTime(), replica.getLastUpdateTime());
+
+		/* a replica of a replica shares them too */
+		assertSame(set.getProbs(), replica.replicate().getProbs());
+	}
+
+	public void testUpdatesDontChangeReplicas() {
+		MeetingProbabilitySet set = createSet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE);
+		MeetingProbabilitySet r1 = set.replicate();
+		MeetingProbabilitySet r2 = set.replicate();
+		int[] nodes = set.getNodes().clone();
+		double[] probs = set.getProbs().clone();
+		Map<Integer, Double> allProbs = set.getAllProbs();
+
+		r1.updateMeetingProbFor(2); // existing node
+		assertUnchanged(set, nodes, probs, allProbs);
+		assertUnchanged(r2, nodes, probs, allProbs);
+		assertNotSame(set.getProbs(), r1.getProbs());
+		assertSame(set.getNodes(), r1.getNodes());
+
+		r1.updateMeetingProbFor(7); // new node
+		r1.updateMeetingProbFor(8, 0.5);
+		assertUnchanged(set, nodes, probs, allProbs);
+		assertUnchanged(r2, nodes, probs, allProbs);
+		assertEquals(nodes.length + 2, r1.getNodes().length);
+
+		/* updating the original doesn't change the replicas either */
+		Map<Integer, Double> r1Probs = r1.getAllProbs();
+		set.updateMeetingProbFor(3);
+		set.updateMeetingProbFor(9);
+		assertUnchanged(r2, nodes, probs, allProbs);
+		assertEquals(r1Probs, r1.getAllProbs());
+	}
+
+	public void testDroppingDoesntChangeReplicas() {
+		MeetingProbabilitySet set = createSet(4);
+		MeetingProbabilitySet replica = set.replicate();
+		int[] nodes = set.getNodes().clone();
+		double[] probs = set.getProbs().clone();
+		Map<Integer, Double> allProbs = set.getAllProbs();
+
+		set.updateMeetingProbFor(10); // the smallest value is dropped
+		assertEquals(nodes.length, set.getNodes().length);
+		assertTrue(set.getProbFor(10) > 0);
+		assertUnchanged(replica, nodes, probs, allProbs);
+	}
+
+	/**
+	 * Creates a set with probabilities for (up to) the nodes 1-5
+	 */
+	private MeetingProbabilitySet createSet(int maxSetSize) {
+		MeetingProbabilitySet set = new MeetingProbabilitySet(maxSetSize,
+				ALPHA);
+		for (int i = 1; i <= 5; i++) {
+			set.updateMeetingProbFor(i);
+		}
+		set.updateMeetingProbFor(2);
+		return set;
+	}
+
+	private void assertUnchanged(MeetingProbabilitySet set, int[] nodes,
+			double[] probs, Map<Integer, Double> allProbs) {
+		assertTrue(Arrays.equals(nodes, set.getNodes()));
+		assertTrue(Arrays.equals(probs, set.getProbs()));
+		assertEquals(allProbs, set.getAllProbs());
+	}
+}
@@ -0,0 +1,264 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.MessageBuffer;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+import core.SimContext;
+
+public class MessageBufferTest extends TestCase {
+
+	private Message m1;
+	private Message m2;
+	private Message m3;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m1 = new Message(null, null, "M1", 300);
+		m1.setReceiveTime(20);
+		m2 = new Message(null, null, "M2", 100);
+		m2.setReceiveTime(10);
+		m3 = new Message(null, null, "M3", 200);
+		m3.setReceiveTime(30);
+	}
+
+	private MessageBuffer fill(MessageBuffer.DropPolicy policy) {
+		MessageBuffer buffer = new MessageBuffer(policy);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		return buffer;
+	}
+
+	private void assertDropOrder(MessageBuffer buffer, Message... expected) {
+		Iterator<Message> i = buffer.inDropOrder().iterator();
+		for (Message m : expected) {
+			assertEquals(m, i.next());
+		}
+		assertFalse(i.hasNext());
+	}
+
+	public void testOccupancy() {
+		MessageBuffer buffer = fill(MessageBuffer.DROP_OLDEST);
+		assertEquals(3, buffer.size());
+		assertEquals(600, buffer.getOccupancy());
+
+		assertEquals(m1, buffer.remove(m1.getIdHandle()));
+		assertNull(buffer.remove(m1.getIdHandle()));
+		assertEquals(300, buffer.getOccupancy());
+		assertFalse(buffer.contains(m1.getIdHandle()));
+		assertEquals(2, buffer.getMessages().size());
+
+		buffer.add(m2); // replaces the old one
+		assertEquals(300, buffer.getOccupancy());
+		assertDropOrder(buffer, m2, m3);
+	}
+
+	public void testDropPolicies() {
+		assertDropOrder(fill(MessageBuffer.DROP_OLDEST), m2, m1, m3);
+		assertDropOrder(fill(MessageBuffer.DROP_YOUNGEST), m3, m1, m2);
+		assertDropOrder(fill(MessageBuffer.DROP_LARGEST), m1, m3, m2);
+
+		m1.setTtl(5);
+		m2.setTtl(60);
+		m3.setTtl(1);
+		assertDropOrder(fill(MessageBuffer.DROP_SHORTEST_TTL), m3, m1, m2);
+	}
+
+	/**
+	 * The shortest TTL is by the exact expiry times, not by the TTLs left
+	 * (in whole minutes) when the messages were added
+	 */
+	public void testDropShortestTtlByExpiryTime() {
+		SimContext.setCurrent(new SimContext());
+		try {
+			Message first = new Message(null, null, "F", 1);
+			first.setTtl(10); // expires at 600
+			SimClock.getInstance().setTime(50);
+			Message second = new Message(null, null, "S", 1);
+			second.setTtl(9); // expires at 590
+
+			MessageBuffer buffer = new MessageBuffer(
+					MessageBuffer.DROP_SHORTEST_TTL);
+			buffer.add(first);
+			buffer.add(second);
+			assertDropOrder(buffer, second, first);
+		}
+		finally {
+			SimContext.setCurrent(null);
+		}
+	}
+
+	public void testMessagesTo() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] hosts = new DTNHost[4];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+		MessageBuffer buffer = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+		Random rng = new Random(3);
+
+		for (int i = 0; i < 300; i++) {
+			String id = "M" + rng.nextInt(60);
+			if (rng.nextInt(3) == 0) {
+				buffer.remove(Message.getIdHandle(id));
+			}
+			else {
+				buffer.add(new Message(hosts[0], hosts[rng.nextInt(4)], id, 1));
+			}
+
+			/* the messages to the hosts in the order of the whole buffer */
+			List<DTNHost> to = Arrays.asList(hosts[1], hosts[2], hosts[1]);
+			List<Message> expected = new ArrayList<Message>();
+			for (Message m : buffer.getMessages()) {
+				if (m.getTo() == hosts[1] || m.getTo() == hosts[2]) {
+					expected.add(m);
+				}
+			}
+			assertEquals(expected, buffer.getMessagesTo(to));
+		}
+	}
+
+	/**
+	 * The messages are iterated like a hash map of their IDs would iterate
+	 * them (the routers order messages of equal priority by it)
+	 */
+	public void testIterationOrder() {
+		MessageBuffer buffer = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+		Map<String, Message> map = new HashMap<String, Message>();
+		Random rng = new Random(4);
+
+		for (int i = 0; i < 2000; i++) {
+			/* grows to a few hundred messages, then shrinks */
+			int range = i < 1000 ? 50 + i / 2 : 550 - (i - 1000) / 2;
+			String id = "M" + rng.nextInt(range);
+			if (rng.nextInt(4) == 0) {
+				buffer.remove(Message.getIdHandle(id));
+				map.remove(id);
+			}
+			else {
+				Message m = new Message(null, null, id, 1);
+				buffer.add(m); // replaces the old message, if any
+				map.put(id, m);
+			}
+			assertEquals(new ArrayList<Message>(map.values()),
+					new ArrayList<Message>(buffer.getMessages()));
+		}
+	}
+
+	public void testReceiveOrder() {
+		MessageBuffer buffer = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+		assertTrue(buffer.inReceiveOrder().isEmpty());
+		/* the messages in the order they were added */
+		List<Message> added = new ArrayList<Message>();
+		Random rng = new Random(6);
+
+		for (int i = 0; i < 1000; i++) {
+			String id = "M" + rng.nextInt(100);
+			List<Message> before = buffer.inReceiveOrder();
+			List<Message> beforeCopy = new ArrayList<Message>(before);
+			Message old = buffer.get(Message.getIdHandle(id));
+			if (old != null) {
+				added.remove(old);
+			}
+			if (rng.nextInt(3) == 0) {
+				buffer.remove(Message.getIdHandle(id));
+			}
+			else {
+				Message m = new Message(null, null, id, 1);
+				m.setReceiveTime(rng.nextInt(20)); // many equal times
+				buffer.add(m);
+				added.add(m);
+			}
+
+			List<Message> expected = new ArrayList<Message>(added);
+			Collections.sort(expected, new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return Double.compare(m1.getReceiveTime(), 
+							m2.getReceiveTime());
+				}
+			}); // stable, so the ties are in the order they were added
+			assertEquals(expected, buffer.inReceiveOrder());
+			/* the lists given out before don't change */
+			assertEquals(beforeCopy, before);
+		}
+	}
+
+	public void testMessagesExpiringBefore() {
+		MessageBuffer buffer = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+		Random rng = new Random(5);
+
+		for (int i = 0; i < 300; i++) {
+			String id = "M" + rng.nextInt(60);
+			if (rng.nextInt(3) == 0) {
+				buffer.remove(Message.getIdHandle(id));
+			}
+			else {
+				Message m = new Message(null, null, id, 1);
+				if (rng.nextInt(4) != 0) {
+					m.setTtl(1 + rng.nextInt(10)); // others never expire
+				}
+				buffer.add(m);
+			}
+
+			double time = rng.nextInt(12) * 60.0;
+			List<Message> expected = new ArrayList<Message>();
+			for (Message m : buffer.getMessages()) {
+				if (m.getExpiryTime() < time) {
+					expected.add(m);
+				}
+			}
+			assertEquals(expected, buffer.getMessagesExpiringBefore(time));
+		}
+	}
+
+	/**
+	 * The ACKs of messages (e.g., MaxProp's) can be forgotten only when no
+	 * copies of the messages are left, regardless of their TTLs
+	 */
+	public void testDeadIdHandleBound() {
+		SimContext.setCurrent(new SimContext());
+		try {
+			Message expired = new Message(null, null, "E", 1);
+			expired.setTtl(1);
+			Message noTtl = new Message(null, null, "N", 1);
+			MessageBuffer b1 = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+			MessageBuffer b2 = new MessageBuffer(MessageBuffer.DROP_OLDEST);
+			b1.add(expired);
+			b2.add(expired.replicate());
+			b1.add(noTtl);
+			b1.add(noTtl); // replacing doesn't add a copy
+			SimClock.getInstance().setTime(1000);
+
+			/* expired but not yet dropped from the buffers */
+			assertEquals(0, Message.getDeadIdHandleBound());
+			b1.remove(expired.getIdHandle());
+			assertEquals(0, Message.getDeadIdHandleBound());
+			b2.remove(expired.getIdHandle());
+			assertEquals(1, Message.getDeadIdHandleBound());
+
+			/* messages without a TTL are gone when the last copy is */
+			b1.remove(noTtl.getIdHandle());
+			assertEquals(2, Message.getDeadIdHandleBound());
+		}
+		finally {
+			SimContext.setCurrent(null);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+import core.SimContext;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests dropping the messages at their exact expiry times (see
+ * {@link World#EXACT_EXPIRY_TIMES_S})
+ */
+public class MessageExpiryQueueTest extends TestCase
+	implements MessageListener {
+	private static final int SPEED = 1000;
+	private static final int TTL = 2;
+	private static final double UP_INT = 1.0;
+	/* for rounding errors with SimClock */
+	private static final double TIME_DELTA = 0.00001;
+
+	private DTNHost h1;
+	private DTNHost h2;
+	private World world;
+	/** the message events as "type id" and their times */
+	private List<String> events;
+	private List<Double> times;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.EXACT_EXPIRY_TIMES_S,
+				"true");
+		ts.putSetting(MessageRouter.MSG_TTL_S, "" + TTL);
+		this.events = new ArrayList<String>();
+		this.times = new ArrayList<Double>();
+
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(this);
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setTransmitSpeed(SPEED);
+		utils.setTransmitRange(10);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		this.h1 = utils.createHost(new Coord(0, 0));
+		this.h2 = utils.createHost(new Coord(5, 0));
+		this.world = new World(utils.getAllHosts(), 100, 100, UP_INT,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testDropAtExactTime() {
+		h1.createNewMessage(new Message(h1, h2, "M1", 100));
+		run(30);
+		h1.createNewMessage(new Message(h1, h2, "M2", 100));
+		run(200);
+
+		/* the TTL reaches zero a minute before the expiry time (and the TTL
+		 * checks would drop the messages only a minute later) */
+		assertEquals(TTL * 60 - 60.0, timeOf("drop M1", 0));
+		assertEquals(30 + TTL * 60 - 60.0, timeOf("drop M2", 0));
+		assertEquals(-1.0, timeOf("drop M1", 1));
+	}
+
+	public void testDropWhileSending() {
+		/* the transfer of M1 takes 100 seconds */
+		h1.createNewMessage(new Message(h1, h2, "M1", 100 * SPEED));
+		h1.forceConnection(h2, null, true);
+		run(5);
+		h1.createNewMessage(new Message(h1, h2, "M2", 100));
+		run(150);
+
+		double start = timeOf("start M1", 0);
+		double relay = timeOf("relay M1", 0);
+		assertTrue(start >= 0 && start < 5);
+		assertTrue(relay >= start + 100);
+
+		/* M2 is dropped even though M1 is being sent */
+		assertEquals(5 + TTL * 60 - 60.0, timeOf("drop M2", 0));
+		assertEquals(-1.0, timeOf("start M2", 0));
+		/* M1 expires during its transfer and is dropped right after it */
+		assertEquals(relay, timeOf("drop M1", 0), TIME_DELTA);
+		assertTrue(indexOf("relay M1") < indexOf("drop M1"));
+	}
+
+	private void run(double duration) {
+		double end = SimClock.getTime() + duration - UP_INT / 2;
+		while (SimClock.getTime() < end) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Returns the time of the nth event of a type and message, or -1 if
+	 * there is no such event
+	 */
+	private double timeOf(String event, int n) {
+		for (int i = 0; i < events.size(); i++) {
+			if (events.get(i).equals(event) && n-- == 0) {
+				return times.get(i);
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(String event) {
+		return events.indexOf(event);
+	}
+
+	private void log(String event, Message m) {
+		events.add(event + " " + m.getId());
+		times.add(SimClock.getTime());
+	}
+
+	public void newMessage(Message m) {
+		log("new", m);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		log("start", m);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		log(dropped ? "drop" : "delete", m);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		log("abort", m);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		log("relay", m);
+	}
+}
@@ -4,6 +4,9 @@
  */
 package test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -60,5 +63,32 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testGetHops() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] hosts = new DTNHost[4];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+		Message m = new Message(hosts[0], hosts[3], "H", 100);
+		m.addNodeOnPath(hosts[1]);
+		List<DTNHost> hops = m.getHops();
+		Message replica = m.replicate();
+		replica.addNodeOnPath(hosts[2]);
+		
+		assertEquals(Arrays.asList(hosts[0], hosts[1]), hops);
+		assertEquals(hosts[1], hops.get(1));
+		assertEquals(1, hops.indexOf(hosts[1]));
+		assertEquals(-1, hops.indexOf(hosts[2]));
+		assertFalse(hops.contains(hosts[2]));
+		
+		/* the replica's path continues but the old view doesn't change */
+		List<DTNHost> replicaHops = replica.getHops();
+		assertEquals(Arrays.asList(hosts[0], hosts[1], hosts[2]), replicaHops);
+		assertEquals(2, replicaHops.lastIndexOf(hosts[2]));
+		assertEquals(2, hops.size());
+		assertEquals(2, replica.getHopCount());
+	}
+
 
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueueHandler;
+import input.MessageEventGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import movement.ActivenessHandler;
+import movement.MovementModel;
+import movement.StationaryMovement;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.SimClock;
+import core.SimScenario;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests that the parallel and other optional update modes of the simulator
+ * give the same results as the serial full updates
+ */
+public class ParallelSimulationTest extends TestCase {
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.ts = TestSimulation.createSettings();
+	}
+
+	public void testParallelUpdate() {
+		List<String> serial = new TestSimulation().run();
+
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_UPDATE_S,
+				"true");
+		ts.putSetting(World.SETTINGS_NS + "." + World.NROF_THREADS_S, "4");
+		List<String> parallel = new TestSimulation().run();
+
+		assertTrue(serial.size() > 1000); // there were events to compare
+		assertEquals(serial, parallel);
+	}
+
+	public void testConcurrentRuns() throws InterruptedException {
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "[1; 2]");
+		List<String> serial0 = new TestSimulation(0).run();
+		List<String> serial1 = new TestSimulation(1).run();
+		assertFalse(serial0.equals(serial1));
+
+		final TestSimulation[] sims = {new TestSimulation(0),
+				new TestSimulation(1)};
+		final Throwable[] errors = new Throwable[sims.length];
+		Thread[] threads = new Thread[sims.length];
+		for (int i=0; i<sims.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						sims[index].run();
+					} catch (Throwable t) {
+						errors[index] = t;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i=0; i<sims.length; i++) {
+			threads[i].join();
+			assertNull(errors[i]);
+		}
+
+		assertEquals(serial0, sims[0].getLog());
+		assertEquals(serial1, sims[1].getLog());
+	}
+
+	public void testTargetedEventUpdates() throws IOException {
+		String gns = SimScenario.GROUP_NS + "2.";
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE;
+		ts.putSetting(SimScenario.SCENARIO_NS + "." +
+				SimScenario.NROF_GROUPS_S, "2");
+		ts.putSetting(gns + SimScenario.GROUP_ID_S, "p");
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "10");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting(ens + "." + EventQueueHandler.NROF_SETTING, "2");
+		ts.putSetting(ens + "2." + EventQueueHandler.PATH_SETTING,
+				createEventsFile().getAbsolutePath());
+		List<String> full = new TestSimulation().run();
+
+		ts.putSetting(World.SETTINGS_NS + "." +
+				World.TARGETED_EVENT_UPDATES_S, "true");
+		List<String> targeted = new TestSimulation().run();
+
+		assertTrue(full.size() > 1000);
+		/* the external messages were relayed */
+		assertTrue(countEvents(full, "relay E") > 100);
+		assertEquals(full, targeted);
+	}
+
+	public void testSkipIdleUpdates() {
+		String sns = SimScenario.SCENARIO_NS + ".";
+		String gns = SimScenario.GROUP_NS + ".";
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE + "1.";
+		ts.putSetting(sns + SimScenario.END_TIME_S, "1500");
+		ts.putSetting(sns + SimScenario.NROF_GROUPS_S, "3");
+		/* fast mobile hosts that wait long at the waypoints */
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "5");
+		ts.putSetting(gns + MovementModel.SPEED, "10,20");
+		ts.putSetting(gns + MovementModel.WAIT_TIME, "100,300");
+		ts.putSetting(gns + MessageRouter.MSG_TTL_S, "3");
+		/* a stationary host */
+		ts.putSetting(SimScenario.GROUP_NS + "2." + SimScenario.GROUP_ID_S,
+				"s");
+		ts.putSetting(SimScenario.GROUP_NS + "2." +
+				SimScenario.MOVEMENT_MODEL_S, "StationaryMovement");
+		ts.putSetting(SimScenario.GROUP_NS + "2." +
+				StationaryMovement.LOCATION_S, "100,100");
+		ts.putSetting(SimScenario.GROUP_NS + "2." +
+				SimScenario.NROF_HOSTS_S, "1");
+		/* hosts that are active only part of the time */
+		ts.putSetting(SimScenario.GROUP_NS + "3." + SimScenario.GROUP_ID_S,
+				"a");
+		ts.putSetting(SimScenario.GROUP_NS + "3." +
+				ActivenessHandler.ACTIVE_TIMES_S, "200,450.05,700,1000");
+		ts.putSetting(ens + MessageEventGenerator.MESSAGE_INTERVAL_S,
+				"40,80");
+		ts.putSetting(ens + MessageEventGenerator.HOST_RANGE_S, "0,11");
+		IdleIntervals idle = new IdleIntervals();
+		TestSimulation fixedStep = new TestSimulation();
+		fixedStep.addUpdateListener(idle);
+		List<String> fixed = fixedStep.run();
+
+		ts.putSetting(World.SETTINGS_NS + "." + World.SKIP_IDLE_UPDATES_S,
+				"true");
+		List<String> skipping = new TestSimulation().run();
+
+		assertTrue(idle.count > 1000); // there were intervals to skip
+		assertTrue(countEvents(fixed, "relay") > 10);
+		assertTrue(countEvents(fixed, "delete") > 10); // TTLs expired
+		assertEquals(fixed, skipping);
+	}
+
+	public void testContactSweep() {
+		ConnectionSets scanned = new ConnectionSets();
+		TestSimulation scanning = new TestSimulation();
+		scanning.addUpdateListener(scanned);
+		scanning.run();
+
+		ts.putSetting(World.SETTINGS_NS + "." + World.CONTACT_SWEEP_S, 
+				"true");
+		ConnectionSets swept = new ConnectionSets();
+		TestSimulation sweeping = new TestSimulation();
+		sweeping.addUpdateListener(swept);
+		sweeping.run();
+
+		assertTrue(scanned.nrofConnected > 1000); // there were connections
+		assertEquals(scanned.sets.size(), swept.sets.size());
+		for (int i = 0; i < scanned.sets.size(); i++) {
+			assertEquals("Update " + i, scanned.sets.get(i), 
+					swept.sets.get(i));
+		}
+	}
+
+	private int countEvents(List<String> log, String part) {
+		int count = 0;
+		for (String event : log) {
+			if (event.contains(part)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Creates an external events file with connection events between
+	 * random hosts and messages that are created at, and relayed between,
+	 * the hosts of the passive group "p" (which the other hosts' routers
+	 * don't give the messages to)
+	 * @return The file
+	 */
+	private File createEventsFile() throws IOException {
+		File file = File.createTempFile("targeted", ".txt");
+		file.deleteOnExit();
+		Random rng = new Random(3);
+		List<TimedLine> lines = new ArrayList<TimedLine>();
+
+		for (int i = 0; i < 200; i++) {
+			double time = 1 + i * 2.95;
+			String a = "n" + rng.nextInt(40);
+			String b = "p" + (40 + rng.nextInt(10));
+			lines.add(new TimedLine(time, "CONN " + a + " " + b + " up"));
+			lines.add(new TimedLine(time + rng.nextInt(30),
+					"CONN " + a + " " + b + " down"));
+
+			String id = "E" + i;
+			int from = 40 + rng.nextInt(10);
+			int to = 40 + (from - 40 + 1 + rng.nextInt(9)) % 10;
+			String hosts = " p" + from + " p" + to;
+			lines.add(new TimedLine(time + 0.5, "C " + id + hosts + " 1000"));
+			lines.add(new TimedLine(time + 1.05, "S " + id + hosts));
+			lines.add(new TimedLine(time + 2.5, "DE " + id + hosts));
+		}
+		Collections.sort(lines);
+
+		PrintWriter out = new PrintWriter(file);
+		for (TimedLine l : lines) {
+			out.println(l.time + " " + l.line);
+		}
+		out.close();
+		return file;
+	}
+
+	/**
+	 * Counts the update intervals after which all the hosts are idle
+	 */
+	private static class IdleIntervals implements UpdateListener {
+		private int count = 0;
+
+		public void updated(List<DTNHost> hosts) {
+			for (DTNHost h : hosts) {
+				if (h.getIdleUntil() <= SimClock.getTime()) {
+					return;
+				}
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * Records the set of connected host pairs after every update. The 
+	 * connections of an update may be created in any order.
+	 */
+	private static class ConnectionSets implements UpdateListener {
+		private List<Set<String>> sets = new ArrayList<Set<String>>();
+		private int nrofConnected = 0;
+
+		public void updated(List<DTNHost> hosts) {
+			Set<String> connected = new HashSet<String>();
+			for (DTNHost h : hosts) {
+				for (Connection c : h.getConnections()) {
+					DTNHost other = c.getOtherNode(h);
+					if (h.getAddress() < other.getAddress()) {
+						connected.add(h + "-" + other);
+					}
+				}
+			}
+			nrofConnected += connected.size();
+			sets.add(connected);
+		}
+	}
+
+	/**
+	 * A line of an external events file and the time of its event
+	 */
+	private static class TimedLine implements Comparable<TimedLine> {
+		private double time;
+		private String line;
+
+		private TimedLine(double time, String line) {
+			this.time = time;
+			this.line = line;
+		}
+
+		public int compareTo(TimedLine other) {
+			return Double.compare(this.time, other.time);
+		}
+	}
+}
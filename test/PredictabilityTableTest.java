@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.prophet.PredictabilityTable;
+import core.DTNHost;
+import core.SimContext;
+
+/**
+ * Tests the lazy aging of the {@link PredictabilityTable} against a map
+ * whose entries are aged right away
+ */
+public class PredictabilityTableTest extends TestCase {
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+		utils = new TestUtils(null, null, new TestSettings());
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testEmpty() {
+		PredictabilityTable table = new PredictabilityTable();
+		DTNHost host = utils.createHost();
+		table.age(0.5);
+		assertEquals(0.0, table.get(host));
+		assertEquals(0, table.size());
+		assertNull(table.getHost(host.getAddress()));
+	}
+
+	/**
+	 * Few hosts and long runs of aging steps without reads, so that the
+	 * aging log overflows (and is applied to all the entries) many times
+	 */
+	public void testLogOverflow() {
+		compareToEagerAging(5, 0.05, 3000, 11);
+	}
+
+	/**
+	 * More hosts than the minimum aging log size, so that the log grows
+	 */
+	public void testManyHosts() {
+		compareToEagerAging(150, 0.3, 5000, 12);
+	}
+
+	public void testAgeAll() {
+		PredictabilityTable table = new PredictabilityTable();
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		table.set(h1, 0.5);
+		table.age(0.5);
+		table.set(h2, 0.8);
+		table.age(0.5);
+		table.ageAll();
+		table.age(0.5);
+
+		assertEquals(0.5 * 0.5 * 0.5 * 0.5, table.get(h1));
+		assertEquals(0.8 * 0.5 * 0.5, table.get(h2));
+		assertEquals(0.8 * 0.5 * 0.5, table.get(h2.getAddress()));
+		assertEquals(2, table.size());
+		assertSame(h2, table.getHost(h2.getAddress()));
+	}
+
+	/**
+	 * Ages, sets and reads random entries of a table and a map that is aged
+	 * eagerly, and checks that they have exactly the same values
+	 * @param nrofHosts Number of hosts in the test
+	 * @param readProb Probability of a step being a read
+	 * @param nrofSteps Number of steps
+	 * @param seed Seed of the random number generator
+	 */
+	private void compareToEagerAging(int nrofHosts, double readProb,
+			int nrofSteps, long seed) {
+		Random rng = new Random(seed);
+		DTNHost[] hosts = new DTNHost[nrofHosts];
+		for (int i = 0; i < nrofHosts; i++) {
+			hosts[i] = utils.createHost();
+		}
+		PredictabilityTable table = new PredictabilityTable();
+		Map<DTNHost, Double> eager = new HashMap<DTNHost, Double>();
+
+		for (int step = 0; step < nrofSteps; step++) {
+			DTNHost host = hosts[rng.nextInt(nrofHosts)];
+			double r = rng.nextDouble();
+			if (r < readProb) {
+				Double expected = eager.get(host);
+				assertEquals(expected == null ? 0.0 : expected,
+						table.get(host));
+			}
+			else if (r < readProb + 0.1) {
+				double value = rng.nextDouble();
+				table.set(host, value);
+				eager.put(host, value);
+			}
+			else {
+				double mult = 0.9 + rng.nextDouble() * 0.1;
+				table.age(mult);
+				for (Map.Entry<DTNHost, Double> e : eager.entrySet()) {
+					e.setValue(e.getValue() * mult);
+				}
+			}
+		}
+
+		assertEquals(eager.size(), table.size());
+		for (DTNHost host : hosts) {
+			Double expected = eager.get(host);
+			assertEquals(expected == null ? 0.0 : expected, table.get(host));
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueueHandler;
+import input.MessageEventGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import movement.MovementModel;
+import core.ConnectionListener;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.Settings;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Runs a complete simulation scenario (as in the batch mode) in a
+ * {@link SimContext} of its own and logs the connection and message events
+ * of the run. The scenario is read from the (test) settings;
+ * {@link #createSettings()} creates the settings of a small random waypoint
+ * scenario that the tests can modify.
+ */
+public class TestSimulation implements ConnectionListener, MessageListener {
+	/** the events of the run in the order they happened */
+	private List<String> log;
+	/** run index of the simulation */
+	private int runIndex;
+	/** other update listeners of the run */
+	private List<UpdateListener> updateListeners;
+	/** other connection listeners of the run */
+	private List<ConnectionListener> conListeners;
+
+	/**
+	 * Creates a new simulation with run index 0
+	 */
+	public TestSimulation() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new simulation
+	 * @param runIndex The run index (see {@link Settings#setRunIndex(int)})
+	 */
+	public TestSimulation(int runIndex) {
+		this.log = new ArrayList<String>();
+		this.runIndex = runIndex;
+		this.updateListeners = new ArrayList<UpdateListener>();
+		this.conListeners = new ArrayList<ConnectionListener>();
+	}
+
+	/**
+	 * Creates test settings for a scenario of 40 random waypoint hosts that
+	 * run the epidemic router for 600 seconds
+	 * @return the settings
+	 */
+	public static TestSettings createSettings() {
+		TestSettings ts = new TestSettings();
+		String sns = SimScenario.SCENARIO_NS + ".";
+		String gns = SimScenario.GROUP_NS + ".";
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE + ".";
+		String gen = EventQueueHandler.SETTINGS_NAMESPACE + "1.";
+
+		ts.putSetting(sns + SimScenario.NAME_S, "TestSimulation");
+		ts.putSetting(sns + SimScenario.END_TIME_S, "600");
+		ts.putSetting(sns + SimScenario.UP_INT_S, "0.1");
+		ts.putSetting(sns + SimScenario.NROF_GROUPS_S, "1");
+		ts.putSetting(gns + SimScenario.GROUP_ID_S, "n");
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "40");
+		ts.putSetting(gns + SimScenario.MOVEMENT_MODEL_S, "RandomWaypoint");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "EpidemicRouter");
+		ts.putSetting(gns + "bufferSize", "5M");
+		ts.putSetting(gns + MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(gns + MovementModel.WAIT_TIME, "0,60");
+		ts.putSetting(gns + SimScenario.NROF_INTERF_S, "1");
+		ts.putSetting(gns + SimScenario.INTERFACENAME_S + "1", "testIf");
+		ts.putSetting("testIf.type", "SimpleBroadcastInterface");
+		ts.putSetting("testIf.transmitSpeed", "250k");
+		ts.putSetting("testIf.transmitRange", "30");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, "500,500");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "1");
+		ts.putSetting(ens + EventQueueHandler.NROF_SETTING, "1");
+		ts.putSetting(gen + EventQueueHandler.CLASS_SETTING,
+				"MessageEventGenerator");
+		ts.putSetting(gen + MessageEventGenerator.MESSAGE_INTERVAL_S, "5,10");
+		ts.putSetting(gen + MessageEventGenerator.MESSAGE_SIZE_S, "50k,200k");
+		ts.putSetting(gen + MessageEventGenerator.HOST_RANGE_S, "0,39");
+		ts.putSetting(gen + MessageEventGenerator.MESSAGE_ID_PREFIX_S, "M");
+		ts.putSetting(World.SETTINGS_NS + "." + World.CELL_SIZE_MULT_S, "5");
+		ts.putSetting(World.SETTINGS_NS + "." + World.RANDOMIZE_UPDATES_S,
+				"true");
+		return ts;
+	}
+
+	/**
+	 * Adds an update listener for the run
+	 * @param ul The listener
+	 */
+	public void addUpdateListener(UpdateListener ul) {
+		this.updateListeners.add(ul);
+	}
+
+	/**
+	 * Adds a connection listener (e.g., a report) for the run
+	 * @param cl The listener
+	 */
+	public void addConnectionListener(ConnectionListener cl) {
+		this.conListeners.add(cl);
+	}
+
+	/**
+	 * Runs the scenario of the current settings in a new context until its
+	 * end time. The final locations of the hosts are logged after the
+	 * events.
+	 * @return the log of the run
+	 */
+	public List<String> run() {
+		SimContext.setCurrent(new SimContext());
+		try {
+			Settings.setRunIndex(this.runIndex);
+			SimScenario scen = SimScenario.getInstance();
+			scen.addConnectionListener(this);
+			scen.addMessageListener(this);
+			for (UpdateListener ul : this.updateListeners) {
+				scen.addUpdateListener(ul);
+			}
+			for (ConnectionListener cl : this.conListeners) {
+				scen.addConnectionListener(cl);
+			}
+			World world = scen.getWorld();
+			while (SimClock.getTime() < scen.getEndTime()) {
+				world.update();
+			}
+			world.close();
+			for (DTNHost h : world.getHosts()) {
+				log.add(h + " at " + h.getLocation());
+			}
+		}
+		finally {
+			SimContext.setCurrent(null);
+		}
+		return this.log;
+	}
+
+	/**
+	 * Returns the log of the run
+	 * @return the log of the run
+	 */
+	public List<String> getLog() {
+		return this.log;
+	}
+
+	private void log(String event) {
+		this.log.add(SimClock.getTime() + " " + event);
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		log("up " + host1 + " " + host2);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		log("down " + host1 + " " + host2);
+	}
+
+	public void newMessage(Message m) {
+		log("new " + m);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		log("start " + m + " " + from + " " + to);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		log("delete " + m + " " + where + " " + dropped);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		log("abort " + m + " " + from + " " + to);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		log("relay " + m + " " + from + " " + to + " " + firstDelivery);
+	}
+}
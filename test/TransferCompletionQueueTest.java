@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+import core.SimContext;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests finalizing the transfers at their exact completion times (see
+ * {@link World#EXACT_TRANSFER_TIMES_S})
+ */
+public class TransferCompletionQueueTest extends TestCase
+	implements MessageListener {
+	private static final int SPEED = 1000;
+	private static final double UP_INT = 1.0;
+	/* for rounding errors with SimClock */
+	private static final double TIME_DELTA = 0.00001;
+
+	private DTNHost h1;
+	private DTNHost h2;
+	private World world;
+	/** the message events as "type id" and their times */
+	private List<String> events;
+	private List<Double> times;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimContext.setCurrent(new SimContext());
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.EXACT_TRANSFER_TIMES_S,
+				"true");
+		this.events = new ArrayList<String>();
+		this.times = new ArrayList<Double>();
+
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(this);
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setTransmitSpeed(SPEED);
+		utils.setTransmitRange(10);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		this.h1 = utils.createHost(new Coord(0, 0));
+		this.h2 = utils.createHost(new Coord(5, 0));
+		this.world = new World(utils.getAllHosts(), 100, 100, UP_INT,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testCompletionAtExactTime() {
+		h1.createNewMessage(new Message(h1, h2, "M1", 2500));
+		h1.createNewMessage(new Message(h1, h2, "M2", 1500));
+		h1.forceConnection(h2, null, true);
+		run(10);
+
+		String first = timeOf("start M1", 0) < timeOf("start M2", 0) ?
+				"M1" : "M2";
+		String second = first.equals("M1") ? "M2" : "M1";
+		double start = timeOf("start " + first, 0);
+		double firstDone = start + sizeOf(first) / SPEED;
+		double secondDone = firstDone + sizeOf(second) / SPEED;
+
+		/* done between the update intervals */
+		assertEquals(firstDone, timeOf("relay " + first, 0), TIME_DELTA);
+		assertTrue(Math.abs(firstDone % UP_INT) > TIME_DELTA);
+		/* the next transfer is started right away */
+		assertEquals(firstDone, timeOf("start " + second, 0), TIME_DELTA);
+		assertEquals(secondDone, timeOf("relay " + second, 0), TIME_DELTA);
+	}
+
+	public void testAbortedCompletionIgnored() {
+		h1.createNewMessage(new Message(h1, h2, "M1", 2500));
+		h1.forceConnection(h2, null, true);
+		run(2);
+		double start = timeOf("start M1", 0);
+		assertEquals(-1.0, timeOf("relay M1", 0));
+
+		/* reconnect before the first transfer would have been done */
+		h1.forceConnection(h2, null, false);
+		h1.forceConnection(h2, null, true);
+		run(10);
+
+		double restart = timeOf("start M1", 1);
+		assertTrue(timeOf("abort M1", 0) > start);
+		assertTrue(restart < start + 2.5);
+		/* the completion of the aborted transfer didn't finalize the new */
+		assertEquals(restart + 2.5, timeOf("relay M1", 0), TIME_DELTA);
+		assertEquals(-1.0, timeOf("relay M1", 1));
+	}
+
+	private void run(double duration) {
+		double end = SimClock.getTime() + duration - UP_INT / 2;
+		while (SimClock.getTime() < end) {
+			world.update();
+		}
+	}
+
+	private double sizeOf(String id) {
+		return id.equals("M1") ? 2500 : 1500;
+	}
+
+	/**
+	 * Returns the time of the nth event of a type and message, or -1 if
+	 * there is no such event
+	 */
+	private double timeOf(String event, int n) {
+		for (int i = 0; i < events.size(); i++) {
+			if (events.get(i).equals(event) && n-- == 0) {
+				return times.get(i);
+			}
+		}
+		return -1;
+	}
+
+	private void log(String event, Message m) {
+		events.add(event + " " + m.getId());
+		times.add(SimClock.getTime());
+	}
+
+	public void newMessage(Message m) {
+		log("new", m);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		log("start", m);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		log("delete", m);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		log("abort", m);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		log("relay", m);
+	}
+}